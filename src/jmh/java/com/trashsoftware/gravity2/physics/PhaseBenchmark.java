@@ -0,0 +1,51 @@
+package com.trashsoftware.gravity2.physics;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The phases of {@link Simulator#simulate(int)}, each on its own.
+ * <p>
+ * Collisions merge bodies on the first calls, so {@link #handleCollisions()} mostly measures a system
+ * without touching pairs, which is the usual case of a step.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class PhaseBenchmark {
+
+    @Benchmark
+    public void calculateAllForces(SystemState state) {
+        state.simulator.calculateAllForces(state.simulator.getObjects());
+    }
+
+    @Benchmark
+    public boolean handleCollisions(SystemState state) {
+        state.simulator.loadBodyStore();
+        return state.simulator.handleCollisions(state.timeStep);
+    }
+
+    @Benchmark
+    public void updateMasters(SystemState state) {
+        state.simulator.updateMasters();
+    }
+
+    @Benchmark
+    public void performTemperatureChange(SystemState state) {
+        state.simulator.performTemperatureChange(state.timeStep);
+    }
+
+    @Benchmark
+    public void updateTidal(SystemState state) {
+        state.simulator.updateTidal(state.timeStep);
+    }
+}
@@ -0,0 +1,33 @@
+package com.trashsoftware.gravity2.physics;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A full {@code simulate(1000)}, forces, integration, collisions and the once per call updates.
+ * Every iteration starts again from the generated system.
+ * <p>
+ * With direct forces, 10000 bodies take minutes per call. Use {@code -p forceMethod=BARNES_HUT}
+ * or {@code -p n=10,100,1000} for a quicker run.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class SimulateBenchmark {
+
+    static final int STEPS = 1000;
+
+    @Benchmark
+    public Simulator.SimResult simulate(SystemState state) {
+        return state.simulator.simulate(STEPS);
+    }
+}
@@ -0,0 +1,51 @@
+package com.trashsoftware.gravity2.physics;
+
+import com.trashsoftware.gravity2.presets.Preset;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * A star system of {@code n} bodies made by {@link Preset#scaledStarSystem(int)}.
+ * <p>
+ * The system is generated once per trial and restored from its json for every iteration, so all
+ * iterations of a trial start from the same state even though the simulation changes it.
+ */
+@State(Scope.Benchmark)
+public class SystemState {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int n;
+
+    @Param({"DIRECT"})
+    public String forceMethod;
+
+    @Param({"LEAPFROG"})
+    public String integrator;
+
+    @Param({"100"})
+    public double timeStep;
+
+    Simulator simulator;
+    private JSONObject initial;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        Simulator generated = new Simulator();
+        Preset.scaledStarSystem(n - 1).instantiate(generated);
+        initial = generated.toJson();
+    }
+
+    @Setup(Level.Iteration)
+    public void restore() {
+        simulator = Simulator.loadFromJson(initial);
+        simulator.setTimeStep(timeStep);
+        simulator.setForceMethod(Simulator.ForceMethod.valueOf(forceMethod));
+        simulator.setIntegratorType(Simulator.IntegratorType.valueOf(integrator));
+        simulator.updateMasters();
+        simulator.loadBodyStore();
+    }
+}
@@ -0,0 +1,268 @@
+package com.trashsoftware.gravity2.batch;
+
+import com.trashsoftware.gravity2.physics.Simulator;
+import com.trashsoftware.gravity2.physics.TrajectoryRecorder;
+import com.trashsoftware.gravity2.presets.Preset;
+import org.json.JSONException;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Runs a simulation without any window, as fast as the machine allows.
+ * <p>
+ * The system is either a save, binary or JSON, or a {@link Preset}. It is simulated for a given number of
+ * seconds, writing a line of metrics to {@code metrics.csv} and, optionally, binary {@code .tgs} snapshots
+ * into the output directory at fixed simulated intervals and the trajectories of all bodies into
+ * {@code trajectory/}. Nothing of JME or JavaFX is touched, so this also runs on servers without a display.
+ * <pre>
+ * java -cp ... com.trashsoftware.gravity2.batch.BatchRunner --preset SolarSystem --seconds 3.15e7 --step 3600 --out run1
+ * </pre>
+ */
+public class BatchRunner {
+
+    // upper bound of steps per simulate() call, the post-processing of simulate() runs once per call
+    private static final int MAX_STEPS_PER_CALL = 1000;
+    // default lower bound of the automatically reduced step, relative to the initial one
+    private static final double MIN_STEP_FRACTION = 1.0 / 1024;
+
+    private static final String USAGE = """
+            Usage: BatchRunner (--preset NAME | --load FILE.tgs) --seconds N [options]
+              --preset NAME          one of the default presets, see --list-presets
+              --load FILE            a .tgs save, binary or JSON
+              --seconds N            simulated seconds to run
+              --step S               time step in seconds, default: the one of the save, or 1
+              --integrator TYPE      LEAPFROG, BLOCK_LEAPFROG, YOSHIDA_4, HERMITE_4 or IAS15
+              --force-method M       force method of the simulator
+              --theta T              Barnes-Hut opening angle
+              --no-masters           skip hill masters, paths, tidal and thermal updates
+              --no-slow-down         keep the step even if the simulator reports TOO_FAST
+              --min-step S           never slow down below this step, default: step / 1024
+              --out DIR              output directory, default: batch-out
+              --metrics-every S      simulated seconds between metric lines, default: seconds / 100
+              --snapshot-every S     simulated seconds between .tgs snapshots, default: none
+              --record-every S       simulated seconds between recorded trajectory frames, default: none
+              --chunk-frames N       frames per trajectory file, default: 256
+              --list-presets         print the names of the presets and exit
+            """;
+
+    private Simulator simulator;
+    private double seconds = -1;
+    private Path outDir = Path.of("batch-out");
+    private double metricsInterval = -1;
+    private double snapshotInterval = -1;
+    private double recordInterval = -1;
+    private int chunkFrames = 256;
+    private boolean slowDown = true;
+    private double minStep = -1;
+
+    private BufferedWriter metricsWriter;
+    private int snapshotCount;
+    private double lastSnapshotTime = Double.NaN;
+    private long startNanos;
+    private double startTime;
+    private long stepsDone;
+
+    public static void main(String[] args) {
+        BatchRunner runner = new BatchRunner();
+        try {
+            if (!runner.parseArgs(args)) return;
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println(e.getMessage());
+            System.err.print(USAGE);
+            System.exit(2);
+            return;
+        }
+        try {
+            runner.run();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return false if there is nothing to run
+     */
+    private boolean parseArgs(String[] args) throws IOException {
+        Double timeStep = null;
+        Simulator.IntegratorType integratorType = null;
+        Simulator.ForceMethod forceMethod = null;
+        Double theta = null;
+        boolean masters = true;
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--preset" -> simulator = instantiatePreset(valueOf(args, ++i, arg));
+                case "--load" -> simulator = loadSave(Path.of(valueOf(args, ++i, arg)));
+                case "--seconds" -> seconds = parseDouble(valueOf(args, ++i, arg), arg);
+                case "--step" -> timeStep = parseDouble(valueOf(args, ++i, arg), arg);
+                case "--integrator" -> integratorType =
+                        Simulator.IntegratorType.valueOf(valueOf(args, ++i, arg).toUpperCase(Locale.ROOT));
+                case "--force-method" -> forceMethod =
+                        Simulator.ForceMethod.valueOf(valueOf(args, ++i, arg).toUpperCase(Locale.ROOT));
+                case "--theta" -> theta = parseDouble(valueOf(args, ++i, arg), arg);
+                case "--no-masters" -> masters = false;
+                case "--no-slow-down" -> slowDown = false;
+                case "--min-step" -> minStep = parseDouble(valueOf(args, ++i, arg), arg);
+                case "--out" -> outDir = Path.of(valueOf(args, ++i, arg));
+                case "--metrics-every" -> metricsInterval = parseDouble(valueOf(args, ++i, arg), arg);
+                case "--snapshot-every" -> snapshotInterval = parseDouble(valueOf(args, ++i, arg), arg);
+                case "--record-every" -> recordInterval = parseDouble(valueOf(args, ++i, arg), arg);
+                case "--chunk-frames" -> chunkFrames = (int) parseDouble(valueOf(args, ++i, arg), arg);
+                case "--list-presets" -> {
+                    for (Preset preset : Preset.DEFAULT_PRESETS) {
+                        System.out.println(preset.name);
+                    }
+                    return false;
+                }
+                case "--help", "-h" -> {
+                    System.out.print(USAGE);
+                    return false;
+                }
+                default -> throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+
+        if (simulator == null) throw new IllegalArgumentException("Either --preset or --load is required");
+        if (!(seconds > 0)) throw new IllegalArgumentException("--seconds must be positive");
+        if (timeStep != null) {
+            if (!(timeStep > 0)) throw new IllegalArgumentException("--step must be positive");
+            simulator.setTimeStep(timeStep);
+        }
+        if (integratorType != null) simulator.setIntegratorType(integratorType);
+        if (forceMethod != null) simulator.setForceMethod(forceMethod);
+        if (theta != null) simulator.setBarnesHutTheta(theta);
+        simulator.setEnableMasterCalculation(masters);
+        if (chunkFrames <= 0) throw new IllegalArgumentException("--chunk-frames must be positive");
+        if (metricsInterval <= 0) metricsInterval = seconds / 100;
+        if (minStep <= 0) minStep = simulator.getTimeStep() * MIN_STEP_FRACTION;
+        return true;
+    }
+
+    private static String valueOf(String[] args, int index, String option) {
+        if (index >= args.length) throw new IllegalArgumentException(option + " needs a value");
+        return args[index];
+    }
+
+    private static double parseDouble(String value, String option) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(option + ": not a number: " + value);
+        }
+    }
+
+    private static Simulator instantiatePreset(String name) {
+        for (Preset preset : Preset.DEFAULT_PRESETS) {
+            if (preset.name.equalsIgnoreCase(name)) {
+                Simulator simulator = new Simulator();
+                preset.instantiate(simulator);
+                return simulator;
+            }
+        }
+        throw new IllegalArgumentException("No such preset: " + name);
+    }
+
+    private static Simulator loadSave(Path file) throws IOException {
+        try {
+            return Simulator.load(file);
+        } catch (JSONException e) {
+            throw new IllegalArgumentException(file + ": " + e.getMessage(), e);
+        }
+    }
+
+    private void run() throws IOException {
+        Files.createDirectories(outDir);
+        startTime = simulator.getTimeStepAccumulator();
+        double endTime = startTime + seconds;
+        double nextMetrics = startTime;
+        double nextSnapshot = snapshotInterval > 0 ? startTime : Double.POSITIVE_INFINITY;
+
+        PrintStream out = System.out;
+        out.printf(Locale.ROOT, "%d objects, %s, step %s s, %s simulated s%n",
+                simulator.getObjects().size(), simulator.getIntegratorType(),
+                simulator.getTimeStep(), seconds);
+
+        TrajectoryRecorder recorder = recordInterval > 0
+                ? new TrajectoryRecorder(outDir.resolve("trajectory"), recordInterval, chunkFrames)
+                : null;
+        simulator.setTrajectoryRecorder(recorder);
+
+        try (BufferedWriter writer = Files.newBufferedWriter(outDir.resolve("metrics.csv"));
+             recorder) {
+            metricsWriter = writer;
+            writer.write("simTime,wallSeconds,steps,timeStep,objects,totalMass,kineticEnergy,potentialEnergy,totalEnergy");
+            writer.newLine();
+
+            startNanos = System.nanoTime();
+            double time = startTime;
+            while (true) {
+                if (time >= nextMetrics) {
+                    writeMetrics(time);
+                    nextMetrics = nextAfter(nextMetrics, metricsInterval, time);
+                }
+                if (time >= nextSnapshot) {
+                    writeSnapshot(time);
+                    nextSnapshot = nextAfter(nextSnapshot, snapshotInterval, time);
+                }
+                if (time >= endTime) break;
+
+                double horizon = Math.min(endTime, Math.min(nextMetrics, nextSnapshot));
+                double timeStep = simulator.getTimeStep();
+                long nSteps = (long) Math.ceil((horizon - time) / timeStep);
+                nSteps = Math.max(1, Math.min(nSteps, MAX_STEPS_PER_CALL));
+
+                Simulator.SimResult result = simulator.simulate((int) nSteps);
+                double newTime = simulator.getTimeStepAccumulator();
+                stepsDone += Math.round((newTime - time) / timeStep);
+                time = newTime;
+                if (result == Simulator.SimResult.TOO_FAST && slowDown && timeStep / 2 >= minStep) {
+                    // what the interactive app does too
+                    simulator.setTimeStep(timeStep / 2);
+                    out.printf(Locale.ROOT, "t=%.6g s: too fast, step reduced to %s s%n",
+                            time, simulator.getTimeStep());
+                }
+            }
+            if (snapshotInterval > 0 && lastSnapshotTime != time) {
+                // the final state, if the last snapshot was not taken exactly at the end
+                writeSnapshot(time);
+            }
+        }
+
+        double wallSeconds = (System.nanoTime() - startNanos) / 1e9;
+        double simulated = simulator.getTimeStepAccumulator() - startTime;
+        out.printf(Locale.ROOT, "done: %.6g simulated s in %.3f wall s, %d steps, %.4g simulated s per wall s, %d objects%n",
+                simulated, wallSeconds, stepsDone, simulated / wallSeconds, simulator.getObjects().size());
+    }
+
+    private static double nextAfter(double scheduled, double interval, double time) {
+        double next = scheduled + interval;
+        if (next <= time) {
+            // skip the marks passed by a single step
+            next = scheduled + Math.ceil((time - scheduled) / interval + 1e-9) * interval;
+        }
+        return next;
+    }
+
+    private void writeMetrics(double time) throws IOException {
+        double wallSeconds = (System.nanoTime() - startNanos) / 1e9;
+        double kinetic = simulator.calculateTotalKineticEnergy();
+        double potential = simulator.calculateTotalPotentialEnergy();
+        metricsWriter.write(String.format(Locale.ROOT, "%.17g,%.6f,%d,%.17g,%d,%.17g,%.17g,%.17g,%.17g",
+                time, wallSeconds, stepsDone, simulator.getTimeStep(), simulator.getObjects().size(),
+                simulator.totalMass(), kinetic, potential, kinetic + potential));
+        metricsWriter.newLine();
+        metricsWriter.flush();
+    }
+
+    private void writeSnapshot(double time) throws IOException {
+        lastSnapshotTime = time;
+        Path file = outDir.resolve(String.format(Locale.ROOT, "snapshot_%05d.tgs", snapshotCount++));
+        simulator.saveBinary(file);
+    }
+}
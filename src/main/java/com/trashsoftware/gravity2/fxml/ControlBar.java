@@ -5,6 +5,7 @@ import com.trashsoftware.gravity2.fxml.units.UnitsUtil;
 import com.trashsoftware.gravity2.gui.JmeApp;
 import com.trashsoftware.gravity2.physics.CelestialObject;
 import com.trashsoftware.gravity2.physics.Simulator;
+import com.trashsoftware.gravity2.physics.TrajectoryReplay;
 import com.trashsoftware.gravity2.presets.Preset;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
@@ -12,6 +13,7 @@ import javafx.fxml.Initializable;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.input.KeyEvent;
+import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import javafx.stage.Window;
@@ -30,7 +32,7 @@ public class ControlBar implements Initializable {
     @FXML
     Button playPauseBtn, clearFocusBtn, clearLandBtn;
     @FXML
-    Slider pathLengthSlider, massPercentileSlider;
+    Slider pathLengthSlider, massPercentileSlider, replaySlider;
     @FXML
     Label pathLengthText, massPercentileText;
     @FXML
@@ -49,6 +51,9 @@ public class ControlBar implements Initializable {
     private ResourceBundle strings;
 
     private double lastRealTimeStep;
+    private boolean showingReplayTime;
+    private Simulator massPercentilePendingFor;  // the simulator of the search not done yet, if any
+    private boolean massPercentileOutdated;
 
     @Override
     public void initialize(URL url, ResourceBundle resourceBundle) {
@@ -169,28 +174,53 @@ public class ControlBar implements Initializable {
         });
         pathLengthSlider.setValue(5000.0);
 
-        massPercentileSlider.valueProperty().addListener((observable, oldValue, newValue) -> {
+        massPercentileSlider.valueProperty().addListener((observable, oldValue, newValue) ->
+                requestMassPercentile());
+        massPercentileSlider.setValue(100.0);
+
+        replaySlider.valueProperty().addListener((observable, oldValue, newValue) -> {
+            if (showingReplayTime) return;
             JmeApp jmeApp = getJmeApp();
             if (jmeApp == null) return;
-            
-            Simulator simulator = jmeApp.getSimulator();
-            
-            double minimumMassShowing = simulator.findMassOfPercentile(newValue.doubleValue());
-            String massText;
-            if (minimumMassShowing == Double.MAX_VALUE) {
-                massText = "∞";
-            } else {
-                massText = getFxApp().getUnitConverter().mass(minimumMassShowing);
+            jmeApp.seekReplayEnqueue(newValue.doubleValue());
+        });
+    }
+
+    /**
+     * Finds the minimum mass of the percentile of the slider between two batches of the simulation, and
+     * shows only the objects of at least that mass when done. At most one search is pending, a move of the
+     * slider meanwhile is searched after it. One for a simulator that has been replaced does not count.
+     */
+    private void requestMassPercentile() {
+        JmeApp jmeApp = getJmeApp();
+        if (jmeApp == null) return;
+        Simulator simulator = jmeApp.getSimulator();
+        if (massPercentilePendingFor != null && massPercentilePendingFor == simulator) {
+            massPercentileOutdated = true;
+            return;
+        }
+
+        double percentile = massPercentileSlider.getValue();
+        massPercentilePendingFor = simulator;
+        massPercentileOutdated = false;
+        jmeApp.querySimulatorLater(simulator, sim -> sim.findMassOfPercentile(percentile), minimumMassShowing -> {
+            if (massPercentilePendingFor != simulator) return;  // replaced meanwhile
+            massPercentilePendingFor = null;
+            if (minimumMassShowing != null) {
+                String massText;
+                if (minimumMassShowing == Double.MAX_VALUE) {
+                    massText = "∞";
+                } else {
+                    massText = getFxApp().getUnitConverter().mass(minimumMassShowing);
+                }
+                massPercentileText.setText(String.format("%,.0f%% ≥%s", percentile, massText));
+
+                jmeApp.updateMinimumMassShowing(minimumMassShowing);
+
+                getFxApp().getObjectListPanel().reloadInfoPane(simulator, jmeApp.getShownObjects());
             }
-            massPercentileText.setText(String.format("%,.0f%% ≥%s",
-                    newValue.doubleValue(),
-                    massText));
-            
-            jmeApp.updateMinimumMassShowing(minimumMassShowing);
-            
-            getFxApp().getObjectListPanel().reloadInfoPane(simulator, simulator.getObjects());
+            if (massPercentileOutdated) requestMassPercentile();
         });
-        massPercentileSlider.setValue(100.0);
     }
 
     public void setFocus(CelestialObject co, boolean scrollToFocus) {
@@ -215,24 +245,37 @@ public class ControlBar implements Initializable {
     }
     
     void saveAction() {
-        Simulator simulator = getJmeApp().getSimulator();
+        JmeApp jmeApp = getJmeApp();
+        Simulator simulator = jmeApp.getSimulator();
         
         FileChooser fileChooser = new FileChooser();
         fileChooser.setInitialDirectory(new File(FxApp.SAVE_PATH));
-        fileChooser.getExtensionFilters().add(
-                new FileChooser.ExtensionFilter("Simulation file", "*.tgs"));
+        fileChooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("Simulation file", "*.tgs"),
+                new FileChooser.ExtensionFilter("Simulation JSON", "*.json"));
         fileChooser.setInitialFileName("*.tgs");
         File file = fileChooser.showSaveDialog(window);
         if (file != null) {
-            if (!file.getName().endsWith(".tgs")) {
-                throw new RuntimeException(file.getName() + " has not extension.");
-            }
-
-            JSONObject json = simulator.toJson();
-            String jsonString = json.toString(2);
-            try (BufferedWriter bw = new BufferedWriter(new FileWriter(file))) {
-                bw.write(jsonString);
-            } catch (IOException e) {
+            try {
+                if (file.getName().endsWith(".tgs")) {
+                    jmeApp.querySimulator(simulator, sim -> {
+                        try {
+                            sim.saveBinary(file.toPath());
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        return null;
+                    });
+                } else if (file.getName().endsWith(".json")) {
+                    JSONObject json = jmeApp.querySimulator(simulator, Simulator::toJson);
+                    String jsonString = json.toString(2);
+                    try (BufferedWriter bw = new BufferedWriter(new FileWriter(file))) {
+                        bw.write(jsonString);
+                    }
+                } else {
+                    throw new RuntimeException(file.getName() + " has not extension.");
+                }
+            } catch (IOException | UncheckedIOException e) {
                 throw new RuntimeException(e);
             }
         }
@@ -243,36 +286,62 @@ public class ControlBar implements Initializable {
         
         FileChooser fileChooser = new FileChooser();
         fileChooser.setInitialDirectory(new File(FxApp.SAVE_PATH));
-        fileChooser.getExtensionFilters().add(
-                new FileChooser.ExtensionFilter("Simulation file", "*.tgs"));
+        fileChooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("Simulation file", "*.tgs", "*.json"));
         File file = fileChooser.showOpenDialog(window);
         if (file != null) {
-            try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-                StringBuilder sb = new StringBuilder();  // sb, hp
-                String line;
-                while ((line = br.readLine()) != null) {
-                    sb.append(line);
-                }
-                JSONObject json = new JSONObject(sb.toString());
-                Simulator simulator = Simulator.loadFromJson(json);
+            try {
+                // binary or, as older saves, JSON
+                Simulator simulator = Simulator.load(file.toPath());
                 simulator.setTimeStep(getJmeApp().getSimulationSpeed());
                 
-                getJmeApp().setSimulatorEnqueue(simulator);
+                // before it is simulated
                 fxApp.getObjectListPanel().reloadInfoPane(simulator, simulator.getObjects());
+                getJmeApp().setSimulatorEnqueue(simulator);
             } catch (IOException | JSONException e) {
                 throw new RuntimeException(e);
             }
         }
     }
     
+    void replayAction() {
+        DirectoryChooser directoryChooser = new DirectoryChooser();
+        directoryChooser.setInitialDirectory(new File(FxApp.SAVE_PATH));
+        File directory = directoryChooser.showDialog(window);
+        if (directory != null) {
+            try {
+                TrajectoryReplay replay = TrajectoryReplay.open(directory.toPath());
+                Simulator simulator = replay.getSimulator();
+                simulator.setTimeStep(getJmeApp().getSimulationSpeed());
+
+                replaySlider.setMin(replay.getStartTime());
+                replaySlider.setMax(replay.getEndTime());
+                showReplayTime(replay.getStartTime());
+                replaySlider.setVisible(true);
+                replaySlider.setManaged(true);
+
+                fxApp.getObjectListPanel().reloadInfoPane(simulator, simulator.getObjects());
+                getJmeApp().startReplayEnqueue(replay);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private void showReplayTime(double time) {
+        showingReplayTime = true;
+        replaySlider.setValue(time);
+        showingReplayTime = false;
+    }
+
     void loadPreset(Preset preset) {
         Simulator simulator = new Simulator();
         double scale = preset.instantiate(simulator);
         JmeApp jmeApp = fxApp.getJmeApp();
+        fxApp.getObjectListPanel().reloadInfoPane(simulator, simulator.getObjects());
+        
         jmeApp.setSimulatorEnqueue(simulator);
         jmeApp.setScaleEnqueue(scale);
-        
-        fxApp.getObjectListPanel().reloadInfoPane(simulator, simulator.getObjects());
     }
 
     @FXML
@@ -352,7 +421,7 @@ public class ControlBar implements Initializable {
         // update playing speed
         Simulator simulator = jmeApp.getSimulator();
         if (simulator == null) return;
-        double timeStep = simulator.getTimeStepAccumulator();
+        double timeStep = jmeApp.getSimulationTime();
         double diff = timeStep - lastRealTimeStep;
         double realDiff = diff * (1000.0 / frameTimeMs);
         realSpeedLabel.setText(UnitsUtil.adaptiveTime(realDiff) + "/s");
@@ -361,6 +430,13 @@ public class ControlBar implements Initializable {
         speedLabel.setText(getJmeApp().getSimulationSpeed() + "x");
 
         timeStepText.setText(uc.dateTime(timeStep, strings));
+        TrajectoryReplay replay = jmeApp.getReplay();
+        if (replay != null) {
+            if (!replaySlider.isValueChanging()) showReplayTime(timeStep);
+        } else if (replaySlider.isVisible()) {
+            replaySlider.setVisible(false);
+            replaySlider.setManaged(false);
+        }
         jmeApp.gcDiedModels();
     }
     
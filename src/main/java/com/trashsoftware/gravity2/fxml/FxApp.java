@@ -72,16 +72,13 @@ public class FxApp extends Application {
         return controlBar;
     }
     
-    public void notifyObjectCountChanged(Simulator simulator) {
-        // Since updating info pane can be time-consuming,
-        // there might be this scenario:
-        // the reload info pane in running, but the jme ui has triggered new simulation steps
-        // which modifies the simulators object list
-        // causing concurrent modification exception
-        List<CelestialObject> objectsCopy = new ArrayList<>(simulator.getObjects());
+    /**
+     * @param objects the objects now, a list that does not change, as the simulation goes on meanwhile
+     */
+    public void notifyObjectCountChanged(Simulator simulator, List<CelestialObject> objects) {
         Platform.runLater(() -> {
             if (objectListPanel != null) {
-                objectListPanel.reloadInfoPane(simulator, objectsCopy);
+                objectListPanel.reloadInfoPane(simulator, objects);
             }
         });
     }
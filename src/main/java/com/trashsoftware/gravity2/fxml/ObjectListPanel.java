@@ -10,11 +10,9 @@ import com.trashsoftware.gravity2.presets.SystemPresets;
 import com.trashsoftware.gravity2.utils.OrbitPlane;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
-import javafx.geometry.Bounds;
 import javafx.scene.Node;
 import javafx.scene.control.*;
 import javafx.scene.layout.GridPane;
-import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
 
 import java.net.URL;
@@ -30,7 +28,7 @@ public class ObjectListPanel extends AbstractObjectPanel {
     @FXML
     ScrollPane celestialContainer;
     @FXML
-    VBox celestialListPane;
+    ListView<CelestialObject> celestialListView;
     @FXML
     ComboBox<Sorting> sortBox;
     @FXML
@@ -56,7 +54,13 @@ public class ObjectListPanel extends AbstractObjectPanel {
     ComboBox<SpawnPreset> spawnPresetBox;
     @FXML
     Menu presetsMenu;
-    private double celestialContainerVValueCache;
+
+    // the rows being shown, only the visible ones are materialized by the list view
+    private final Set<ObjectCell> objectCells = Collections.newSetFromMap(new WeakHashMap<>());
+    private Map<CelestialObject, ObjectStatsWrapper.RowStats> rowStats = new IdentityHashMap<>();
+    private Simulator rowStatsPendingFor;  // the simulator of the computation not done yet, if any
+    private boolean rowStatsOutdated;
+    private Simulator energiesPendingFor;  // the simulator of the energies not computed yet, if any
 
     @Override
     public void initialize(URL url, ResourceBundle resourceBundle) {
@@ -68,6 +72,7 @@ public class ObjectListPanel extends AbstractObjectPanel {
         setMenu();
         
         colorPicker.setValue(Color.DARKGRAY);
+        celestialListView.setCellFactory(listView -> new ObjectCell());
     }
 
     @Override
@@ -138,7 +143,7 @@ public class ObjectListPanel extends AbstractObjectPanel {
         sortBox.getSelectionModel().selectedItemProperty().addListener((observable, oldValue, newValue) -> {
             Simulator simulator = fxApp.getSimulator();
             if (simulator != null) {
-                reloadInfoPane(simulator, simulator.getObjects());
+                reloadInfoPane(simulator, fxApp.getJmeApp().getShownObjects());
             }
         });
 
@@ -190,12 +195,8 @@ public class ObjectListPanel extends AbstractObjectPanel {
 
     private void setInfo(Simulator simulator) {
         Node root = celestialContainer.getContent();
-        if (root == celestialListPane) {
-            for (Node node : celestialListPane.getChildren()) {
-                if (node instanceof ObjectStatsWrapper objectStatsWrapper) {
-                    objectStatsWrapper.update(simulator, unitsMethodBox.getValue().unitsConverter);
-                }
-            }
+        if (root == celestialListView) {
+            requestRowStats(simulator);
         } else if (root instanceof ObjectStatsWrapper osw) {
             if (osw.object.isExist()) {
                 osw.update(simulator, unitsMethodBox.getValue().unitsConverter);
@@ -205,38 +206,90 @@ public class ObjectListPanel extends AbstractObjectPanel {
         }
     }
 
+    /**
+     * Computes the stats of the visible rows between two batches of the simulation, and shows them when done.
+     * At most one computation is pending, a request meanwhile is done after it. One for a simulator that
+     * has been replaced does not count.
+     */
+    private void requestRowStats(Simulator simulator) {
+        if (rowStatsPendingFor != null && rowStatsPendingFor == simulator) {
+            rowStatsOutdated = true;
+            return;
+        }
+        JmeApp jmeApp = fxApp.getJmeApp();
+        if (simulator == null || jmeApp == null) return;
+
+        List<CelestialObject> visible = new ArrayList<>();
+        for (ObjectCell cell : objectCells) {
+            if (!cell.isEmpty() && cell.getItem() != null) visible.add(cell.getItem());
+        }
+        if (visible.isEmpty()) return;
+
+        UnitsConverter uc = unitsMethodBox.getValue().unitsConverter;
+        rowStatsPendingFor = simulator;
+        rowStatsOutdated = false;
+        jmeApp.querySimulatorLater(simulator, sim -> {
+            Map<CelestialObject, ObjectStatsWrapper.RowStats> result = new IdentityHashMap<>();
+            for (CelestialObject object : visible) {
+                result.put(object, ObjectStatsWrapper.computeRowStats(object, uc, strings));
+            }
+            return result;
+        }, result -> {
+            if (rowStatsPendingFor != simulator) return;  // replaced meanwhile
+            rowStatsPendingFor = null;
+            if (result != null) {
+                rowStats = result;
+                for (ObjectCell cell : objectCells) {
+                    cell.showRowStats();
+                }
+            }
+            if (rowStatsOutdated) requestRowStats(fxApp.getSimulator());
+        });
+    }
+
     private void setTexts(Simulator simulator) {
         UnitsConverter uc = fxApp.getUnitConverter();
-        double kinetic = simulator.calculateTotalKineticEnergy();
-        double potential = simulator.calculateTotalPotentialEnergy();
-        double internal = simulator.calculateTotalInternalEnergy();
-
-        totalPotentialText.setText(uc.energy(potential));
-        totalKineticText.setText(uc.energy(kinetic));
-        totalInternalText.setText(uc.energy(internal));
-        totalEnergyText.setText(uc.energy(potential + kinetic + internal));
-
-        List<CelestialObject> objects = simulator.getObjects();
-        nObjectsText.setText(String.format("%,d", objects.size()));
-        totalMassText.setText(uc.mass(objects
-                .stream()
-                .map(CelestialObject::getMass)
-                .reduce(0.0, Double::sum)
-        ));
+        JmeApp jmeApp = fxApp.getJmeApp();
+        nObjectsText.setText(String.format("%,d", jmeApp.getShownObjects().size()));
+        totalMassText.setText(uc.mass(jmeApp.getShownTotalMass()));
+
+        requestEnergies(simulator);
+    }
+
+    /**
+     * Computes the total energies between two batches of the simulation, and shows them when done. The
+     * potential energy takes every pair of objects, so at most one computation is pending, the texts keep
+     * the last energies until it is done. One for a simulator that has been replaced does not count.
+     */
+    private void requestEnergies(Simulator simulator) {
+        if (energiesPendingFor != null && energiesPendingFor == simulator) return;
+        JmeApp jmeApp = fxApp.getJmeApp();
+        if (simulator == null || jmeApp == null) return;
+
+        energiesPendingFor = simulator;
+        jmeApp.querySimulatorLater(simulator, sim -> new double[]{
+                sim.calculateTotalKineticEnergy(),
+                sim.calculateTotalPotentialEnergy(),
+                sim.calculateTotalInternalEnergy()
+        }, energies -> {
+            if (energiesPendingFor != simulator) return;  // replaced meanwhile
+            energiesPendingFor = null;
+            if (energies == null) return;
+            double kinetic = energies[0];
+            double potential = energies[1];
+            double internal = energies[2];
+
+            UnitsConverter uc = fxApp.getUnitConverter();
+            totalPotentialText.setText(uc.energy(potential));
+            totalKineticText.setText(uc.energy(kinetic));
+            totalInternalText.setText(uc.energy(internal));
+            totalEnergyText.setText(uc.energy(potential + kinetic + internal));
+        });
     }
 
     public void reloadInfoPane(Simulator simulator, List<CelestialObject> loadObjects) {
         long t0 = System.currentTimeMillis();
 
-        Map<CelestialObject, ObjectStatsWrapper> infoMap = new HashMap<>();
-        for (Node node : celestialListPane.getChildren()) {
-            if (node instanceof ObjectStatsWrapper objectStatsWrapper) {
-                infoMap.put(objectStatsWrapper.object, objectStatsWrapper);
-            }
-        }
-
-        celestialListPane.getChildren().clear();
-
         Sorting sorting = sortBox.getSelectionModel().getSelectedItem();
         List<CelestialObject> objectList;
         switch (sorting) {
@@ -246,7 +299,8 @@ public class ObjectListPanel extends AbstractObjectPanel {
                 objectList.sort(Comparator.comparingDouble(CelestialObject::getMass));
                 Collections.reverse(objectList);
             }
-            case HIERATICAL -> objectList = simulator.getObjectsSortByHieraticalDistance();
+            case HIERATICAL -> objectList = fxApp.getJmeApp().querySimulator(simulator,
+                    Simulator::getObjectsSortByHieraticalDistance);
         }
 
         JmeApp jmeApp = fxApp.getJmeApp();
@@ -256,33 +310,36 @@ public class ObjectListPanel extends AbstractObjectPanel {
             }
         }
 
-        for (CelestialObject object : objectList) {
-            ObjectStatsWrapper oi = infoMap.computeIfAbsent(object,
-                    o -> new ObjectStatsWrapper(
-                            object,
-                            simulator,
-                            unitsMethodBox.getValue().unitsConverter,
-                            () -> fxApp.getJmeApp().focusOn(object, false),
-                            this::expandObjectStats,
-                            obj -> fxApp.getJmeApp().landOn(obj),
-                            this::collapseObjectStats,
-                            strings
-                    ));
-            celestialListPane.getChildren().add(oi);
-        }
+        // the cells of the rows still shown keep their stats until the next ones arrive
+        celestialListView.getItems().setAll(objectList);
 
         System.out.println("Reload info pane in " + (System.currentTimeMillis() - t0));
     }
 
-    private void expandObjectStats(ObjectStatsWrapper osw) {
-        celestialContainerVValueCache = celestialContainer.getVvalue();
+    private ObjectStatsWrapper createObjectStatsWrapper() {
+        return new ObjectStatsWrapper(
+                object -> fxApp.getJmeApp().focusOn(object, false),
+                this::expandObjectStats,
+                object -> fxApp.getJmeApp().landOn(object),
+                this::collapseObjectStats,
+                strings
+        );
+    }
+
+    private void expandObjectStats(CelestialObject object) {
+        ObjectStatsWrapper osw = createObjectStatsWrapper();
+        osw.setObject(object);
+        osw.expand();
+        osw.update(fxApp.getSimulator(), unitsMethodBox.getValue().unitsConverter);
+
+        celestialContainer.setFitToHeight(false);
         celestialContainer.setContent(osw);
     }
 
     private void collapseObjectStats() {
-        celestialContainer.setContent(celestialListPane);
-        reloadInfoPane(fxApp.getSimulator(), fxApp.getSimulator().getObjects());
-        celestialContainer.setVvalue(celestialContainerVValueCache);
+        celestialContainer.setFitToHeight(true);
+        celestialContainer.setContent(celestialListView);
+        reloadInfoPane(fxApp.getSimulator(), fxApp.getJmeApp().getShownObjects());
     }
 
     public void reshow() {
@@ -303,6 +360,11 @@ public class ObjectListPanel extends AbstractObjectPanel {
     public void loadAction() {
         fxApp.getControlBar().loadAction();
     }
+
+    @FXML
+    public void replayAction() {
+        fxApp.getControlBar().replayAction();
+    }
     
     @FXML
     public void presetsAction() {
@@ -405,29 +467,43 @@ public class ObjectListPanel extends AbstractObjectPanel {
 
     public void scrollTo(CelestialObject co) {
         Node root = celestialContainer.getContent();
-        if (root == celestialListPane) {
-            Node target = null;
-            for (int i = 0; i < celestialListPane.getChildren().size(); i++) {
-                Node node = celestialListPane.getChildren().get(i);
-                if (node instanceof ObjectStatsWrapper osw) {
-                    if (co == osw.object) {
-                        target = node;
-                        break;
-                    }
-                }
-            }
-            if (target != null) {
-                // Get the bounds of the node relative to the ScrollPane content
-                Bounds nodeBounds = target.localToScene(target.getBoundsInLocal());
-                Bounds scrollPaneBounds = celestialContainer.localToScene(celestialContainer.getBoundsInLocal());
+        if (root == celestialListView) {
+            celestialListView.scrollTo(co);
+        }
+    }
+
+    /**
+     * A row of the list, reused for whichever object is scrolled to it.
+     */
+    private class ObjectCell extends ListCell<CelestialObject> {
+        private final ObjectStatsWrapper wrapper = createObjectStatsWrapper();
+
+        ObjectCell() {
+            objectCells.add(this);
+        }
+
+        @Override
+        protected void updateItem(CelestialObject item, boolean empty) {
+            super.updateItem(item, empty);
 
-                // Calculate the position to scroll
-                double scrollTop = nodeBounds.getMinY() - scrollPaneBounds.getMinY();
+            setText(null);
+            if (empty || item == null) {
+                setGraphic(null);
+            } else {
+                wrapper.setObject(item);
+                setGraphic(wrapper);
+                showRowStats();
+            }
+        }
 
-                // Scroll to the node (vertically in this case)
-                celestialContainer.setVvalue(scrollTop / (celestialContainer.getContent().getBoundsInLocal().getHeight() - celestialContainer.getViewportBounds().getHeight()));
+        void showRowStats() {
+            CelestialObject item = getItem();
+            if (isEmpty() || item == null) return;
+            ObjectStatsWrapper.RowStats stats = rowStats.get(item);
+            if (stats != null) {
+                wrapper.showRowStats(stats);
             } else {
-                System.err.println("?");
+                requestRowStats(fxApp.getSimulator());
             }
         }
     }
@@ -51,28 +51,35 @@ public class ObjectStatsWrapper extends HBox {
     @FXML
     Hyperlink showOrbitPaneBtn;
 
-    private Runnable onFocus, onCollapse;
-    private Consumer<ObjectStatsWrapper> onExpand;
-    private Consumer<CelestialObject> onLand;
+    private final Runnable onCollapse;
+    private final Consumer<CelestialObject> onFocus, onExpand, onLand;
     CelestialObject object;
     OrbitalElements orbitalElements;
+    private RowStats shownRowStats;
+    private boolean updatePending;
 
     private final ResourceBundle strings;
     boolean hasExpanded = false;
     boolean hasStarPaneExpanded = false;
     boolean hasPlanetPaneExpanded = false;
 
-    public ObjectStatsWrapper(CelestialObject celestialObject,
-                              Simulator simulator,
-                              UnitsConverter defaultUnit,
-                              Runnable onFocus,
-                              Consumer<ObjectStatsWrapper> onExpand,
+    /**
+     * Creates an empty wrapper, to be given an object by {@link #setObject(CelestialObject)}.
+     *
+     * @param onExpand called with the object when its details are asked for
+     */
+    public ObjectStatsWrapper(Consumer<CelestialObject> onFocus,
+                              Consumer<CelestialObject> onExpand,
                               Consumer<CelestialObject> onLand,
                               Runnable onCollapse,
                               ResourceBundle resourceBundle) {
         super();
 
         this.strings = resourceBundle;
+        this.onFocus = onFocus;
+        this.onExpand = onExpand;
+        this.onLand = onLand;
+        this.onCollapse = onCollapse;
 
         FXMLLoader fxmlLoader = new FXMLLoader(getClass().getResource(
                 "objectStatsWrapper.fxml"),
@@ -85,13 +92,11 @@ public class ObjectStatsWrapper extends HBox {
         } catch (IOException exception) {
             throw new RuntimeException(exception);
         }
-
-        setObject(celestialObject, simulator, defaultUnit, onFocus, onExpand, onLand, onCollapse);
     }
 
     @FXML
     public void focusAction() {
-        onFocus.run();
+        onFocus.accept(object);
     }
 
     @FXML
@@ -104,20 +109,21 @@ public class ObjectStatsWrapper extends HBox {
 
     }
 
-    private void setObject(CelestialObject celestialObject,
-                           Simulator simulator,
-                           UnitsConverter defaultUnit,
-                           Runnable onFocus,
-                           Consumer<ObjectStatsWrapper> onExpand,
-                           Consumer<CelestialObject> onLand,
-                           Runnable onCollapse) {
+    /**
+     * Shows {@code celestialObject}, with the stats given by {@link #showRowStats(RowStats)} or
+     * {@link #update(Simulator, UnitsConverter)}, or "--" until then.
+     */
+    public void setObject(CelestialObject celestialObject) {
+        if (celestialObject == object) return;
         this.object = celestialObject;
-        this.onFocus = onFocus;
-        this.onExpand = onExpand;
-        this.onCollapse = onCollapse;
-        this.onLand = onLand;
+        this.shownRowStats = null;
 
         nameLabel.setText(object.getNameShowing());
+        typeLabel.setText("");
+        massLabel.setText("--");
+        diameterLabel.setText("--");
+        densityLabel.setText("--");
+        speedLabel.setText("--");
 //        GraphicsContext gc = canvas.getGraphicsContext2D();
 //        gc.setFill(object.getColor());
 //
@@ -129,8 +135,6 @@ public class ObjectStatsWrapper extends HBox {
 //        modelCopy.getTransforms().add(sideToMe);
 
 //        modelPane.getChildren().add(modelCopy);
-
-        update(simulator, defaultUnit);
     }
 
     private void initStarPane() {
@@ -331,21 +335,76 @@ public class ObjectStatsWrapper extends HBox {
         detailPane.add(hide, 0, rowIndex);
     }
 
-    public void update(Simulator simulator, UnitsConverter uc) {
-        typeLabel.setText(objectType());
-        massLabel.setText(uc.mass(object.getMass()));
-        diameterLabel.setText(uc.radius(object.getAverageRadius() * 2));
+    /**
+     * @return the texts of the row of {@code object}, which can be computed on any thread
+     */
+    static RowStats computeRowStats(CelestialObject object, UnitsConverter uc, ResourceBundle strings) {
         double vol = object.getVolume();
-        densityLabel.setText(uc.mass(object.getMass() / vol) + "/m³");
-        speedLabel.setText(uc.speed(object.getSpeed()));
+        return new RowStats(
+                object.getNameShowing(),
+                objectType(object, strings),
+                uc.mass(object.getMass()),
+                uc.radius(object.getAverageRadius() * 2),
+                uc.mass(object.getMass() / vol) + "/m³",
+                uc.speed(object.getSpeed())
+        );
+    }
 
-        if (detailPane.isVisible()) {
-            selfDetail(simulator, uc);
-            orbitRelated(simulator, uc);
+    /**
+     * Shows the texts of the row, only touching the labels that have changed.
+     */
+    void showRowStats(RowStats stats) {
+        RowStats shown = shownRowStats;
+        if (stats.equals(shown)) return;
+        if (shown == null || !stats.name.equals(shown.name)) nameLabel.setText(stats.name);
+        if (shown == null || !stats.type.equals(shown.type)) typeLabel.setText(stats.type);
+        if (shown == null || !stats.mass.equals(shown.mass)) massLabel.setText(stats.mass);
+        if (shown == null || !stats.diameter.equals(shown.diameter)) diameterLabel.setText(stats.diameter);
+        if (shown == null || !stats.density.equals(shown.density)) densityLabel.setText(stats.density);
+        if (shown == null || !stats.speed.equals(shown.speed)) speedLabel.setText(stats.speed);
+        shownRowStats = stats;
+    }
+
+    /**
+     * Computes the stats, and the details if shown, between two batches of the simulation, and shows them
+     * when done. A call while the last one is not done yet does nothing.
+     */
+    public void update(Simulator simulator, UnitsConverter uc) {
+        if (updatePending) return;
+        CelestialObject target = object;
+        boolean withDetail = detailPane.isVisible();
+
+        updatePending = true;
+        FxApp.getInstance().getJmeApp().querySimulatorLater(simulator,
+                sim -> new Update(computeRowStats(target, uc, strings), withDetail ? computeDetail(sim) : null),
+                update -> {
+                    updatePending = false;
+                    if (update == null || object != target) return;
+                    showRowStats(update.rowStats);
+                    if (update.detail != null && detailPane.isVisible()) {
+                        selfDetail(simulator, update.detail, uc);
+                        if (update.detail.orbit != null) orbitRelated(update.detail.orbit, uc);
+                    }
+                });
+    }
+
+    private Detail computeDetail(Simulator simulator) {
+        double received = 0.0;
+        if (!(object.getStatus() instanceof Star)) {
+            for (CelestialObject co : simulator.getObjects()) {
+                double luminosity = co.getLuminosity();
+                if (luminosity > 0 && co != object) {  // shouldn't be this, but just for safety
+                    // is a light source
+                    double distance = VectorOperations.distance(co.getPosition(), object.getPosition());
+                    received += object.calculateLightReceived(luminosity, distance);
+                }
+            }
         }
+        OrbitDetail orbit = simulator.isEnableMasterCalculation() ? computeOrbitDetail(simulator) : null;
+        return new Detail(received, orbit);
     }
 
-    private void selfDetail(Simulator simulator, UnitsConverter uc) {
+    private void selfDetail(Simulator simulator, Detail detail, UnitsConverter uc) {
         eqRadiusLabel.setText(uc.radius(object.getEquatorialRadius()));
         polarRadiusLabel.setText(uc.radius(object.getPolarRadius()));
 
@@ -384,7 +443,7 @@ public class ObjectStatsWrapper extends HBox {
             starPane.setManaged(false);
             planetPane.setVisible(true);
             planetPane.setManaged(true);
-            planetRelated(simulator, uc);
+            planetRelated(detail.received, uc);
         }
     }
 
@@ -396,17 +455,8 @@ public class ObjectStatsWrapper extends HBox {
         colorTempLabel.setText(String.format("%.0fK", colorTemp));
     }
 
-    private void planetRelated(Simulator simulator, UnitsConverter uc) {
+    private void planetRelated(double received, UnitsConverter uc) {
         double albedo = object.estimateAlbedo();
-        double received = 0.0;
-        for (CelestialObject co : simulator.getObjects()) {
-            double luminosity = co.getLuminosity();
-            if (luminosity > 0 && co != object) {  // shouldn't be this, but just for safety
-                // is a light source
-                double distance = VectorOperations.distance(co.getPosition(), object.getPosition());
-                received += object.calculateLightReceived(luminosity, distance);
-            }
-        }
 
         double emitted = object.getThermalEmission();
 
@@ -461,16 +511,39 @@ public class ObjectStatsWrapper extends HBox {
         return null;
     }
 
-    private void orbitRelated(Simulator simulator, UnitsConverter uc) {
-        if (!simulator.isEnableMasterCalculation()) return;
+    private OrbitDetail computeOrbitDetail(Simulator simulator) {
         CelestialObject parent = object.getHillMaster();
         HieraticalSystem system = simulator.getHieraticalSystem(object);
-//        childrenCountLabel.setText(String.valueOf(system.nChildren()));
         int level = object.getLevelFromStar();
+        CelestialObject binaryPartner = null;
         if (level == 0) {
-            CelestialObject binaryPartner = getBinaryStar(system, parent);
+            binaryPartner = getBinaryStar(system, parent);
+        } else if (level == 1 || level == 2) {
+            binaryPartner = getBinaryPlanet(system, parent);
+        }
+        HieraticalSystem.SystemStats systemStats = system.isObject() ? null : system.getCurStats(simulator);
+
+        if (parent != null && parent.getMass() > object.getMass() * Simulator.PLANET_MAX_MASS) {
+            HieraticalSystem parentSystem = simulator.getHieraticalSystem(parent);
+            return new OrbitDetail(level, system.isRoot(), binaryPartner, systemStats, parent,
+                    parentSystem.bindingEnergyOf(system, simulator),
+                    system.getEclipticPlaneNormal(),
+                    simulator.computeOrbitOf(object, parent, true),
+                    VectorOperations.distance(object.getPosition(), parent.getPosition()));
+        } else {
+            return new OrbitDetail(level, system.isRoot(), binaryPartner, systemStats, null,
+                    0, null, null, 0);
+        }
+    }
+
+    private void orbitRelated(OrbitDetail detail, UnitsConverter uc) {
+        CelestialObject parent = detail.parent;
+//        childrenCountLabel.setText(String.valueOf(system.nChildren()));
+        int level = detail.level;
+        if (level == 0) {
+            CelestialObject binaryPartner = detail.binaryPartner;
             if (binaryPartner == null) {
-                hieraticalLabel.setText(levelName(level, system.isRoot()));
+                hieraticalLabel.setText(levelName(level, detail.isRoot));
                 binaryPairPrompt.setVisible(false);
                 binaryPairLabel.setVisible(false);
             } else {
@@ -480,9 +553,9 @@ public class ObjectStatsWrapper extends HBox {
                 binaryPairLabel.setText(binaryPartner.getNameShowing());
             }
         } else if (level == 1 || level == 2) {
-            CelestialObject binaryPartner = getBinaryPlanet(system, parent);
+            CelestialObject binaryPartner = detail.binaryPartner;
             if (binaryPartner == null) {
-                hieraticalLabel.setText(levelName(level, system.isRoot()));
+                hieraticalLabel.setText(levelName(level, detail.isRoot));
                 binaryPairPrompt.setVisible(false);
                 binaryPairLabel.setVisible(false);
             } else {
@@ -497,8 +570,8 @@ public class ObjectStatsWrapper extends HBox {
             binaryPairLabel.setVisible(false);
         }
 
-        if (!system.isObject()) {
-            HieraticalSystem.SystemStats systemStats = system.getCurStats(simulator);
+        if (detail.systemStats != null) {
+            HieraticalSystem.SystemStats systemStats = detail.systemStats;
             circlingChildrenCountLabel.setText(String.valueOf(systemStats.getNClosedObject() - 1));
             subsystemMassLabel.setText(uc.mass(systemStats.getCirclingMass()));
         } else {
@@ -506,11 +579,10 @@ public class ObjectStatsWrapper extends HBox {
             subsystemMassLabel.setText("--");
         }
 
-        if (parent != null && parent.getMass() > object.getMass() * Simulator.PLANET_MAX_MASS) {
+        if (parent != null) {
             parentLabel.setText(parent.getNameShowing());
-            HieraticalSystem parentSystem = simulator.getHieraticalSystem(parent);
 
-            double orbitBinding = parentSystem.bindingEnergyOf(system, simulator);
+            double orbitBinding = detail.orbitBinding;
 //            System.out.println(object.getName() + " " + orbitBinding);
             boolean isOrbiting = orbitBinding < 0;
             if (isOrbiting) {
@@ -519,7 +591,7 @@ public class ObjectStatsWrapper extends HBox {
                 orbitStatusLabel.setText(strings.getString("statusEscape"));
             }
 
-            double[] orbitPlaneNormal = system.getEclipticPlaneNormal();
+            double[] orbitPlaneNormal = detail.orbitPlaneNormal;
 
             double axisTiltToOrbit = Math.acos(VectorOperations.dotProduct(
                     object.getRotationAxis(),
@@ -545,7 +617,7 @@ public class ObjectStatsWrapper extends HBox {
 //                velocity = SystemPresets.rotateFromXYPlaneToPlanetEclipticPlane(velocity, parentEclipticNormal);
 //            }
             // todo: inclination, etc. relative to parent
-            FullOrbitSpec fos = simulator.computeOrbitOf(object, parent, true);
+            FullOrbitSpec fos = detail.orbitSpec;
             orbitalElements = fos.elements;
 //            orbitalElements = OrbitCalculator.computeOrbitSpecs3d(position,
 //                    velocity,
@@ -558,8 +630,7 @@ public class ObjectStatsWrapper extends HBox {
                         orbitBinding);
             }
 
-            double dt = VectorOperations.distance(object.getPosition(), parent.getPosition());
-            distanceLabel.setText(uc.distance(dt));
+            distanceLabel.setText(uc.distance(detail.distance));
 
             double a = orbitalElements.semiMajorAxis;
             double e = orbitalElements.eccentricity;
@@ -600,6 +671,32 @@ public class ObjectStatsWrapper extends HBox {
         }
     }
 
+    /**
+     * The texts of the row of an object, those shown without the details.
+     */
+    record RowStats(String name, String type, String mass, String diameter, String density, String speed) {
+    }
+
+    private record Detail(double received, OrbitDetail orbit) {
+    }
+
+    private record Update(RowStats rowStats, Detail detail) {
+    }
+
+    /**
+     * @param parent the hill master if it is much heavier, then the rest is about the orbit around it
+     */
+    private record OrbitDetail(int level,
+                               boolean isRoot,
+                               CelestialObject binaryPartner,
+                               HieraticalSystem.SystemStats systemStats,
+                               CelestialObject parent,
+                               double orbitBinding,
+                               double[] orbitPlaneNormal,
+                               FullOrbitSpec orbitSpec,
+                               double distance) {
+    }
+
     private String levelName(int level, boolean isRoot) {
         return switch (level) {
             case 0 -> strings.getString("levelStar");
@@ -610,11 +707,11 @@ public class ObjectStatsWrapper extends HBox {
         };
     }
 
-    private String objectType() {
+    private static String objectType(CelestialObject object, ResourceBundle strings) {
         BodyType bodyType = object.getBodyType();
         if (bodyType == BodyType.STAR) {
             if (object.getStatus() instanceof Star star) {
-                return starType(star.getEmissionColorTemperature());
+                return starType(star.getEmissionColorTemperature(), strings);
             } else {
                 return "";  // should not happen
             }
@@ -644,7 +741,7 @@ public class ObjectStatsWrapper extends HBox {
         }
     }
 
-    private String starType(double colorTemp) {
+    private static String starType(double colorTemp, ResourceBundle strings) {
         if (colorTemp == 0) return "";
 
         final String[] classes = {"O", "B", "A", "F", "G", "K", "M"};
@@ -666,19 +763,24 @@ public class ObjectStatsWrapper extends HBox {
         return strings.getString("spectralClfFmt").formatted(type);
     }
 
-    private int starSubDivision(double colorTemp, double tUpper, double tLower) {
+    private static int starSubDivision(double colorTemp, double tUpper, double tLower) {
         return (int) ((tUpper - colorTemp) / (tUpper - tLower) * 10);
     }
 
     @FXML
     public void showOrbitPane() {
+        onExpand.accept(object);
+    }
+
+    /**
+     * Shows the details of the object, to be called on a wrapper shown alone.
+     */
+    public void expand() {
         if (!hasExpanded) {
             initDetailPane();
             hasExpanded = true;
         }
 
-        onExpand.accept(this);
-
         detailPane.setManaged(true);
         detailPane.setVisible(true);
 
@@ -174,10 +174,9 @@ public class FirstPersonMoving {
      * @return the radius at the given latitude.
      */
     private double computeRadiusAtLatitude(double latRad) {
-        CelestialObject co = objectModel.object;
         // Ellipsoid approximation for radius at a given latitude
-        double a = co.getEquatorialRadius();
-        double b = co.getPolarRadius();
+        double a = objectModel.getEquatorialRadius();
+        double b = objectModel.getPolarRadius();
 
         double cosLat = Math.cos(latRad);
         double sinLat = Math.sin(latRad);
@@ -0,0 +1,222 @@
+package com.trashsoftware.gravity2.gui;
+
+import com.jme3.asset.AssetManager;
+import com.jme3.bounding.BoundingBox;
+import com.jme3.material.Material;
+import com.jme3.math.ColorRGBA;
+import com.jme3.math.Ray;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.scene.instancing.InstancedGeometry;
+import com.jme3.scene.shape.Sphere;
+import com.jme3.util.BufferUtils;
+import com.trashsoftware.gravity2.physics.CelestialObject;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Draws many small bodies as instances of one low-poly sphere, with a single draw call.
+ * <p>
+ * The bodies are put again every frame. Their transforms and colors are packed into two direct buffers,
+ * which are uploaded as per-instance vertex data, so no {@link Geometry} is created per body. The buffers
+ * are kept from frame to frame like those of {@link TrailMesh}, and grow to 1.5 times the needed size.
+ * <p>
+ * The bodies are drawn as axis-aligned ellipsoids, neither rotating nor textured: those who need more
+ * keep their own {@link ObjectModel}.
+ */
+class InstancedBodies {
+    // column-major 4x3 world matrix, the 4th row is the normal rotation quaternion, see Instancing.glsllib
+    private static final int TRANSFORM_FLOATS = 16;
+    private static final int COLOR_FLOATS = 4;
+
+    private final BodiesGeometry geometry = new BodiesGeometry();
+    private final VertexBuffer transformData = new VertexBuffer(VertexBuffer.Type.InstanceData);
+    private final VertexBuffer colorData = new VertexBuffer(VertexBuffer.Type.Color);
+    private FloatBuffer transforms;
+    private FloatBuffer colors;
+    private int capacity;
+
+    // for picking
+    private CelestialObject[] objects;
+    private float[] centers;
+    private float[] radii;
+    private int count;
+
+    private final Vector3f boundMin = new Vector3f();
+    private final Vector3f boundMax = new Vector3f();
+
+    InstancedBodies(AssetManager assetManager) {
+        geometry.setMesh(new Sphere(8, 16, 1f));
+
+        Material mat = new Material(assetManager, "Common/MatDefs/Light/Lighting.j3md");
+        mat.setBoolean("UseInstancing", true);
+        mat.setBoolean("UseVertexColor", true);
+        mat.setBoolean("UseMaterialColors", true);
+        mat.setColor("Diffuse", ColorRGBA.White);
+        mat.setColor("Ambient", ColorRGBA.White);
+        geometry.setMaterial(mat);
+
+        transformData.setInstanced(true);
+        colorData.setInstanced(true);
+        allocate(64);
+    }
+
+    private void allocate(int newCapacity) {
+        capacity = newCapacity;
+        transforms = BufferUtils.createFloatBuffer(capacity * TRANSFORM_FLOATS);
+        colors = BufferUtils.createFloatBuffer(capacity * COLOR_FLOATS);
+        if (transformData.getData() == null) {
+            transformData.setupData(VertexBuffer.Usage.Stream, TRANSFORM_FLOATS, VertexBuffer.Format.Float, transforms);
+            colorData.setupData(VertexBuffer.Usage.Stream, COLOR_FLOATS, VertexBuffer.Format.Float, colors);
+            geometry.setTransformUserInstanceData(transformData);
+            geometry.setGlobalUserInstanceData(new VertexBuffer[]{colorData});
+        } else {
+            transformData.updateData(transforms);
+            colorData.updateData(colors);
+        }
+        objects = new CelestialObject[capacity];
+        centers = new float[capacity * 3];
+        radii = new float[capacity];
+    }
+
+    /**
+     * Starts putting at most {@code maxCount} bodies.
+     */
+    void begin(int maxCount) {
+        if (maxCount > capacity) allocate(Math.max(maxCount, capacity * 3 / 2));
+        transforms.clear();
+        colors.clear();
+        count = 0;
+        boundMin.set(Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY);
+        boundMax.set(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY);
+    }
+
+    /**
+     * Puts a body at {@code position} of the scene, with the given radii in the scene.
+     */
+    void put(CelestialObject object, Vector3f position, float equatorialRadius, float polarRadius,
+             ColorRGBA color) {
+        transforms.put(equatorialRadius).put(0).put(0).put(0)
+                .put(0).put(equatorialRadius).put(0).put(0)
+                .put(0).put(0).put(polarRadius).put(0)
+                .put(position.x).put(position.y).put(position.z).put(1);
+        colors.put(color.r).put(color.g).put(color.b).put(color.a);
+
+        objects[count] = object;
+        centers[count * 3] = position.x;
+        centers[count * 3 + 1] = position.y;
+        centers[count * 3 + 2] = position.z;
+        float radius = Math.max(equatorialRadius, polarRadius);
+        radii[count] = radius;
+        count++;
+
+        boundMin.set(Math.min(boundMin.x, position.x - radius),
+                Math.min(boundMin.y, position.y - radius),
+                Math.min(boundMin.z, position.z - radius));
+        boundMax.set(Math.max(boundMax.x, position.x + radius),
+                Math.max(boundMax.y, position.y + radius),
+                Math.max(boundMax.z, position.z + radius));
+    }
+
+    /**
+     * Ends putting and uploads the bodies.
+     */
+    void finish() {
+        transforms.flip();
+        colors.flip();
+        transformData.updateData(transforms);
+        colorData.updateData(colors);
+        geometry.update(count, boundMin, boundMax);
+
+        // not referencing the removed ones
+        for (int i = count; i < objects.length && objects[i] != null; i++) {
+            objects[i] = null;
+        }
+    }
+
+    /**
+     * @param distanceStore if not null and a body is hit, its distance along the ray is stored at index 0
+     * @return the nearest body hit by {@code ray}, or null
+     */
+    CelestialObject pick(Ray ray, float[] distanceStore) {
+        Vector3f origin = ray.getOrigin();
+        Vector3f direction = ray.getDirection();
+        CelestialObject nearest = null;
+        float nearestDistance = Float.POSITIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            float dx = centers[i * 3] - origin.x;
+            float dy = centers[i * 3 + 1] - origin.y;
+            float dz = centers[i * 3 + 2] - origin.z;
+            float along = dx * direction.x + dy * direction.y + dz * direction.z;
+            if (along < 0) continue;
+            float squaredOff = dx * dx + dy * dy + dz * dz - along * along;
+            float squaredRadius = radii[i] * radii[i];
+            if (squaredOff > squaredRadius) continue;
+            float distance = along - (float) Math.sqrt(squaredRadius - squaredOff);
+            if (distance < nearestDistance) {
+                nearestDistance = distance;
+                nearest = objects[i];
+            }
+        }
+        if (nearest != null && distanceStore != null) distanceStore[0] = nearestDistance;
+        return nearest;
+    }
+
+    Geometry getGeometry() {
+        return geometry;
+    }
+
+    /**
+     * Draws the instances from the buffers of {@link InstancedBodies} rather than from geometries added to it.
+     */
+    private static class BodiesGeometry extends InstancedGeometry {
+        private final BoundingBox bound = new BoundingBox();
+        private int count;
+
+        BodiesGeometry() {
+            super("SmallBodies");
+        }
+
+        void update(int count, Vector3f min, Vector3f max) {
+            this.count = count;
+            if (count > 0) {
+                bound.setMinMax(min, max);
+                setCullHint(CullHint.Inherit);
+            } else {
+                setCullHint(CullHint.Always);
+            }
+            setBoundRefresh();
+        }
+
+        @Override
+        public int getNumVisibleInstances() {
+            return count;
+        }
+
+        @Override
+        public int getNumInstances() {
+            return count;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return count == 0;
+        }
+
+        @Override
+        public void updateInstances() {
+        }
+
+        @Override
+        public void updateInstances(Camera cam) {
+        }
+
+        @Override
+        protected void updateWorldBound() {
+            refreshFlags &= ~RF_BOUND;
+            worldBound = bound.clone(worldBound);
+        }
+    }
+}
@@ -29,8 +29,13 @@ import com.trashsoftware.gravity2.utils.OrbitPlane;
 import javafx.application.Platform;
 
 import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 public class JmeApp extends SimpleApplication {
+    // most points of a full path drawn, older parts are decimated
+    private static final int FULL_PATH_POINTS = 4096;
     private static JmeApp instance;
 
     // Load the font for the labels
@@ -54,6 +59,10 @@ public class JmeApp extends SimpleApplication {
     private double pathLength = 5000.0;
 
     protected Simulator simulator;
+    // steps the simulator, or plays a replay, once it is set
+    private volatile SimulationThread simulationThread;
+    private SimulationSnapshot snapshot;
+    private long shownObjectsVersion = -1;
     protected double speed = 1.0;
     protected boolean playing = true;
     private boolean locked = false;
@@ -85,6 +94,10 @@ public class JmeApp extends SimpleApplication {
     private boolean renderLight = true;
     private boolean eclipticOrbitOnly;
     private double minimumMassShowing;
+    // bodies drawn by smallBodies rather than by their own models, see isSmallBody
+    private InstancedBodies smallBodies;
+    private double instancingMaxMass;
+    private float instancingMaxPixels = 3f;
     private CelestialObject focusing;
     private FirstPersonMoving firstPersonStar;
     private final FxApp fxApp;
@@ -94,6 +107,7 @@ public class JmeApp extends SimpleApplication {
     private RefFrame refFrame = RefFrame.STATIC;
 
     protected SpawningObject spawning;
+    private boolean spawningMasterPending;
     private ContourDataList contourDataList;
 
     public static JmeApp getInstance() {
@@ -118,6 +132,8 @@ public class JmeApp extends SimpleApplication {
         setupMouses();
         initLights();
         initMarks();
+        smallBodies = new InstancedBodies(assetManager);
+        rootNode.attachChild(smallBodies.getGeometry());
 
         filterPostProcessor = new FilterPostProcessor(assetManager);
 //        filterPostProcessor.addFilter(new FXAAFilter());
@@ -134,18 +150,16 @@ public class JmeApp extends SimpleApplication {
     @Override
     public void simpleUpdate(float tpf) {
         if (locked) return;
+        updatePathWindows();
+        snapshot = simulationThread.takeSnapshot();
+        if (snapshot.getObjectsVersion() != shownObjectsVersion) {
+            reloadObjects();
+            getFxApp().notifyObjectCountChanged(simulator, snapshot.getObjects());
+        }
+        if (simulationThread.takeTooFast()) {
+            getFxApp().getControlBar().speedDownAction();
+        }
         if (playing) {
-            int nPhysicalFrames = Math.round(tpf * 1000);
-            Simulator.SimResult sr = simulator.simulate(nPhysicalFrames);
-            if (sr == Simulator.SimResult.NUM_CHANGED) {
-                reloadObjects();
-                getFxApp().notifyObjectCountChanged(simulator);
-            } else if (sr == Simulator.SimResult.TOO_FAST) {
-                getFxApp().getControlBar().speedDownAction();
-                reloadObjects();
-                getFxApp().notifyObjectCountChanged(simulator);
-            }
-
             updateRefFrame();
             if (firstPersonStar != null) {
 
@@ -202,8 +216,8 @@ public class JmeApp extends SimpleApplication {
     private void updateAmbientLight() {
         boolean hasLight = false;
         if (renderLight) {
-            for (CelestialObject co : simulator.getObjects()) {
-                if (co.isEmittingLight()) {
+            for (int i = 0; i < snapshot.getObjects().size(); i++) {
+                if (snapshot.isEmittingLight(i)) {
                     hasLight = true;
                     break;
                 }
@@ -368,7 +382,7 @@ public class JmeApp extends SimpleApplication {
 //        threeBodyTest();
 //        plutoCharonTest();
 
-        getFxApp().notifyObjectCountChanged(simulator);
+        getFxApp().notifyObjectCountChanged(simulator, List.copyOf(simulator.getObjects()));
 
         return simulator;
     }
@@ -400,7 +414,8 @@ public class JmeApp extends SimpleApplication {
     }
 
     void reloadObjects() {
-        List<CelestialObject> objects = simulator.getObjects();
+        List<CelestialObject> objects = snapshot.getObjects();
+        shownObjectsVersion = snapshot.getObjectsVersion();
         Set<CelestialObject> objectSet = new HashSet<>(objects);
 
         // garbage collect for those destroyed things
@@ -417,10 +432,11 @@ public class JmeApp extends SimpleApplication {
             }
         }
 
-        for (CelestialObject object : objects) {
+        for (int i = 0; i < objects.size(); i++) {
+            CelestialObject object = objects.get(i);
             ObjectModel om = modelMap.get(object);
             if (om == null) {
-                om = new ObjectModel(object, this);
+                om = new ObjectModel(object, snapshot, i, this);
                 System.out.println("Creating model for " + object.getId());
                 modelMap.put(object, om);
                 rootNode.attachChild(om.objectNode);
@@ -432,6 +448,8 @@ public class JmeApp extends SimpleApplication {
 
                 // Synchronize the global label showing status to the new object
                 om.setShowLabel(showLabel);
+            } else {
+                om.readState(snapshot, i);
             }
             om.notifyObjectChanged();
         }
@@ -447,29 +465,54 @@ public class JmeApp extends SimpleApplication {
     }
 
     void updateModelPositions() {
-        for (CelestialObject object : simulator.getObjects()) {
+        List<CelestialObject> objects = snapshot.getObjects();
+        // pixels of one unit of the scene at distance one
+        float pixelsPerUnit = cam.getHeight() * 0.5f * cam.getFrustumNear() / cam.getFrustumTop();
+        smallBodies.begin(objects.size());
+        for (int i = 0; i < objects.size(); i++) {
+            CelestialObject object = objects.get(i);
             ObjectModel objectModel = modelMap.get(object);
             if (objectModel == null) throw new RuntimeException(object.getId());
-            objectModel.updateModelPosition(
-                    scale
-            );
+            objectModel.updateModelPosition(scale, snapshot, i);
+            boolean small = isSmallBody(objectModel, pixelsPerUnit);
+            objectModel.setInstanced(small);
+            if (small) {
+                smallBodies.put(object,
+                        objectModel.objectNode.getLocalTranslation(),
+                        objectModel.getShownEquatorialRadius(),
+                        objectModel.getShownPolarRadius(),
+                        objectModel.getColor());
+            }
         }
+        smallBodies.finish();
+    }
+
+    /**
+     * A body is small if it is lighter than {@link #instancingMaxMass}, or if it looks smaller than
+     * {@link #instancingMaxPixels} on the screen, and if nothing but a plain sphere has to be drawn for it.
+     */
+    private boolean isSmallBody(ObjectModel om, float pixelsPerUnit) {
+        if (!om.canBeInstanced()) return false;
+        if (firstPersonStar != null && firstPersonStar.objectModel == om) return false;
+        if (om.getMass() < instancingMaxMass) return true;
+        float distance = cam.getLocation().distance(om.objectNode.getLocalTranslation());
+        return om.getShownEquatorialRadius() * pixelsPerUnit < instancingMaxPixels * distance;
     }
 
     private double get1stPersonDefaultScale() {
         double totalRadius = 0;
-        for (CelestialObject co : simulator.getObjects()) {
-            totalRadius += co.getEquatorialRadius();
+        for (int i = 0; i < snapshot.getObjects().size(); i++) {
+            totalRadius += snapshot.getEquatorialRadius(i);
         }
-        double avgRadius = totalRadius / simulator.getObjects().size();
+        double avgRadius = totalRadius / snapshot.getObjects().size();
         return 100.0 / avgRadius;
     }
 
     /**
      * @return a good scale of closely viewing the object
      */
-    private double get3rdPersonObjectViewScale(CelestialObject object) {
-        double radius = object.getEquatorialRadius();
+    private double get3rdPersonObjectViewScale(ObjectModel om) {
+        double radius = om.getEquatorialRadius();
         return 30.0 / radius;
     }
 
@@ -589,8 +632,14 @@ public class JmeApp extends SimpleApplication {
                     Ray ray = new Ray(click3d, dir);
                     rootNode.collideWith(ray, results);
 
+                    float[] smallDistance = new float[1];
+                    CelestialObject small = smallBodies.pick(ray, smallDistance);
+
                     // Check if there's a hit
-                    if (results.size() > 0) {
+                    if (small != null && (results.size() == 0
+                            || smallDistance[0] < results.getClosestCollision().getDistance())) {
+                        focusOn(small, true);
+                    } else if (results.size() > 0) {
                         // Get the closest collision result
                         Geometry target = results.getClosestCollision().getGeometry();
                         if (target != null) {
@@ -769,34 +818,39 @@ public class JmeApp extends SimpleApplication {
     }
 
     private void spawn() {
-        if (!spawning.object.isEmittingLight()) {
-//            List<CelestialObject> sources = new ArrayList<>();
-//            for (CelestialObject co : simulator.getObjects()) {
-//                if (co.isEmittingLight()) sources.add(co);
-//            }
-            List<Star> sources = simulator.getAllLightSources();
-            double temperature = CelestialObject.approxSurfaceTemperatureOf(spawning.object, sources);
-            spawning.object.forceSetSurfaceTemperature(temperature);
-        }
+        CelestialObject object = spawning.object;
+        double orbitSpeed = spawning.orbitSpeed;
+        double axisTilt = spawning.axisTilt;
+        double[] planeNormal = spawning.getPlaneNormal();
+        Simulator simulator = this.simulator;
+        // shown with the next snapshot
+        simulationThread.execute(() -> {
+            if (!object.isEmittingLight()) {
+//                List<CelestialObject> sources = new ArrayList<>();
+//                for (CelestialObject co : simulator.getObjects()) {
+//                    if (co.isEmittingLight()) sources.add(co);
+//                }
+                List<Star> sources = simulator.getAllLightSources();
+                double temperature = CelestialObject.approxSurfaceTemperatureOf(object, sources);
+                object.forceSetSurfaceTemperature(temperature);
+            }
 
-        simulator.addObject(spawning.object);
+            simulator.addObject(object);
 
-        CelestialObject master = spawning.object.getHillMaster();
-        double[] axis = SystemPresets.randomAxisToZ(spawning.axisTilt);
-        if (master != null) {
-            double speed = spawning.orbitSpeed;
-            double[] velocity = simulator.computeVelocityOfN(master, spawning.object, speed,
-                    spawning.getPlaneNormal());
-            spawning.object.setVelocity(velocity);
+            CelestialObject master = object.getHillMaster();
+            double[] axis = SystemPresets.randomAxisToZ(axisTilt);
+            if (master != null) {
+                double[] velocity = simulator.computeVelocityOfN(master, object, orbitSpeed,
+                        planeNormal);
+                object.setVelocity(velocity);
 
-            axis = SystemPresets.rotateFromXYPlaneToPlanetEclipticPlane(axis, spawning.getPlaneNormal());
-        }
+                axis = SystemPresets.rotateFromXYPlaneToPlanetEclipticPlane(axis, planeNormal);
+            }
 
-        spawning.object.updateRotationAxis(axis);
+            object.updateRotationAxis(axis);
+        });
 
         exitSpawningMode();
-        reloadObjects();
-        getFxApp().notifyObjectCountChanged(simulator);
     }
 
     private void rotateAroundPivot(float amount, Vector3f axis) {
@@ -841,7 +895,7 @@ public class JmeApp extends SimpleApplication {
 
         for (ObjectModel objectModel : modelMap.values()) {
             CelestialObject object = objectModel.object;
-            if (object.isExist()) {
+            if (snapshot.indexOf(object) != -1) {
                 if (object.getId().equals(geom.getName())) {
                     focusOn(object, true);
                     break;
@@ -896,7 +950,7 @@ public class JmeApp extends SimpleApplication {
             System.out.println("Focused on " + object.getId());
 
             focusing = object;
-            Vector3d focusingRef = new Vector3d(focusing.getX(), focusing.getY(), focusing.getZ());
+            Vector3d focusingRef = Vector3d.fromArray(snapshot.getPosition(focusing));
             focusingRef = focusingRef.subtract(refOffset);
 
 //            double focusingLastX = focusing.getX() - refOffsetX;
@@ -919,7 +973,7 @@ public class JmeApp extends SimpleApplication {
     }
 
     private void moveScreenWithFocus() {
-        Vector3d focusingRef = new Vector3d(focusing.getX(), focusing.getY(), focusing.getZ());
+        Vector3d focusingRef = Vector3d.fromArray(snapshot.getPosition(focusing));
         focusingRef = focusingRef.subtract(refOffset);
 
         Vector3d newCenter = focusingRef.mult(scale).add(Vector3d.fromVector3f(centerRelToFocus));
@@ -938,29 +992,47 @@ public class JmeApp extends SimpleApplication {
         return screenCenterAutoMove.add(refOffsetAutoMove.mult(scale));
     }
 
+    /**
+     * Finds the masters of the spawning object at its current position, between two batches of the simulation
+     * since the systems and the search tree are being changed by it. They are set a frame or so later,
+     * at most one search is pending.
+     */
     private void computeSpawningMaster() {
-        HieraticalSystem hillMaster = simulator.findMostProbableHillMaster(spawning.object.getPosition());
-        if (hillMaster != null) {
-            CelestialObject dominant = hillMaster.master;
-
-            if (dominant != null && dominant.getMass() > spawning.object.getMass() * Simulator.PLANET_MAX_MASS) {
-                spawning.object.setHillMaster(dominant);
-                if (focusing != null) {
-                    spawning.spawnRelative = focusing;
-                    spawning.updatePlane(focusing);
-                } else {
-                    spawning.spawnRelative = null;
-                    spawning.updatePlane(dominant);
-                }
+        if (spawningMasterPending) return;
+        SpawningObject target = spawning;
+        double[] position = target.object.getPosition().clone();
+        double mass = target.object.getMass();
+        CelestialObject relative = focusing;
+
+        spawningMasterPending = true;
+        querySimulatorThen(simulator, sim -> {
+            CelestialObject dominant = null;
+            double[] planeNormal = null;
+            HieraticalSystem hillMaster = sim.findMostProbableHillMaster(position);
+            if (hillMaster != null && hillMaster.master != null
+                    && hillMaster.master.getMass() > mass * Simulator.PLANET_MAX_MASS) {
+                dominant = hillMaster.master;
+                planeNormal = target.planeNormalOf(relative != null ? relative : dominant);
             }
-        }
+            CelestialObject gravityMaster = sim.findStrongestAttractor(position, mass, target.object);
+            return new SpawningMasters(dominant, planeNormal, gravityMaster);
+        }, masters -> {
+            spawningMasterPending = false;
+            if (masters == null || spawning != target) return;
+            if (masters.hillMaster != null) {
+                target.object.setHillMaster(masters.hillMaster);
+                target.spawnRelative = relative;
+                target.setPlaneNormal(masters.planeNormal);
+            }
+            if (masters.gravityMaster != null) {
+                // this does not consider the mass.
+                // but gravityMaster will be wiped once the spawning is placed
+                target.object.setMaxGravityObject(masters.gravityMaster);
+            }
+        }, this::enqueue);
+    }
 
-        CelestialObject gravityMaster = simulator.computeGravityMaster(spawning.object);
-        if (gravityMaster != null) {
-            // this does not consider the mass.
-            // but gravityMaster will be wiped once the spawning is placed
-            spawning.object.setMaxGravityObject(gravityMaster);
-        }
+    private record SpawningMasters(CelestialObject hillMaster, double[] planeNormal, CelestialObject gravityMaster) {
     }
 
     public float paneX(double realX) {
@@ -1007,21 +1079,21 @@ public class JmeApp extends SimpleApplication {
     private void updateRefFrame() {
         RefFrame refFrame = getRefFrame();
         if (firstPersonStar != null) {
-            double[] pos = firstPersonStar.getObject().getPosition();
+            double[] pos = snapshot.getPosition(firstPersonStar.getObject());
             Vector3d newRef = Vector3d.fromArray(pos);
             refOffsetAutoMove.set(newRef.subtract(refOffset));
             refOffset.set(newRef);
             return;
         } else {
             if (refFrame == RefFrame.SYSTEM) {
-                double[] barycenter = simulator.barycenter();
+                double[] barycenter = snapshot.getBarycenter();
                 Vector3d newRef = Vector3d.fromArray(barycenter);
                 refOffsetAutoMove.set(newRef.subtract(refOffset));
                 refOffset.set(newRef);
                 return;
             } else if (refFrame == RefFrame.TARGET) {
                 if (focusing != null) {
-                    double[] pos = focusing.getPosition();
+                    double[] pos = snapshot.getPosition(focusing);
                     Vector3d newRef = Vector3d.fromArray(pos);
                     refOffsetAutoMove.set(newRef.subtract(refOffset));
                     refOffset.set(newRef);
@@ -1033,37 +1105,41 @@ public class JmeApp extends SimpleApplication {
     }
 
     private void updateBarycentersNodes() {
-        List<HieraticalSystem> roots = simulator.getRootSystems();
-        for (HieraticalSystem hs : roots) {
-            updateBarycenterNode(hs, 2);
+        if (snapshot.hasSystems()) {
+            List<CelestialObject> objects = snapshot.getObjects();
+            for (int i = 0; i < objects.size(); i++) {
+                updateBarycenterNode(i, objects.get(i));
+            }
         }
         if (globalBarycenterNode != null) {
-            double[] barycenter = simulator.barycenter();
+            double[] barycenter = snapshot.getBarycenter();
             Vector3f scenePos = panePosition(barycenter);
             globalBarycenterNode.setLocalTranslation(scenePos);
         }
     }
 
-    private void updateBarycenterNode(HieraticalSystem hs, float markSize) {
-        if (!hs.isObject()) {
-            double[] barycenter = hs.getPosition();
-            Vector3f scenePos = panePosition(barycenter);
+    private void updateBarycenterNode(int index, CelestialObject master) {
+        ObjectModel om = modelMap.get(master);
+        int depth = snapshot.getSystemDepth(index);
+        if (depth != -1) {
+            Vector3f scenePos = new Vector3f(
+                    paneX(snapshot.getSystemPosition(index, 0)),
+                    paneY(snapshot.getSystemPosition(index, 1)),
+                    paneZ(snapshot.getSystemPosition(index, 2))
+            );
 
-            ObjectModel om = modelMap.get(hs.master);
             if (om.barycenterMark == null) {
                 om.barycenterMark = createFullCrossAt(
                         "#Barycenter" + om.object.getId(),
-                        Vector3f.ZERO, markSize,
+                        Vector3f.ZERO, Math.max(0.5f, 2 - 0.5f * depth),
                         ColorRGBA.White);
-                rootNode.attachChild(om.barycenterMark);
 //                System.err.println("System " + hs.master.getName() + " does not have valid barycenter mark");
             }
-            om.barycenterMark.setLocalTranslation(scenePos);
-            for (HieraticalSystem child : hs.getChildrenSorted()) {
-                updateBarycenterNode(child, markSize - 0.5f);
+            if (om.barycenterMark.getParent() == null) {
+                rootNode.attachChild(om.barycenterMark);
             }
+            om.barycenterMark.setLocalTranslation(scenePos);
         } else {
-            ObjectModel om = modelMap.get(hs.master);
             if (om.barycenterMark != null) {
                 rootNode.detachChild(om.barycenterMark);
             }
@@ -1071,6 +1147,7 @@ public class JmeApp extends SimpleApplication {
     }
 
     private void disableBarycenters() {
+        updateCapturing();
         for (ObjectModel om : modelMap.values()) {
             if (om.barycenterMark != null) {
                 rootNode.detachChild(om.barycenterMark);
@@ -1082,16 +1159,12 @@ public class JmeApp extends SimpleApplication {
     }
 
     private void enableBarycenters() {
-        if (simulator.isEnableMasterCalculation()) {
-            List<HieraticalSystem> roots = simulator.getRootSystems();
-            for (HieraticalSystem hs : roots) {
-                enableBarycenterNodes(hs, 2);
-            }
-        }
+        // the marks of the systems are attached by updateBarycentersNodes once the snapshots have them
+        updateCapturing();
 
         // overall barycenter
-        if (!simulator.getObjects().isEmpty()) {
-            double[] barycenter = simulator.barycenter();
+        if (!snapshot.getObjects().isEmpty()) {
+            double[] barycenter = snapshot.getBarycenter();
             float x = paneX(barycenter[0]);
             float y = paneY(barycenter[1]);
             float z = paneZ(barycenter[2]);
@@ -1106,30 +1179,6 @@ public class JmeApp extends SimpleApplication {
         }
     }
 
-    private void enableBarycenterNodes(HieraticalSystem hs, double markSize) {
-        if (!hs.isObject()) {
-            double[] barycenter = hs.getPosition();
-            float x = paneX(barycenter[0]);
-            float y = paneY(barycenter[1]);
-            float z = paneZ(barycenter[2]);
-
-            ObjectModel om = modelMap.get(hs.master);
-            if (om.barycenterMark == null) {
-                om.barycenterMark = createFullCrossAt(
-                        "#Barycenter" + om.object.getId(),
-                        Vector3f.ZERO, (float) markSize,
-                        ColorRGBA.White);
-                om.barycenterMark.setLocalTranslation(x, y, z);
-            }
-
-            rootNode.attachChild(om.barycenterMark);
-
-            for (HieraticalSystem child : hs.getChildrenSorted()) {
-                enableBarycenterNodes(child, Math.max(0.5, markSize - 0.5));
-            }
-        }
-    }
-
     public Node createFullCrossAt(String name, Vector3f center, float length, ColorRGBA color) {
         Node crossNode = new Node(name);
 
@@ -1217,10 +1266,14 @@ public class JmeApp extends SimpleApplication {
     }
 
     private void drawOrbits() {
-        for (CelestialObject object : simulator.getObjects()) {
-            if (object.getMass() >= minimumMassShowing) {
-                drawOrbitOf(object);
+        if (snapshot.hasOrbits()) {
+            List<CelestialObject> objects = snapshot.getObjects();
+            for (int i = 0; i < objects.size(); i++) {
+                CelestialObject object = objects.get(i);
+                if (snapshot.getMass(i) >= minimumMassShowing) {
+                    drawOrbitOf(i, object);
 //                drawFittedOrbitOf(object);
+                }
             }
         }
         if (spawning != null) {
@@ -1271,7 +1324,7 @@ public class JmeApp extends SimpleApplication {
         om.secondaryOrbit.setMesh(ObjectModel.blank);
     }
 
-    private void drawOrbitOf(CelestialObject object, CelestialObject parent, boolean isPrimary) {
+    private void drawOrbitOf(CelestialObject object, FullOrbitSpec specs, double childShare, boolean isPrimary) {
 //        AbstractObject child;
 //        if (isPrimary) {
 //            child = simulator.getHieraticalSystem(object);
@@ -1315,11 +1368,11 @@ public class JmeApp extends SimpleApplication {
 //                velocity,
 //                totalMass,
 //                simulator.getG());
-        FullOrbitSpec specs = simulator.computeOrbitOf(object, parent, isPrimary);
+//        FullOrbitSpec specs = simulator.computeOrbitOf(object, parent, isPrimary);
 
         ObjectModel om = modelMap.get(object);
         if (specs.elements.isElliptical()) {
-            drawEllipticalOrbit(om, specs.barycenter, specs.elements, specs.child.getMass() / specs.massInvolved, isPrimary);
+            drawEllipticalOrbit(om, specs.barycenter, specs.elements, childShare, isPrimary);
         } else {
             if (eclipticOrbitOnly) {
                 if (isPrimary) {
@@ -1328,30 +1381,27 @@ public class JmeApp extends SimpleApplication {
                     om.secondaryOrbit.setMesh(ObjectModel.blank);
                 }
             } else {
-                drawHyperbolicOrbit(om, specs.barycenter, specs.elements, specs.child.getMass() / specs.massInvolved, isPrimary);
+                drawHyperbolicOrbit(om, specs.barycenter, specs.elements, childShare, isPrimary);
             }
         }
     }
 
-    private void drawOrbitOf(CelestialObject object) {
-        CelestialObject parent = object.getHillMaster();
+    /**
+     * Draws the orbits of the {@code index}-th object of the snapshot, computed by the simulation.
+     */
+    private void drawOrbitOf(int index, CelestialObject object) {
+        FullOrbitSpec primary = snapshot.getPrimaryOrbit(index);
+        FullOrbitSpec secondary = snapshot.getSecondaryOrbit(index);
 
-        if (parent == null) {
-            parent = object.getMaxGravityObject();
-            if (parent != null) {
-                drawOrbitOf(object, parent, false);
-            } else {
-                hideSecondaryOrbit(object);
-            }
+        if (primary == null) {
             hidePrimaryOrbit(object);
         } else {
-            drawOrbitOf(object, parent, true);
-            CelestialObject maxObj = object.getMaxGravityObject();
-            if (maxObj != null && maxObj != parent) {
-                drawOrbitOf(object, maxObj, false);
-            } else {
-                hideSecondaryOrbit(object);
-            }
+            drawOrbitOf(object, primary, snapshot.getPrimaryOrbitChildShare(index), true);
+        }
+        if (secondary == null) {
+            hideSecondaryOrbit(object);
+        } else {
+            drawOrbitOf(object, secondary, snapshot.getSecondaryOrbitChildShare(index), false);
         }
     }
 
@@ -1374,186 +1424,82 @@ public class JmeApp extends SimpleApplication {
     }
 
     private void drawRecentPaths() {
-        double visPathLength = pathLength * speed;
-        final double now = simulator.getTimeStepAccumulator();
-        final double earliest = now - visPathLength;
-
-        RefFrame refFrame = getRefFrame();
-
-        int ti = simulator.getDimension();  // time index
-        double[] temp;
-        double[] offset = new double[3];
+        int numPoints = tracePointCount();
+        // relative paths are drawn around where their center is shown
+        Vector3d offset = snapshot.isPathsRelative() ? refOffset : Vector3d.ZERO;
 
-        for (Map.Entry<CelestialObject, Deque<double[]>> entry : simulator.getRecentPaths().entrySet()) {
-            var obj = entry.getKey();
-            if (obj.getMass() < minimumMassShowing) continue;
-            ObjectModel om = getObjectModel(obj);
+        for (int p = 0; p < snapshot.getPathCount(); p++) {
+            if (snapshot.getPathMass(p) < minimumMassShowing) continue;
+            ObjectModel om = getObjectModel(snapshot.getPathObject(p));
             if (om == null) continue;
 
-            var path = entry.getValue();
-            Iterator<double[]> centerPath = switch (refFrame) {
-                case SYSTEM -> simulator.getBarycenterPath().iterator();
-                case TARGET ->
-                        focusing == null ? null : simulator.getRecentPaths().get(focusing).iterator();
-                default -> null;
-            };
-
-            double pointInterval = speed * Simulator.PATH_INTERVAL;
-
-            double lastPointT = Double.MAX_VALUE;
-
-            int numPoints = (int) (visPathLength / pointInterval);
-            Vector3f[] vertices = new Vector3f[numPoints];
-            ColorRGBA[] colors = new ColorRGBA[numPoints];
-
-//            double[] last = obj.getPosition();
-//            double[] lastOffset = new double[3];
-            temp = new double[3];
-
-            int index = 0;
-            for (double[] pos : path) {
-                if (pos[ti] < earliest) {
-                    break;
-                }
-                double tsa = pos[ti];
-
-                if (centerPath != null) {
-                    if (!centerPath.hasNext()) {
-                        break;  // center not alive for this long
-                    }
-                    temp = centerPath.next();
-                }
-
-                if (lastPointT - tsa >= pointInterval) {
-                    lastPointT = tsa;
-                } else {
-                    continue;
-                }
-
-                if (centerPath != null) {
-                    offset[0] = temp[0] - refOffset.x;
-                    offset[1] = temp[1] - refOffset.y;
-                    offset[2] = temp[2] - refOffset.z;
-                }
-
-                if (index == numPoints) break;
-
-                vertices[index] = new Vector3f(
-                        paneX(pos[0] - offset[0]),
-                        paneY(pos[1] - offset[1]),
-                        paneZ(pos[2] - offset[2])
+            TrailMesh traceMesh = om.traceMesh;
+            traceMesh.begin(numPoints);
+            int nPoints = Math.min(snapshot.getTraceSize(p), numPoints);
+            for (int k = 0; k < nPoints; k++) {
+                traceMesh.putPosition(
+                        paneX(snapshot.getTracePoint(p, k, 0) + offset.x),
+                        paneY(snapshot.getTracePoint(p, k, 1) + offset.y),
+                        paneZ(snapshot.getTracePoint(p, k, 2) + offset.z)
                 );
 
                 float begin = 0.25f;
-                float interpolate = (float) index / numPoints * (1 - begin) + begin;
+                float interpolate = (float) k / numPoints * (1 - begin) + begin;
 //                System.out.println(interpolate + " " + index + " " + numPoints);
-                ColorRGBA color = om.color.clone();
-                colors[index] = color.interpolateLocal(backgroundColor,
-                        interpolate);
-
-                index++;
-            }
-
-            if (index < numPoints) {
-                vertices = Arrays.copyOf(vertices, index);
-                colors = Arrays.copyOf(colors, index);
+                traceMesh.putColor(om.color, backgroundColor, interpolate);
             }
 
-            // Create the mesh for the curve
-            Mesh mesh = om.trace.getMesh();
-            if (mesh == null || mesh == ObjectModel.blank) {
-                mesh = new Mesh();
-                mesh.setMode(Mesh.Mode.LineStrip);
-                om.trace.setMesh(mesh);
-            }
-
-            // Set the vertices
-            mesh.setBuffer(VertexBuffer.Type.Position, 3, BufferUtils.createFloatBuffer(vertices));
-
-            // Set the vertex colors
-            mesh.setBuffer(VertexBuffer.Type.Color, 4, BufferUtils.createFloatBuffer(colors));
-
-            // Update the mesh to generate it
-            mesh.updateBound();
-            mesh.updateCounts();
+            traceMesh.finish(om.trace);
         }
     }
 
     private void drawFullPaths() {
 //        tempGeom.clear();
-        RefFrame refFrame = getRefFrame();
-        double[] temp;
-        double[] offset = new double[3];
-        for (Map.Entry<CelestialObject, Deque<double[]>> entry : simulator.getRecentPaths().entrySet()) {
-            var obj = entry.getKey();
-            if (obj.getMass() < minimumMassShowing) continue;
-            var path = entry.getValue();
-            ObjectModel om = getObjectModel(obj);
+        Vector3d offset = snapshot.isPathsRelative() ? refOffset : Vector3d.ZERO;
+        for (int p = 0; p < snapshot.getPathCount(); p++) {
+            if (snapshot.getPathMass(p) < minimumMassShowing) continue;
+            ObjectModel om = getObjectModel(snapshot.getPathObject(p));
             if (om == null) continue;
 
-            Iterator<double[]> centerPath = switch (refFrame) {
-                case SYSTEM -> simulator.getBarycenterPath().iterator();
-                case TARGET ->
-                        focusing == null ? null : simulator.getRecentPaths().get(focusing).iterator();
-                default -> null;
-            };
-
-            temp = new double[3];
-
-            Vector3f[] vertices = new Vector3f[path.size()];
-            int index = 0;
-            for (double[] pos : path) {
-                if (centerPath != null) {
-                    if (!centerPath.hasNext()) {
-                        break;  // center not alive for this long
-                    }
-                    temp = centerPath.next();
-                }
-
-                if (centerPath != null) {
-                    offset[0] = temp[0] - refOffset.x;
-                    offset[1] = temp[1] - refOffset.y;
-                    offset[2] = temp[2] - refOffset.z;
-                }
-
-                Vector3f vector3f = new Vector3f(
-                        paneX(pos[0] - offset[0]),
-                        paneY(pos[1] - offset[1]),
-                        paneZ(pos[2] - offset[2])
+            int nPoints = snapshot.getFullPathSize(p);
+            TrailMesh pathMesh = om.pathMesh;
+            pathMesh.begin(nPoints);
+            for (int k = 0; k < nPoints; k++) {
+                pathMesh.putPosition(
+                        paneX(snapshot.getFullPathPoint(p, k, 0) + offset.x),
+                        paneY(snapshot.getFullPathPoint(p, k, 1) + offset.y),
+                        paneZ(snapshot.getFullPathPoint(p, k, 2) + offset.z)
                 );
-                vertices[index] = vector3f;
-                index++;
             }
 
-            drawPolyLine(vertices, om);
+            pathMesh.finish(om.path);
         }
     }
 
-    private void drawPolyLine(Vector3f[] vertices, ObjectModel om) {
-        int numPoints = vertices.length;
-
-        // Create a mesh and set it to line mode
-        Mesh mesh = om.path.getMesh();
-
-        if (mesh == null || mesh == ObjectModel.blank) {
-            mesh = new Mesh();
-            mesh.setMode(Mesh.Mode.Lines);
-            om.path.setMesh(mesh);
-        }
-
-        // Set the vertices
-        mesh.setBuffer(VertexBuffer.Type.Position, 3, BufferUtils.createFloatBuffer(vertices));
-
-        // Set up indices to connect the vertices as line segments
-        short[] indices = new short[(numPoints - 1) * 2];
-        for (int i = 0; i < numPoints - 1; i++) {
-            indices[i * 2] = (short) i;
-            indices[i * 2 + 1] = (short) (i + 1);
-        }
-        mesh.setBuffer(VertexBuffer.Type.Index, 2, BufferUtils.createShortBuffer(indices));
+    /**
+     * @return the most points of a recent path, one per {@link Simulator#PATH_INTERVAL} of the shown length
+     */
+    private int tracePointCount() {
+        double visPathLength = pathLength * speed;
+        double pointInterval = speed * Simulator.PATH_INTERVAL;
+        return (int) (visPathLength / pointInterval);
+    }
 
-        mesh.updateBound();
-        mesh.updateCounts();
+    /**
+     * Lets the snapshots capture the points of the paths to be drawn, relative to the center of the
+     * reference frame.
+     */
+    private void updatePathWindows() {
+        RefFrame refFrame = getRefFrame();
+        SimulationSnapshot.PathWindows windows = new SimulationSnapshot.PathWindows(
+                pathLength * speed,
+                showTrace ? tracePointCount() : 0,
+                showFullPath ? FULL_PATH_POINTS : 0,
+                refFrame == RefFrame.SYSTEM,
+                refFrame == RefFrame.TARGET ? focusing : null,
+                minimumMassShowing
+        );
+        simulationThread.setPathWindows(windows);
     }
 
     public void toggleLabelShowing(boolean showing) {
@@ -1577,8 +1523,8 @@ public class JmeApp extends SimpleApplication {
 
     private void updateCurvesShowing() {
         for (ObjectModel om : modelMap.values()) {
-            if (om.object.isExist()) {
-                boolean showMe = om.object.getMass() >= minimumMassShowing;
+            if (snapshot.indexOf(om.object) != -1) {
+                boolean showMe = om.getMass() >= minimumMassShowing;
 
                 if (showMe && showOrbit) {
                     rootNode.attachChild(om.orbitNode);
@@ -1604,22 +1550,27 @@ public class JmeApp extends SimpleApplication {
     }
 
     private void updateLabelShowing() {
-        List<CelestialObject> objects = simulator.getObjects();  // sorted from big to small
+        List<CelestialObject> objects = snapshot.getObjects();  // sorted from big to small
 
         // List to keep track of labeled areas
         List<float[]> drawnObjectPoses = new ArrayList<>();
 
         // Attempt to label each object
-        for (CelestialObject co : objects) {
+        for (int i = 0; i < objects.size(); i++) {
+            CelestialObject co = objects.get(i);
             ObjectModel om = modelMap.get(co);
             if (om == null) {
                 // just for safety
                 continue;
             }
-            if (co.getMass() < minimumMassShowing) {
+            if (snapshot.getMass(i) < minimumMassShowing) {
                 om.setShowLabel(false);
             } else if (showLabel) {
-                Vector3f pos = panePosition(co.getPosition());
+                Vector3f pos = new Vector3f(
+                        paneX(snapshot.getPosition(i, 0)),
+                        paneY(snapshot.getPosition(i, 1)),
+                        paneZ(snapshot.getPosition(i, 2))
+                );
                 Vector3f screenPos = cam.getScreenCoordinates(pos);
 
                 float[] canvasPos = new float[]{screenPos.x, screenPos.y};
@@ -1965,6 +1916,9 @@ public class JmeApp extends SimpleApplication {
     @Override
     public void stop() {
         super.stop();
+        if (simulationThread != null) {
+            simulationThread.close();
+        }
 
         FxApp fxApp = getFxApp();
         System.out.println(fxApp + " stop");
@@ -2012,13 +1966,14 @@ public class JmeApp extends SimpleApplication {
 
     public void clearLand() {
         enqueue(() -> {
-            CelestialObject object = firstPersonStar.objectModel.object;
+            ObjectModel om = firstPersonStar.objectModel;
+            CelestialObject object = om.object;
             firstPersonStar.objectModel.rotatingNode.detachChild(firstPersonStar.cameraNode);
             firstPersonStar.objectModel.rotatingNode.detachChild(firstPersonStar.northNode);
             firstPersonStar = null;
 
             setCamera3rdPerson();
-            double targetScale = get3rdPersonObjectViewScale(object);
+            double targetScale = get3rdPersonObjectViewScale(om);
             scale = targetScale;
 //            double factor = targetScale / scale;
 //            scaleScene((float) factor);
@@ -2032,7 +1987,9 @@ public class JmeApp extends SimpleApplication {
     }
 
     private void setSpeed() {
-        simulator.setTimeStep(speed);
+        Simulator simulator = this.simulator;
+        double timeStep = speed;
+        simulationThread.execute(() -> simulator.setTimeStep(timeStep));
     }
 
     public void speedUpAction() {
@@ -2052,6 +2009,7 @@ public class JmeApp extends SimpleApplication {
     public void setPlaying(boolean playing) {
         enqueue(() -> {
             this.playing = playing;
+            if (spawning == null) simulationThread.setPlaying(playing);
         });
     }
 
@@ -2062,6 +2020,7 @@ public class JmeApp extends SimpleApplication {
             this.showOrbit = showOrbit;
 
             updateCurvesShowing();
+            updateCapturing();
         });
     }
 
@@ -2079,7 +2038,8 @@ public class JmeApp extends SimpleApplication {
     
     public void setHighPerformanceMode(boolean highPerformanceMode) {
         enqueue(() -> {
-            simulator.setEnableMasterCalculation(!highPerformanceMode);
+            Simulator simulator = this.simulator;
+            simulationThread.execute(() -> simulator.setEnableMasterCalculation(!highPerformanceMode));
         });
     }
 
@@ -2097,7 +2057,7 @@ public class JmeApp extends SimpleApplication {
 
     public void setShowHillSphere(boolean show) {
         enqueue(() -> {
-            for (CelestialObject object : simulator.getObjects()) {
+            for (CelestialObject object : snapshot.getObjects()) {
                 ObjectModel om = modelMap.get(object);
                 om.setShowHillSphere(show);
             }
@@ -2106,9 +2066,10 @@ public class JmeApp extends SimpleApplication {
 
     public void setHabitableZone(boolean show) {
         enqueue(() -> {
-            for (CelestialObject object : simulator.getObjects()) {
-                ObjectModel om = modelMap.get(object);
-                if (object.getStatus() instanceof Star) {
+            List<CelestialObject> objects = snapshot.getObjects();
+            for (int i = 0; i < objects.size(); i++) {
+                ObjectModel om = modelMap.get(objects.get(i));
+                if (snapshot.getStar(i) != null) {
                     om.setShowHabitableZone(show);
                 } else {
                     om.setShowHabitableZone(false);
@@ -2119,7 +2080,7 @@ public class JmeApp extends SimpleApplication {
 
     public void setShowRocheLimit(boolean show) {
         enqueue(() -> {
-            for (CelestialObject object : simulator.getObjects()) {
+            for (CelestialObject object : snapshot.getObjects()) {
                 ObjectModel om = modelMap.get(object);
                 om.setShowRocheLimit(show);
             }
@@ -2169,6 +2130,9 @@ public class JmeApp extends SimpleApplication {
     public void enterSpawningMode(CelestialObject co, double orbitSpeed,
                                   OrbitPlane orbitPlane, double axisTilt) {
         enqueue(() -> {
+            // the hierarchy it is placed into holds still
+            simulationThread.pause();
+
             ObjectModel om = new ObjectModel(co, this);
             spawning = new SpawningObject(this, om, orbitSpeed, orbitPlane, axisTilt);
 
@@ -2192,6 +2156,7 @@ public class JmeApp extends SimpleApplication {
             gridPlaneNode.hide();
 
             spawning = null;
+            simulationThread.setPlaying(playing);
         }
     }
 
@@ -2211,8 +2176,33 @@ public class JmeApp extends SimpleApplication {
         enqueue(() -> setSimulator(simulator));
     }
 
+    /**
+     * Shows a recorded run instead of simulating, until another simulator is set.
+     */
+    public void startReplayEnqueue(TrajectoryReplay replay) {
+        enqueue(() -> setSimulationThread(new SimulationThread(replay)));
+    }
+
+    public void seekReplayEnqueue(double time) {
+        enqueue(() -> {
+            if (getReplay() != null) simulationThread.seekReplay(time);
+        });
+    }
+
+    public TrajectoryReplay getReplay() {
+        SimulationThread thread = simulationThread;
+        return thread == null ? null : thread.getReplay();
+    }
+
     private void setSimulator(Simulator simulator) {
+        setSimulationThread(new SimulationThread(simulator));
+    }
+
+    private void setSimulationThread(SimulationThread thread) {
         locked = true;
+        if (simulationThread != null) {
+            simulationThread.close();
+        }
         for (ObjectModel om : modelMap.values()) {
             detachObjectModel(om);
             rootNode.detachChild(om.path);
@@ -2220,12 +2210,104 @@ public class JmeApp extends SimpleApplication {
         }
         modelMap.clear();
 
-        this.simulator = simulator;
+        simulationThread = thread;
+        this.simulator = thread.getSimulator();
+        snapshot = thread.takeSnapshot();
         screenCenter.set(0, 0, 0);
         reloadObjects();
+        updateCapturing();
+        thread.setPlaying(playing && spawning == null);
+        thread.start();
         locked = false;
     }
 
+    /**
+     * Lets the snapshots capture what is shown besides the objects.
+     */
+    private void updateCapturing() {
+        simulationThread.setCapturing(showBarycenter, showOrbit);
+    }
+
+    /**
+     * Computes something from {@code simulator} without racing its simulation, for the threads other
+     * than the simulation thread. A simulator not being simulated is used directly.
+     */
+    public <T> T querySimulator(Simulator simulator, Function<Simulator, T> query) {
+        SimulationThread thread = simulationThread;
+        if (thread != null && thread.getSimulator() == simulator) return thread.query(query);
+        return query.apply(simulator);
+    }
+
+    /**
+     * Computes something from {@code simulator} like {@link #querySimulator(Simulator, Function)}, but without
+     * waiting: the result is given to {@code then} on the FX thread, after the current batch.
+     */
+    public <T> void querySimulatorLater(Simulator simulator, Function<Simulator, T> query, Consumer<T> then) {
+        querySimulatorThen(simulator, query, then, Platform::runLater);
+    }
+
+    /**
+     * Computes something from {@code simulator} between two batches, and gives the result to {@code then}
+     * through {@code deliver}. The result is null if the computation failed.
+     */
+    private <T> void querySimulatorThen(Simulator simulator, Function<Simulator, T> query, Consumer<T> then,
+                                        Executor deliver) {
+        SimulationThread thread = simulationThread;
+        if (thread == null || thread.getSimulator() != simulator) {
+            then.accept(query.apply(simulator));
+            return;
+        }
+        thread.execute(() -> {
+            T result;
+            try {
+                result = query.apply(simulator);
+            } catch (RuntimeException e) {
+                // must not stop the simulation
+                e.printStackTrace(System.err);
+                result = null;
+            }
+            T finalResult = result;
+            deliver.execute(() -> then.accept(finalResult));
+        });
+    }
+
+    /**
+     * @return the objects of the latest state of the simulation, the list never changes
+     */
+    public List<CelestialObject> getShownObjects() {
+        SimulationThread thread = simulationThread;
+        return thread == null ? List.of() : thread.getObjects();
+    }
+
+    /**
+     * @return the time of the latest state of the simulation
+     */
+    public double getSimulationTime() {
+        SimulationThread thread = simulationThread;
+        return thread == null ? 0 : thread.getTime();
+    }
+
+    /**
+     * @return the total mass of {@link #getShownObjects()}
+     */
+    public double getShownTotalMass() {
+        SimulationThread thread = simulationThread;
+        return thread == null ? 0 : thread.getTotalMass();
+    }
+
+    /**
+     * Sets which bodies are drawn all together as plain spheres, see {@link InstancedBodies}.
+     *
+     * @param maxMass   bodies lighter than this
+     * @param maxPixels and bodies whose radius on the screen is less than this many pixels
+     */
+    public void setInstancingThresholds(double maxMass, float maxPixels) {
+        enqueue(() -> {
+            this.instancingMaxMass = maxMass;
+            this.instancingMaxPixels = maxPixels;
+        });
+    }
+
     public void updateMinimumMassShowing(double minimumMassShowing) {
         enqueue(() -> {
             this.minimumMassShowing = minimumMassShowing;
@@ -2234,14 +2316,16 @@ public class JmeApp extends SimpleApplication {
     }
 
     public void gcDiedModels() {
-        double now = simulator.getTimeStepAccumulator();
-        for (var it = diedObjects.entrySet().iterator(); it.hasNext(); ) {
-            var entry = it.next();
-            if (now - entry.getKey().getDieTime() > Simulator.MAX_TIME_AFTER_DIE) {
-                // todo: orbit, path
-                it.remove();
+        enqueue(() -> {
+            double now = snapshot.getTime();
+            for (var it = diedObjects.entrySet().iterator(); it.hasNext(); ) {
+                var entry = it.next();
+                if (now - entry.getKey().getDieTime() > Simulator.MAX_TIME_AFTER_DIE) {
+                    // todo: orbit, path
+                    it.remove();
+                }
             }
-        }
+        });
     }
 
     public float getFrameRate() {
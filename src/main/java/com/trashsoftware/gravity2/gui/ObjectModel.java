@@ -29,11 +29,11 @@ import com.trashsoftware.gravity2.fxml.units.UnitsUtil;
 import com.trashsoftware.gravity2.physics.CelestialObject;
 import com.trashsoftware.gravity2.physics.HieraticalSystem;
 import com.trashsoftware.gravity2.physics.OrbitalElements;
+import com.trashsoftware.gravity2.physics.SimulationSnapshot;
 import com.trashsoftware.gravity2.physics.VectorOperations;
 import com.trashsoftware.gravity2.physics.status.Comet;
 import com.trashsoftware.gravity2.physics.status.CometTailParams;
 import com.trashsoftware.gravity2.physics.status.Star;
-import com.trashsoftware.gravity2.physics.status.Status;
 import com.trashsoftware.gravity2.utils.Util;
 
 import java.util.HashMap;
@@ -62,6 +62,7 @@ public class ObjectModel {
     protected Node labelNode;
 
     protected Geometry path;
+    protected final TrailMesh pathMesh = new TrailMesh(false);
 
     protected Geometry orbit;
     protected final Map<String, Node> orbitInfoNodes = new HashMap<>();
@@ -70,16 +71,30 @@ public class ObjectModel {
 
     protected Geometry secondaryOrbit;
     protected Node secondaryOrbitNode;
+    private final OrbitMesh orbitMesh = new OrbitMesh();
+    private final OrbitMesh secondaryOrbitMesh = new OrbitMesh();
 
     protected Geometry trace;
+    protected final TrailMesh traceMesh = new TrailMesh(true);
     protected Geometry axis;
     private boolean showLabel = true;
     private boolean showApPe = false;
     private boolean renderLight = true;
     private boolean showHillSphere = false;
     private boolean showRocheLimit = false;
+    private boolean instanced = false;
+    private float shownEquatorialRadius, shownPolarRadius;
     final int samples;
 
+    // what is shown of the object, read from the snapshots if it is simulated, see readState
+    private double mass;
+    private double equatorialRadius, polarRadius;
+    private double hillRadius, rocheLimit;
+    private double angularVelocity;
+    private final double[] axisDirection = new double[3];
+    private SimulationSnapshot.StarState star;
+    private SimulationSnapshot.CometState comet;
+
 //    protected PointLight emissionLight;
     protected AmbientLight surfaceLight;
 
@@ -102,10 +117,29 @@ public class ObjectModel {
     
     protected LightSourceModel lightModel;
 
+    /**
+     * Creates the model of an object not being simulated, shown as it is.
+     */
     public ObjectModel(CelestialObject object, JmeApp jmeApp) {
+        this(object, null, -1, jmeApp);
+    }
+
+    /**
+     * Creates the model of the {@code index}-th object of {@code snapshot}, or of an object not being simulated
+     * if {@code snapshot} is null.
+     */
+    public ObjectModel(CelestialObject object, SimulationSnapshot snapshot, int index, JmeApp jmeApp) {
         this.jmeApp = jmeApp;
         this.object = object;
-        this.color = GuiUtils.stringToColor(object.getColorCode());
+        String colorCode;
+        if (snapshot == null) {
+            readState();
+            colorCode = object.getColorCode();
+        } else {
+            readState(snapshot, index);
+            colorCode = snapshot.getColorCode(index);
+        }
+        this.color = GuiUtils.stringToColor(colorCode);
         this.opaqueColor = GuiUtils.opaqueOf(this.color, 0.5f);
         this.darkerColor = color.clone();
         darkerColor.interpolateLocal(jmeApp.backgroundColor, 0.9f);
@@ -117,9 +151,9 @@ public class ObjectModel {
             samples = 64;
         }
 
-        Sphere sphere = new Sphere(samples, samples * 2, (float) object.getEquatorialRadius());
+        Sphere sphere = new Sphere(samples, samples * 2, (float) equatorialRadius);
         sphere.setTextureMode(Sphere.TextureMode.Projected);
-        initialRadius = object.getEquatorialRadius();
+        initialRadius = equatorialRadius;
         model = new Geometry(object.getId(), sphere);
         // Create a material for the box
         Material mat = new Material(JmeApp.getInstance().getAssetManager(), "Common/MatDefs/Light/Lighting.j3md");
@@ -196,7 +230,7 @@ public class ObjectModel {
         trace.setMaterial(matLine3);
     }
     
-    private void initCometTails(Comet comet) {
+    private void initCometTails(SimulationSnapshot.CometState comet) {
         cometDustTail = new ParticleEmitter("DustTail-" + object.getId(),
                 ParticleMesh.Type.Triangle, 300);
         Material dustTailMat = new Material(jmeApp.getAssetManager(), "Common/MatDefs/Misc/Particle.j3md");
@@ -214,7 +248,7 @@ public class ObjectModel {
         objectNode.attachChild(cometDustTail);
         
         cometIonTails = new HashMap<>();
-        for (var entry : comet.getIonTails().entrySet()) {
+        for (var entry : comet.ionTails().entrySet()) {
 //            CometTailParams ctp = entry.getValue();
             
             ParticleEmitter ionTail = new ParticleEmitter("IonTail-" + object.getId() + "+" + entry.getKey().getId(),
@@ -250,13 +284,13 @@ public class ObjectModel {
         }
     }
     
-    private void adjustCometTails(Comet comet) {
+    private void adjustCometTails(SimulationSnapshot.CometState comet) {
         float scaleF = (float) jmeApp.getScale();
 //        float speedF = (float) jmeApp.getSimulationSpeed();
         
         Vector3f focusMove = jmeApp.getLastFrameScreenMovement().toVector3f();
         
-        CometTailParams dust = comet.getDustTail();
+        CometTailParams dust = comet.dustTail();
         float timeStepF = (float) dust.timeSteps;
 //        float density1 = (float) (dust.tailDensity / 1e5);
         
@@ -273,7 +307,7 @@ public class ObjectModel {
 //        System.out.println(particleRate1 + " life: " + life1);
         particleRate1 = FastMath.clamp(particleRate1, 5, 50);
         
-        float dustSize = (float) (comet.co.getAverageRadius() * scaleF * 50f);
+        float dustSize = (float) (getAverageRadius() * scaleF * 50f);
         float dustSize2 = dustTailLen / 200f;
         dustSize = Math.max(dustSize, dustSize2);
 
@@ -284,7 +318,7 @@ public class ObjectModel {
         cometDustTail.setEndSize(dustSize * 20);
         cometDustTail.getParticleInfluencer().setInitialVelocity(initVel1);
         
-        for (var entry : comet.getIonTails().entrySet()) {
+        for (var entry : comet.ionTails().entrySet()) {
             CometTailParams ctp = entry.getValue();
             ParticleEmitter ionTail = cometIonTails.get(entry.getKey());
             
@@ -302,7 +336,7 @@ public class ObjectModel {
             float particleRate = ionTail.getMaxNumParticles() / life;
             particleRate = FastMath.clamp(particleRate, 5, 50);
 
-            float ionSize = (float) (comet.co.getAverageRadius() * scaleF * 10f);
+            float ionSize = (float) (getAverageRadius() * scaleF * 10f);
             float ionSize2 = ionTailLen / 500f;
             ionSize = Math.max(ionSize, ionSize2);
             
@@ -337,7 +371,7 @@ public class ObjectModel {
         }
     }
     
-    private void updateCometTail(Comet comet) {
+    private void updateCometTail(SimulationSnapshot.CometState comet) {
         if (cometDustTail == null) {
             initCometTails(comet);
         }
@@ -357,7 +391,6 @@ public class ObjectModel {
     
     private void updateLightSource() {
         Material mat = model.getMaterial();
-        Status status = object.getStatus();
 //        boolean emitting = object.isEmittingLight();
         boolean changed = false;
         if (renderLight) {
@@ -368,7 +401,7 @@ public class ObjectModel {
 //                jmeApp.filterPostProcessor.addFilter(bloom);
 //            }
             
-            if (status instanceof Star star) {
+            if (star != null) {
                 if (lightModel == null) {
                     lightModel = new LightSourceModel();
                     lightModel.addThisTo(jmeApp);
@@ -377,7 +410,7 @@ public class ObjectModel {
                     model.addLight(surfaceLight);
 
                     model.setShadowMode(RenderQueue.ShadowMode.Off);
-                    adjustPointLight(star);
+                    adjustPointLight();
                     changed = true;
                 }
                 
@@ -487,15 +520,15 @@ public class ObjectModel {
         surfaceLight.setColor(lightColor);
     }
 
-    private void adjustPointLight(Star star) {
+    private void adjustPointLight() {
         double scale = jmeApp.getScale();
-        double luminosity = object.getLuminosity();
+        double luminosity = star.luminosity();
 
         if (object.getLightColorCode() != null) {
             ColorRGBA lightColor = GuiUtils.stringToColor(object.getLightColorCode());
             updateEmissionColor(lightColor);
         } else {
-            double colorTemp = star.getEmissionColorTemperature();
+            double colorTemp = star.emissionColorTemperature();
             if (colorTemp != displayingEmitLightColorTemp) {
                 displayingEmitLightColorTemp = colorTemp;
                 ColorRGBA lightColor = GuiUtils.stringToColor(GuiUtils.temperatureToRGBString(colorTemp));
@@ -529,7 +562,7 @@ public class ObjectModel {
         Mesh mesh = new Mesh();
         Vector3f[] vertices = new Vector3f[2];
         vertices[0] = new Vector3f(0, 0, 0);
-        vertices[1] = new Vector3f(0, 0, (float) (object.getPolarRadius() * 1.5));
+        vertices[1] = new Vector3f(0, 0, (float) (polarRadius * 1.5));
 
         mesh.setMode(Mesh.Mode.Lines);
         mesh.setBuffer(VertexBuffer.Type.Position, 3, BufferUtils.createFloatBuffer(vertices));
@@ -545,7 +578,7 @@ public class ObjectModel {
 
     private Geometry createTransparentSphere(String name, ColorRGBA baseColor, float opacity) {
         // Create a sphere mesh
-        Sphere sphereMesh = new Sphere(32, 64, (float) object.getEquatorialRadius());  // 32 segments, radius 1
+        Sphere sphereMesh = new Sphere(32, 64, (float) equatorialRadius);  // 32 segments, radius 1
         Geometry sphere = new Geometry(name, sphereMesh);
 
         // Create an unshaded material for the sphere
@@ -573,7 +606,7 @@ public class ObjectModel {
      */
     public void notifyObjectChanged() {
         // set the visual rotation axis
-        double[] axisD = object.getRotationAxis();
+        double[] axisD = axisDirection;
         rotationAxis = new Vector3f((float) axisD[0], (float) axisD[1], (float) axisD[2]).normalizeLocal();
 
         tiltRotation = new Quaternion();
@@ -584,46 +617,68 @@ public class ObjectModel {
         updateLightSource();
     }
 
+    /**
+     * Moves the model to where the object is, for an object not being simulated.
+     */
     public void updateModelPosition(double scale) {
-        double baseScale = object.getEquatorialRadius() / initialRadius;
+        readState();
+        double[] position = object.getPosition();
+        updateModelPosition(scale, position[0], position[1], position[2], object.getRotationAngle());
+    }
+
+    /**
+     * Moves the model to the {@code index}-th object of {@code snapshot}, which may be older than the object itself.
+     */
+    public void updateModelPosition(double scale, SimulationSnapshot snapshot, int index) {
+        readState(snapshot, index);
+        updateModelPosition(scale,
+                snapshot.getPosition(index, 0),
+                snapshot.getPosition(index, 1),
+                snapshot.getPosition(index, 2),
+                snapshot.getRotationAngle(index));
+    }
+
+    private void updateModelPosition(double scale, double x, double y, double z, double rotationAngle) {
+        double baseScale = equatorialRadius / initialRadius;
 //        if (object.getEquatorialRadius() != initialRadius) {
 //            updateSphereMesh();
 //        }
 
         double radiusScale = scale * baseScale;
-        if (object.getEquatorialRadius() * scale < 0.1) {
-            radiusScale = 0.1 / object.getEquatorialRadius();
+        if (equatorialRadius * scale < 0.1) {
+            radiusScale = 0.1 / equatorialRadius;
         }
-        double ratio = object.getPolarRadius() / object.getEquatorialRadius();
+        double ratio = polarRadius / equatorialRadius;
         float eqScale = (float) radiusScale;
         float polarScale = (float) (radiusScale * ratio);
         rotatingNode.setLocalScale(eqScale, eqScale, polarScale);
+        shownEquatorialRadius = (float) (eqScale * initialRadius);
+        shownPolarRadius = (float) (polarScale * initialRadius);
 
-        float shift = (float) (scale * object.getEquatorialRadius());
+        float shift = (float) (scale * equatorialRadius);
 
         labelNode.setLocalTranslation(shift, shift, 0f);
 
-        double[] position = object.getPosition();
         Vector3f xyz = new Vector3f(
-                jmeApp.paneX(position[0]),
-                jmeApp.paneY(position[1]),
-                jmeApp.paneZ(position[2])
+                jmeApp.paneX(x),
+                jmeApp.paneY(y),
+                jmeApp.paneZ(z)
         );
 
         objectNode.setLocalTranslation(xyz);
 
-        if (object.getAngularVelocity() != 0) {
-            rotateModel();
+        if (angularVelocity != 0) {
+            rotateModel(rotationAngle);
         }
-        if (renderLight && object.getStatus() instanceof Star star) {
+        if (renderLight && star != null) {
             if (lightModel == null) {
                 updateLightSource();
             }
             lightModel.emissionLight.setPosition(xyz);
-            adjustPointLight(star);
+            adjustPointLight();
 //            System.out.println(object.getName() + " " + emissionLight.getPosition() + " " + emissionLight.getRadius());
         }
-        if (object.getStatus() instanceof Comet comet) {
+        if (comet != null) {
             updateCometTail(comet);
         } else {
             if (cometDustTail != null) {
@@ -648,9 +703,6 @@ public class ObjectModel {
         double lat = Math.toRadians(latitude);
         double lon = Math.toRadians(longitude);
 
-        double equatorialRadius = object.getEquatorialRadius();
-        double polarRadius = object.getPolarRadius();
-
         // Calculate the surface position on the ellipsoid
         double x = equatorialRadius * Math.cos(lat) * Math.cos(lon); // X-axis
         double z = polarRadius * Math.sin(lat);                          // Y-axis (polar)
@@ -674,8 +726,8 @@ public class ObjectModel {
 
     // Method to calculate the surface normal at the given latitude and longitude on an ellipsoid
     public Vector3f calculateSurfaceNormal(float latitude, float longitude) {
-        float equatorialRadius = (float) (object.getEquatorialRadius());
-        float polarRadius = (float) (object.getPolarRadius());
+        float equatorialRadius = (float) this.equatorialRadius;
+        float polarRadius = (float) this.polarRadius;
 
         // Convert latitude and longitude to radians
         float lat = FastMath.DEG_TO_RAD * latitude;
@@ -691,9 +743,9 @@ public class ObjectModel {
                 z / (equatorialRadius * equatorialRadius)).normalizeLocal();
     }
 
-    private void rotateModel() {
+    private void rotateModel(double rotationAngle) {
         // set the visual rotation axis
-        double[] axisD = object.getRotationAxis();
+        double[] axisD = axisDirection;
         Vector3f axis = new Vector3f((float) axisD[0], (float) axisD[1], (float) axisD[2]).normalizeLocal();
 
         if (!axis.equals(rotationAxis)) {
@@ -701,7 +753,7 @@ public class ObjectModel {
         }
 
         // Convert the current rotation degrees to radians
-        float currentRotationRad = FastMath.DEG_TO_RAD * (float) object.getRotationAngle();
+        float currentRotationRad = FastMath.DEG_TO_RAD * (float) rotationAngle;
 
         // Create a quaternion representing the current rotation around the Earth's axis (Y-axis)
         Quaternion rotation = new Quaternion();
@@ -714,6 +766,46 @@ public class ObjectModel {
         rotatingNode.setLocalRotation(combinedRotation);
     }
 
+    /**
+     * @return whether this model can be drawn by {@link InstancedBodies}, as a plain colored ellipsoid
+     */
+    boolean canBeInstanced() {
+        return object.getTexturePath() == null
+                && !(star != null && star.luminosity() > 0)
+                && lightModel == null
+                && cometDustTail == null
+                && comet == null;
+    }
+
+    /**
+     * Sets whether the sphere is drawn by {@link InstancedBodies} instead of this model. The label and
+     * the other parts are still shown by this model.
+     */
+    void setInstanced(boolean instanced) {
+        if (this.instanced == instanced) return;
+        this.instanced = instanced;
+        if (instanced) {
+            objectNode.detachChild(rotatingNode);
+        } else {
+            objectNode.attachChild(rotatingNode);
+        }
+    }
+
+    boolean isInstanced() {
+        return instanced;
+    }
+
+    /**
+     * @return the equatorial radius in the scene, as of the last {@link #updateModelPosition}
+     */
+    float getShownEquatorialRadius() {
+        return shownEquatorialRadius;
+    }
+
+    float getShownPolarRadius() {
+        return shownPolarRadius;
+    }
+
     public void setShowApPe(boolean showApPe) {
         // todo
         boolean wasShow = this.showApPe;
@@ -814,8 +906,8 @@ public class ObjectModel {
     }
 
     private void adjustHillSphereScale(float baseScale) {
-        if (hillSphereModel != null && object.getHillMaster() != null) {
-            float ratio = (float) (object.getHillRadius() / object.getEquatorialRadius());
+        if (hillSphereModel != null && !Double.isNaN(hillRadius)) {
+            float ratio = (float) (hillRadius / equatorialRadius);
             hillSphereModel.setLocalScale(ratio * baseScale);
 //            System.out.println(hillSphereModel.getWorldTranslation() + " " + hillSphereModel.getWorldScale());
         }
@@ -823,7 +915,7 @@ public class ObjectModel {
 
     private void adjustRocheLimitScale(float baseScale) {
         if (rocheLimitModel != null) {
-            float ratio = (float) (object.getApproxRocheLimit() / object.getEquatorialRadius());
+            float ratio = (float) (rocheLimit / equatorialRadius);
 //            System.out.println(object.getName() + ratio);
             rocheLimitModel.setLocalScale(ratio * baseScale);
         }
@@ -831,10 +923,10 @@ public class ObjectModel {
     
     private void adjustHabitableZoneScale(float baseScale) {
         if (lightModel != null && lightModel.habitableZoneOuter != null) {
-            if (object.getStatus() instanceof Star star) {
-                double[] innerOuter = star.estimateHabitableZone();
-                float innerRatio = (float) (innerOuter[0] / object.getEquatorialRadius());
-                float outerRatio = (float) (innerOuter[1] / object.getEquatorialRadius());
+            if (star != null) {
+                double[] innerOuter = star.habitableZone();
+                float innerRatio = (float) (innerOuter[0] / equatorialRadius);
+                float outerRatio = (float) (innerOuter[1] / equatorialRadius);
                 lightModel.habitableZoneInner.setLocalScale(innerRatio * baseScale);
                 lightModel.habitableZoneOuter.setLocalScale(outerRatio * baseScale);
             }
@@ -848,25 +940,9 @@ public class ObjectModel {
             double childMassPercent,
             boolean isPrimary
     ) {
-        Mesh mesh;
-        Node node;
-        if (isPrimary) {
-            mesh = orbit.getMesh();
-            if (mesh == null || mesh == ObjectModel.blank) {
-                mesh = new Mesh();
-                mesh.setMode(Mesh.Mode.LineStrip);
-                orbit.setMesh(mesh);
-            }
-            node = orbitNode;
-        } else {
-            mesh = secondaryOrbit.getMesh();
-            if (mesh == null || mesh == ObjectModel.blank) {
-                mesh = new Mesh();
-                mesh.setMode(Mesh.Mode.LineStrip);
-                secondaryOrbit.setMesh(mesh);
-            }
-            node = secondaryOrbitNode;
-        }
+        Geometry geometry = isPrimary ? orbit : secondaryOrbit;
+        OrbitMesh orbitMesh = isPrimary ? this.orbitMesh : secondaryOrbitMesh;
+        Node node = isPrimary ? orbitNode : secondaryOrbitNode;
 
         Vector3f bc = jmeApp.panePosition(barycenter);
 
@@ -876,32 +952,8 @@ public class ObjectModel {
         float omegaBig = (float) (FastMath.DEG_TO_RAD * (oe.ascendingNode));
         float i = (float) (FastMath.DEG_TO_RAD * oe.inclination);
 
-        Vector3f[] vertices = new Vector3f[samples + 1];
-        for (int j = 0; j < samples; j++) {
-            float theta = j * 2 * FastMath.PI / samples;
-            float r = a * (1 - e * e) / (1 + e * FastMath.cos(theta));
-            float x = r * FastMath.cos(theta);
-            float y = r * FastMath.sin(theta);
-            float z = 0;
-
-            // Convert to 3D space using orbital elements
-            vertices[j] = new Vector3f(x, y, z);
-        }
-        // manually create a line loop
-        vertices[vertices.length - 1] = vertices[0].clone();
-
-        // Set up the index buffer for a line loop
-        short[] indices = new short[samples + 1];
-        for (int j = 0; j < samples; j++) {
-            indices[j] = (short) j;
-        }
-        indices[indices.length - 1] = indices[0];
-
-        mesh.setBuffer(VertexBuffer.Type.Position, 3, BufferUtils.createFloatBuffer(vertices));
-        mesh.setBuffer(VertexBuffer.Type.Index, 1, BufferUtils.createShortBuffer(indices));
-//        mesh.setMode(Mesh.Mode.LineLoop); // Create a closed loop
-        mesh.updateBound();
-        mesh.updateCounts();
+        orbitMesh.showEllipse(geometry, e, samples);
+        geometry.setLocalScale(a);
 
         // Create the quaternions for each rotation
         Quaternion rotateZ1 = new Quaternion();
@@ -962,63 +1014,20 @@ public class ObjectModel {
             double childMassPercent,
             boolean isPrimary) {
 
-        Mesh mesh;
-        Node node;
-        if (isPrimary) {
-            mesh = orbit.getMesh();
-            if (mesh == null || mesh == ObjectModel.blank) {
-                mesh = new Mesh();
-                mesh.setMode(Mesh.Mode.LineStrip);
-                orbit.setMesh(mesh);
-            }
-            node = orbitNode;
-        } else {
-            mesh = secondaryOrbit.getMesh();
-            if (mesh == null || mesh == ObjectModel.blank) {
-                mesh = new Mesh();
-                mesh.setMode(Mesh.Mode.LineStrip);
-                secondaryOrbit.setMesh(mesh);
-            }
-            node = secondaryOrbitNode;
-        }
+        Geometry geometry = isPrimary ? orbit : secondaryOrbit;
+        OrbitMesh orbitMesh = isPrimary ? this.orbitMesh : secondaryOrbitMesh;
+        Node node = isPrimary ? orbitNode : secondaryOrbitNode;
 
         Vector3f bc = jmeApp.panePosition(barycenter);
 
         float a = (float) (oe.semiMajorAxis * jmeApp.scale * (1 - childMassPercent));  // Semi-major axis
         float e = (float) oe.eccentricity;                   // Eccentricity
-        float b = a * FastMath.sqrt(e * e - 1);
         float omega = (float) (FastMath.DEG_TO_RAD * (oe.argumentOfPeriapsis));   // Argument of periapsis
         float omegaBig = (float) (FastMath.DEG_TO_RAD * (oe.ascendingNode));      // Longitude of ascending node
         float i = (float) (FastMath.DEG_TO_RAD * oe.inclination);                 // Inclination
 
-        Vector3f[] vertices = new Vector3f[samples + 1];
-//        float hyperbolicLimit = 5.0f;  // Controls how far the orbit goes outward
-
-        for (int j = 0; j < samples; j++) {
-            float theta = -FastMath.PI + 2 * FastMath.PI * j / (samples - 1);  // Vary theta for hyperbolic orbit
-
-            float x = a * ((float) Math.cosh(theta) - e);
-            float y = b * (float) Math.sinh(theta);
-            float z = 0;
-
-            // Convert to 3D space using orbital elements
-            Vector3f point = new Vector3f(x, y, z);
-
-            vertices[j] = point;
-        }
-
-        // Set up the index buffer
-        short[] indices = new short[samples];
-        for (int j = 0; j < samples; j++) {
-            indices[j] = (short) j;
-        }
-
-        // Set mesh data
-        mesh.setBuffer(VertexBuffer.Type.Position, 3, BufferUtils.createFloatBuffer(vertices));
-        mesh.setBuffer(VertexBuffer.Type.Index, 1, BufferUtils.createShortBuffer(indices));
-        mesh.setMode(Mesh.Mode.LineStrip);  // Open curve for hyperbolic orbits
-        mesh.updateBound();
-        mesh.updateCounts();
+        orbitMesh.showHyperbola(geometry, e, samples);
+        geometry.setLocalScale(a);
 
         // Create the quaternions for each rotation
         Quaternion rotateZ1 = new Quaternion();
@@ -1057,4 +1066,55 @@ public class ObjectModel {
     public ColorRGBA getColor() {
         return color;
     }
+
+    /**
+     * Takes what is shown of the object from the {@code index}-th object of {@code snapshot}.
+     */
+    void readState(SimulationSnapshot snapshot, int index) {
+        mass = snapshot.getMass(index);
+        equatorialRadius = snapshot.getEquatorialRadius(index);
+        polarRadius = snapshot.getPolarRadius(index);
+        hillRadius = snapshot.getHillRadius(index);
+        rocheLimit = snapshot.getRocheLimit(index);
+        angularVelocity = snapshot.getAngularVelocity(index);
+        for (int d = 0; d < axisDirection.length; d++) {
+            axisDirection[d] = snapshot.getRotationAxis(index, d);
+        }
+        star = snapshot.getStar(index);
+        comet = snapshot.getComet(index);
+    }
+
+    /**
+     * Takes what is shown of the object from the object itself, which must not be being simulated.
+     */
+    private void readState() {
+        mass = object.getMass();
+        equatorialRadius = object.getEquatorialRadius();
+        polarRadius = object.getPolarRadius();
+        hillRadius = object.getHillMaster() == null ? Double.NaN : object.getHillRadius();
+        rocheLimit = object.getApproxRocheLimit();
+        angularVelocity = object.getAngularVelocity();
+        System.arraycopy(object.getRotationAxis(), 0, axisDirection, 0, axisDirection.length);
+        star = object.getStatus() instanceof Star s ? SimulationSnapshot.StarState.of(s) : null;
+        comet = object.getStatus() instanceof Comet c ? SimulationSnapshot.CometState.of(c) : null;
+    }
+
+    /**
+     * @return the mass of the object, as of the last state shown
+     */
+    double getMass() {
+        return mass;
+    }
+
+    double getEquatorialRadius() {
+        return equatorialRadius;
+    }
+
+    double getPolarRadius() {
+        return polarRadius;
+    }
+
+    private double getAverageRadius() {
+        return (2 * equatorialRadius + polarRadius) / 3;
+    }
 }
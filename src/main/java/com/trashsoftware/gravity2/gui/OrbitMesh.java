@@ -0,0 +1,94 @@
+package com.trashsoftware.gravity2.gui;
+
+import com.jme3.math.FastMath;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.util.BufferUtils;
+
+import java.nio.FloatBuffer;
+
+/**
+ * The conic of an orbit in its own plane, with a semi-major axis of 1 and the periapsis on the x axis.
+ * <p>
+ * The shape of a conic only depends on its eccentricity, its size is the scale of the geometry and its
+ * place is the transform of the node holding it. So the vertices are only rewritten when the eccentricity
+ * has changed by more than {@link #ECCENTRICITY_TOLERANCE} or the conic has changed its kind. Otherwise,
+ * as for most orbits most of the time, showing it costs no more than setting a transform.
+ */
+class OrbitMesh {
+    // the conic drawn is off by at most about this much of its semi-major axis
+    static final float ECCENTRICITY_TOLERANCE = 1e-4f;
+
+    private final Mesh mesh = new Mesh();
+    private FloatBuffer positions;
+    private int capacity;
+
+    private boolean hyperbolic;
+    private int samples;
+    private float eccentricity = Float.NaN;
+
+    OrbitMesh() {
+        mesh.setMode(Mesh.Mode.LineStrip);
+    }
+
+    /**
+     * Shows the ellipse of {@code eccentricity} in {@code geometry}, closed, with {@code samples} points.
+     */
+    void showEllipse(Geometry geometry, float eccentricity, int samples) {
+        if (!isValid(false, eccentricity, samples)) {
+            begin(false, eccentricity, samples, samples + 1);
+            for (int j = 0; j < samples; j++) {
+                float theta = j * 2 * FastMath.PI / samples;
+                float r = (1 - eccentricity * eccentricity) / (1 + eccentricity * FastMath.cos(theta));
+                positions.put(r * FastMath.cos(theta)).put(r * FastMath.sin(theta)).put(0);
+            }
+            // manually create a line loop
+            positions.put(positions.get(0)).put(positions.get(1)).put(0);
+            finish();
+        }
+        if (geometry.getMesh() != mesh) geometry.setMesh(mesh);
+    }
+
+    /**
+     * Shows the branch of the hyperbola of {@code eccentricity} in {@code geometry}, with {@code samples}
+     * points. As for the ellipse, the geometry is to be scaled by the semi-major axis of the orbit.
+     */
+    void showHyperbola(Geometry geometry, float eccentricity, int samples) {
+        if (!isValid(true, eccentricity, samples)) {
+            begin(true, eccentricity, samples, samples);
+            float b = FastMath.sqrt(eccentricity * eccentricity - 1);
+            for (int j = 0; j < samples; j++) {
+                float theta = -FastMath.PI + 2 * FastMath.PI * j / (samples - 1);  // Vary theta for hyperbolic orbit
+                positions.put((float) Math.cosh(theta) - eccentricity).put(b * (float) Math.sinh(theta)).put(0);
+            }
+            finish();
+        }
+        if (geometry.getMesh() != mesh) geometry.setMesh(mesh);
+    }
+
+    private boolean isValid(boolean hyperbolic, float eccentricity, int samples) {
+        return this.hyperbolic == hyperbolic
+                && this.samples == samples
+                && Math.abs(this.eccentricity - eccentricity) <= ECCENTRICITY_TOLERANCE;
+    }
+
+    private void begin(boolean hyperbolic, float eccentricity, int samples, int points) {
+        this.hyperbolic = hyperbolic;
+        this.eccentricity = eccentricity;
+        this.samples = samples;
+        if (points > capacity) {
+            capacity = points;
+            positions = BufferUtils.createFloatBuffer(capacity * 3);
+            mesh.setBuffer(VertexBuffer.Type.Position, 3, positions);
+        }
+        positions.clear();
+    }
+
+    private void finish() {
+        positions.flip();
+        mesh.getBuffer(VertexBuffer.Type.Position).updateData(positions);
+        mesh.updateCounts();
+        mesh.updateBound();
+    }
+}
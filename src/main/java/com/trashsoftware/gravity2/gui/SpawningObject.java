@@ -42,11 +42,22 @@ public class SpawningObject {
     }
     
     public void updatePlane(CelestialObject reference) {
-        switch (orbitPlane) {
-            case XY -> this.planeNormal = new double[]{0, 0, 1};
-            case EQUATORIAL -> this.planeNormal = reference.getRotationAxis();
-            case ECLIPTIC -> this.planeNormal = reference.getEclipticPlaneNormal();
-        }
+        this.planeNormal = planeNormalOf(reference);
+    }
+
+    /**
+     * @return a copy of the normal of the plane to spawn in around {@code reference}
+     */
+    public double[] planeNormalOf(CelestialObject reference) {
+        return switch (orbitPlane) {
+            case XY -> new double[]{0, 0, 1};
+            case EQUATORIAL -> reference.getRotationAxis().clone();
+            case ECLIPTIC -> reference.getEclipticPlaneNormal().clone();
+        };
+    }
+
+    public void setPlaneNormal(double[] planeNormal) {
+        this.planeNormal = planeNormal;
     }
 
     public double[] getPlaneNormal() {
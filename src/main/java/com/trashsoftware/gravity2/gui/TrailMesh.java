@@ -0,0 +1,79 @@
+package com.trashsoftware.gravity2.gui;
+
+import com.jme3.math.ColorRGBA;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.util.BufferUtils;
+
+import java.nio.FloatBuffer;
+
+/**
+ * A line strip whose vertices are rewritten every frame, for the paths and traces of objects.
+ * <p>
+ * The position and color buffers are direct buffers kept from frame to frame and written in place,
+ * so drawing a line allocates nothing unless it has more points than ever before. Then the buffers
+ * grow to 1.5 times the needed size.
+ */
+class TrailMesh {
+    private final Mesh mesh = new Mesh();
+    private final boolean withColors;
+    private FloatBuffer positions;
+    private FloatBuffer colors;
+    private int capacity;
+
+    TrailMesh(boolean withColors) {
+        this.withColors = withColors;
+        mesh.setMode(Mesh.Mode.LineStrip);
+        allocate(16);
+    }
+
+    private void allocate(int newCapacity) {
+        capacity = newCapacity;
+        positions = BufferUtils.createFloatBuffer(capacity * 3);
+        mesh.setBuffer(VertexBuffer.Type.Position, 3, positions);
+        if (withColors) {
+            colors = BufferUtils.createFloatBuffer(capacity * 4);
+            mesh.setBuffer(VertexBuffer.Type.Color, 4, colors);
+        }
+    }
+
+    /**
+     * Starts writing a line of at most {@code maxPoints} points.
+     */
+    void begin(int maxPoints) {
+        if (maxPoints > capacity) allocate(Math.max(maxPoints, capacity * 3 / 2));
+        positions.clear();
+        if (withColors) colors.clear();
+    }
+
+    void putPosition(float x, float y, float z) {
+        positions.put(x).put(y).put(z);
+    }
+
+    /**
+     * Puts {@code color} blended towards {@code target} by {@code t}, without creating colors.
+     */
+    void putColor(ColorRGBA color, ColorRGBA target, float t) {
+        float s = 1 - t;
+        colors.put(color.r * s + target.r * t)
+                .put(color.g * s + target.g * t)
+                .put(color.b * s + target.b * t)
+                .put(color.a * s + target.a * t);
+    }
+
+    /**
+     * Ends the line and shows it in {@code geometry}.
+     */
+    void finish(Geometry geometry) {
+        positions.flip();
+        mesh.getBuffer(VertexBuffer.Type.Position).updateData(positions);
+        if (withColors) {
+            colors.flip();
+            mesh.getBuffer(VertexBuffer.Type.Color).updateData(colors);
+        }
+        mesh.updateCounts();
+        if (geometry.getMesh() != mesh) geometry.setMesh(mesh);
+        geometry.updateModelBound();
+    }
+}
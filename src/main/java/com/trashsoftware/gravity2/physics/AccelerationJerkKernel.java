@@ -0,0 +1,124 @@
+package com.trashsoftware.gravity2.physics;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Direct summation of the accelerations and their time derivatives (jerks) of a subset of the bodies,
+ * from all bodies in the store. Used by the integrators that need the jerk.
+ * <p>
+ * Every target only writes its own entries, so targets are evaluated in parallel without slabs.
+ * The force cutoff is honoured the same way as the force kernels of {@link Simulator}.
+ */
+class AccelerationJerkKernel {
+    private static final int PARALLELISM_THRESHOLD = 1000;
+
+    private final Simulator simulator;
+    private final BodyStore store;
+    private final ForkJoinPool pool;
+    private final int dimension;
+
+    private int[] targets;
+    private int nTargets;
+    private double[] accOut;
+    private double[] jerkOut;
+    private EvaluationTask[] tasks;
+
+    AccelerationJerkKernel(Simulator simulator, BodyStore store, ForkJoinPool pool) {
+        this.simulator = simulator;
+        this.store = store;
+        this.pool = pool;
+        this.dimension = store.dimension;
+    }
+
+    /**
+     * Writes the acceleration and jerk of the bodies {@code targets[0, nTargets)} into {@code acc} and
+     * {@code jerk}, both {@code [body * dimension + d]}, at the current positions and velocities of the store.
+     */
+    void evaluate(int[] targets, int nTargets, double[] acc, double[] jerk) {
+        this.targets = targets;
+        this.nTargets = nTargets;
+        this.accOut = acc;
+        this.jerkOut = jerk;
+
+        int n = store.size;
+        long nWorks = (long) nTargets * n;
+        int nChunks = (int) Math.max(1, Math.min(pool.getParallelism() * 2L, nWorks / PARALLELISM_THRESHOLD));
+        nChunks = Math.max(1, Math.min(nChunks, nTargets));
+        if (tasks == null || tasks.length < nChunks) {
+            tasks = new EvaluationTask[nChunks];
+            for (int c = 0; c < nChunks; c++) {
+                tasks[c] = new EvaluationTask();
+            }
+        }
+        for (int c = 0; c < nChunks; c++) {
+            tasks[c].start = (int) ((long) nTargets * c / nChunks);
+            tasks[c].end = (int) ((long) nTargets * (c + 1) / nChunks);
+        }
+        if (nChunks == 1) {
+            tasks[0].reinitialize();
+            tasks[0].invoke();
+        } else {
+            for (int c = 0; c < nChunks; c++) {
+                tasks[c].reinitialize();
+                pool.execute(tasks[c]);
+            }
+            for (int c = 0; c < nChunks; c++) {
+                tasks[c].join();
+            }
+        }
+    }
+
+    private void evaluate(int i, double[] diff, double[] relVel) {
+        int n = store.size;
+        double[] position = store.position;
+        double[] velocity = store.velocity;
+        double[] mass = store.mass;
+        double G = simulator.G;
+        double power = simulator.gravityDtPower;
+        double cutOff = simulator.getCutOffForce();
+        double mi = mass[i];
+        int iBase = i * dimension;
+
+        Arrays.fill(accOut, iBase, iBase + dimension, 0.0);
+        Arrays.fill(jerkOut, iBase, iBase + dimension, 0.0);
+        for (int j = 0; j < n; j++) {
+            if (j == i) continue;
+            int jBase = j * dimension;
+            double sqrDt = 0;
+            double dotRV = 0;
+            for (int d = 0; d < dimension; d++) {
+                diff[d] = position[jBase + d] - position[iBase + d];
+                relVel[d] = velocity[jBase + d] - velocity[iBase + d];
+                sqrDt += diff[d] * diff[d];
+                dotRV += diff[d] * relVel[d];
+            }
+            double gm = G * mass[j];
+            if (cutOff != 0 && sqrDt * cutOff >= gm * mi) continue;
+
+            double distance = Math.sqrt(sqrDt);
+            // a = G m r / |r|^(p+1)
+            double accOverDt = gm / ((power == 2 ? sqrDt : Math.pow(distance, power)) * distance);
+            double jerkRadial = (power + 1) * dotRV / sqrDt;
+            for (int d = 0; d < dimension; d++) {
+                accOut[iBase + d] += accOverDt * diff[d];
+                jerkOut[iBase + d] += accOverDt * (relVel[d] - jerkRadial * diff[d]);
+            }
+        }
+    }
+
+    class EvaluationTask extends RecursiveAction {
+        private int start;
+        private int end;
+        private final double[] diff = new double[dimension];
+        private final double[] relVel = new double[dimension];
+
+        @Override
+        protected void compute() {
+            for (int t = start; t < end; t++) {
+                evaluate(targets[t], diff, relVel);
+            }
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package com.trashsoftware.gravity2.physics;
+
+import java.util.Arrays;
+
+/**
+ * A Barnes-Hut space partitioning tree, a quadtree in 2d and an octree in 3d.
+ * <p>
+ * Nodes are stored in flat primitive arrays so that a rebuild on every half-step does not
+ * create garbage once the arrays have grown to fit the simulation.
+ * Bodies landing in the same cell after {@link #MAX_DEPTH} subdivisions share a leaf,
+ * forces between them are computed exactly.
+ */
+public class BarnesHutTree {
+    public static final int MAX_DEPTH = 48;
+    private static final int EMPTY = -1;
+
+    private final int dimension;
+    private final int nChildren;
+
+    private int nNodes;
+    private double[] centers;  // geometric center of each cell, [node * dimension + d]
+    private double[] halfSizes;
+    private double[] masses;
+    private double[] massCenters;  // [node * dimension + d]
+    private int[] children;  // [node * nChildren + c], EMPTY if no such child
+    private int[] firstBody;  // head of the body list of a leaf, EMPTY for internal nodes
+    private int[] nextBody;  // linked list of bodies sharing a leaf, indexed by body
+
+    private BodyStore store;
+
+    // temp buffers
+    private final double[] minBuffer, maxBuffer, centerBuffer;
+
+    public BarnesHutTree(int dimension) {
+        this.dimension = dimension;
+        this.nChildren = 1 << dimension;
+
+        allocateNodes(64);
+        nextBody = new int[0];
+        minBuffer = new double[dimension];
+        maxBuffer = new double[dimension];
+        centerBuffer = new double[dimension];
+    }
+
+    private void allocateNodes(int capacity) {
+        centers = new double[capacity * dimension];
+        halfSizes = new double[capacity];
+        masses = new double[capacity];
+        massCenters = new double[capacity * dimension];
+        children = new int[capacity * nChildren];
+        firstBody = new int[capacity];
+    }
+
+    private void ensureNodeCapacity(int required) {
+        int capacity = halfSizes.length;
+        if (required <= capacity) return;
+        int newCapacity = Math.max(required, capacity * 2);
+        centers = Arrays.copyOf(centers, newCapacity * dimension);
+        halfSizes = Arrays.copyOf(halfSizes, newCapacity);
+        masses = Arrays.copyOf(masses, newCapacity);
+        massCenters = Arrays.copyOf(massCenters, newCapacity * dimension);
+        children = Arrays.copyOf(children, newCapacity * nChildren);
+        firstBody = Arrays.copyOf(firstBody, newCapacity);
+    }
+
+    private int newNode(double[] center, int centerOffset, double halfSize) {
+        ensureNodeCapacity(nNodes + 1);
+        int node = nNodes++;
+        System.arraycopy(center, centerOffset, centers, node * dimension, dimension);
+        halfSizes[node] = halfSize;
+        masses[node] = 0;
+        Arrays.fill(massCenters, node * dimension, (node + 1) * dimension, 0.0);
+        Arrays.fill(children, node * nChildren, (node + 1) * nChildren, EMPTY);
+        firstBody[node] = EMPTY;
+        return node;
+    }
+
+    /**
+     * Rebuilds the tree from the current positions in the store.
+     * The indices used by {@link #accumulateForce} are the indices in the store.
+     */
+    public void build(BodyStore store) {
+        this.store = store;
+        nNodes = 0;
+        int n = store.size;
+        if (nextBody.length < n) nextBody = new int[n];
+        if (n == 0) return;
+
+        double[] min = minBuffer;
+        double[] max = maxBuffer;
+        Arrays.fill(min, Double.POSITIVE_INFINITY);
+        Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        double[] position = store.position;
+        for (int i = 0; i < n; i++) {
+            for (int d = 0; d < dimension; d++) {
+                double x = position[i * dimension + d];
+                min[d] = Math.min(min[d], x);
+                max[d] = Math.max(max[d], x);
+            }
+        }
+        double halfSize = 0;
+        double[] center = centerBuffer;
+        for (int d = 0; d < dimension; d++) {
+            center[d] = (min[d] + max[d]) / 2;
+            halfSize = Math.max(halfSize, (max[d] - min[d]) / 2);
+        }
+        // a little margin so that the bodies on the boundary are strictly inside
+        halfSize = halfSize * 1.0001 + 1.0;
+
+        int root = newNode(center, 0, halfSize);
+        for (int i = 0; i < n; i++) {
+            insert(root, i, 0);
+        }
+        computeMassDistribution(root);
+    }
+
+    private int childIndexOf(int node, int body) {
+        int index = 0;
+        int base = node * dimension;
+        int bodyBase = body * dimension;
+        for (int d = 0; d < dimension; d++) {
+            if (store.position[bodyBase + d] >= centers[base + d]) index |= 1 << d;
+        }
+        return index;
+    }
+
+    private int createChild(int node, int childIndex) {
+        double half = halfSizes[node] / 2;
+        double[] childCenter = centerBuffer;
+        int base = node * dimension;
+        for (int d = 0; d < dimension; d++) {
+            childCenter[d] = centers[base + d] + ((childIndex & (1 << d)) != 0 ? half : -half);
+        }
+        int child = newNode(childCenter, 0, half);
+        children[node * nChildren + childIndex] = child;
+        return child;
+    }
+
+    private void insert(int node, int body, int depth) {
+        while (true) {
+            if (isLeaf(node)) {
+                if (firstBody[node] == EMPTY) {
+                    firstBody[node] = body;
+                    nextBody[body] = EMPTY;
+                    return;
+                }
+                if (depth >= MAX_DEPTH) {
+                    // practically coincident, share the leaf
+                    nextBody[body] = firstBody[node];
+                    firstBody[node] = body;
+                    return;
+                }
+                // split this leaf, push its existing bodies down
+                int existing = firstBody[node];
+                firstBody[node] = EMPTY;
+                while (existing != EMPTY) {
+                    int next = nextBody[existing];
+                    int ci = childIndexOf(node, existing);
+                    int child = children[node * nChildren + ci];
+                    if (child == EMPTY) child = createChild(node, ci);
+                    insert(child, existing, depth + 1);
+                    existing = next;
+                }
+            }
+            int ci = childIndexOf(node, body);
+            int child = children[node * nChildren + ci];
+            if (child == EMPTY) child = createChild(node, ci);
+            node = child;
+            depth++;
+        }
+    }
+
+    /**
+     * A node is a leaf if it has no children. Empty leaves only exist as the root of an empty tree.
+     */
+    private boolean isLeaf(int node) {
+        int base = node * nChildren;
+        for (int c = 0; c < nChildren; c++) {
+            if (children[base + c] != EMPTY) return false;
+        }
+        return true;
+    }
+
+    private void computeMassDistribution(int node) {
+        int base = node * dimension;
+        double mass = 0;
+        if (isLeaf(node)) {
+            for (int b = firstBody[node]; b != EMPTY; b = nextBody[b]) {
+                double bodyMass = store.mass[b];
+                mass += bodyMass;
+                for (int d = 0; d < dimension; d++) {
+                    massCenters[base + d] += bodyMass * store.position[b * dimension + d];
+                }
+            }
+        } else {
+            for (int c = 0; c < nChildren; c++) {
+                int child = children[node * nChildren + c];
+                if (child == EMPTY) continue;
+                computeMassDistribution(child);
+                double childMass = masses[child];
+                mass += childMass;
+                int childBase = child * dimension;
+                for (int d = 0; d < dimension; d++) {
+                    massCenters[base + d] += childMass * massCenters[childBase + d];
+                }
+            }
+        }
+        masses[node] = mass;
+        if (mass > 0) {
+            for (int d = 0; d < dimension; d++) {
+                massCenters[base + d] /= mass;
+            }
+        }
+    }
+
+    /**
+     * Adds the gravitational force acting on body {@code index} into {@code out},
+     * at offset {@code index * dimension}.
+     * <p>
+     * A cell of width {@code s} at distance {@code r} is treated as a point mass if {@code s / r < theta}
+     * and the body is not in it, so that no body attracts itself even with a large theta.
+     * {@code theta = 0} degenerates to the direct summation.
+     * Only writes {@code out}, so different bodies can be evaluated concurrently.
+     */
+    public void accumulateForce(int index, double theta, Simulator simulator, double[] out) {
+        if (nNodes == 0) return;
+        accumulateForce(0, index, theta * theta, simulator, out);
+    }
+
+    private void accumulateForce(int node, int index,
+                                 double thetaSqr, Simulator simulator, double[] out) {
+        double[] position = store.position;
+        int pos = index * dimension;
+        if (isLeaf(node)) {
+            for (int b = firstBody[node]; b != EMPTY; b = nextBody[b]) {
+                if (b == index) continue;
+                addForce(index, position, b * dimension, store.mass[b], simulator, out);
+            }
+            return;
+        }
+
+        int base = node * dimension;
+        double sqrDt = 0;
+        for (int d = 0; d < dimension; d++) {
+            double diff = massCenters[base + d] - position[pos + d];
+            sqrDt += diff * diff;
+        }
+        double width = halfSizes[node] * 2;
+        if (width * width < thetaSqr * sqrDt && !contains(node, position, pos)) {
+            // far enough, the whole cell acts as one body
+            addForce(index, massCenters, base, masses[node], simulator, out);
+        } else {
+            for (int c = 0; c < nChildren; c++) {
+                int child = children[node * nChildren + c];
+                if (child != EMPTY) {
+                    accumulateForce(child, index, thetaSqr, simulator, out);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return whether the point at {@code offset} of {@code position} is in the cell, borders included
+     */
+    private boolean contains(int node, double[] position, int offset) {
+        int base = node * dimension;
+        double halfSize = halfSizes[node];
+        for (int d = 0; d < dimension; d++) {
+            if (Math.abs(position[offset + d] - centers[base + d]) > halfSize) return false;
+        }
+        return true;
+    }
+
+    private void addForce(int index,
+                          double[] sourcePos, int sourceOffset, double sourceMass,
+                          Simulator simulator, double[] out) {
+        double[] position = store.position;
+        int pos = index * dimension;
+        double mass = store.mass[index];
+        double sqrDt = 0;
+        for (int d = 0; d < dimension; d++) {
+            double diff = sourcePos[sourceOffset + d] - position[pos + d];
+            sqrDt += diff * diff;
+        }
+        if (sqrDt == 0) return;
+        double distance = Math.sqrt(sqrDt);
+        if (distance >= simulator.calculateCutoffDistance(mass, sourceMass)) return;
+
+        double dtPower = simulator.gravityDtPower;
+        double dtPow = dtPower == 2 ? sqrDt : Math.pow(distance, dtPower);
+        double forceOverDt = simulator.G * mass * sourceMass / dtPow / distance;
+        for (int d = 0; d < dimension; d++) {
+            out[pos + d] += forceOverDt * (sourcePos[sourceOffset + d] - position[pos + d]);
+        }
+    }
+
+    public int getNodeCount() {
+        return nNodes;
+    }
+}
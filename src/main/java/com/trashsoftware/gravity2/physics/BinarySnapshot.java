@@ -0,0 +1,365 @@
+package com.trashsoftware.gravity2.physics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The binary {@code .tgs} save format, the JSON of {@link Simulator#toJson()} stays for import and export.
+ * <p>
+ * All numbers are little-endian. A file is
+ * <ol>
+ *     <li>the magic {@code TGSB} and the format version, an int</li>
+ *     <li>the string table: its size, then each string as its byte length and its UTF-8 bytes.
+ *     Strings are referred to by their index in the table, -1 for null</li>
+ *     <li>the settings of the simulator, written and read in the same order by {@link Simulator}</li>
+ *     <li>the number of objects and the dimension, then one packed column per field of
+ *     {@link CelestialObject}, the vectors of all objects one after another</li>
+ * </ol>
+ * Loading maps the file and copies each column with a single bulk get, so that a save of many
+ * bodies is read in the time of building the objects.
+ */
+public class BinarySnapshot {
+    public static final int VERSION = 1;
+    private static final byte[] MAGIC = {'T', 'G', 'S', 'B'};
+
+    /**
+     * @return whether the file starts with the magic of this format, otherwise it is taken as JSON
+     */
+    public static boolean isBinary(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(MAGIC.length);
+            while (head.hasRemaining() && channel.read(head) >= 0) ;
+            if (head.hasRemaining()) return false;
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (head.get(i) != MAGIC[i]) return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Writes buffers returned by {@link Writer#encode(List, int)}.
+     */
+    static void write(Path path, ByteBuffer[] buffers) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffers[buffers.length - 1].hasRemaining()) channel.write(buffers);
+        }
+    }
+
+    /**
+     * @return the objects alone, without settings, in the format of a file
+     */
+    static byte[] encodeObjects(List<CelestialObject> objects, int dimension) {
+        ByteBuffer[] buffers = new Writer().encode(objects, dimension);
+        int size = 0;
+        for (ByteBuffer buffer : buffers) size += buffer.remaining();
+        ByteBuffer bytes = ByteBuffer.allocate(size);
+        for (ByteBuffer buffer : buffers) bytes.put(buffer);
+        return bytes.array();
+    }
+
+    /**
+     * Reads the objects of {@link #encodeObjects(List, int)}.
+     */
+    static List<CelestialObject> decodeObjects(byte[] bytes) throws IOException {
+        return new Reader(ByteBuffer.wrap(bytes), "encoded objects").readObjects();
+    }
+
+    /**
+     * Collects the settings, then encodes everything with {@link #encode(List, int)}.
+     */
+    static class Writer {
+        private final Map<String, Integer> stringIndices = new HashMap<>();
+        private final List<byte[]> strings = new ArrayList<>();
+        private int stringBytes;
+        private ByteBuffer settings = newBuffer(256);
+
+        private static ByteBuffer newBuffer(int capacity) {
+            return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        private void ensureSettings(int bytes) {
+            if (settings.remaining() < bytes) {
+                ByteBuffer larger = newBuffer(Math.max(settings.capacity() * 2, settings.position() + bytes));
+                settings.flip();
+                larger.put(settings);
+                settings = larger;
+            }
+        }
+
+        void putInt(int value) {
+            ensureSettings(Integer.BYTES);
+            settings.putInt(value);
+        }
+
+        void putDouble(double value) {
+            ensureSettings(Double.BYTES);
+            settings.putDouble(value);
+        }
+
+        void putBoolean(boolean value) {
+            ensureSettings(1);
+            settings.put((byte) (value ? 1 : 0));
+        }
+
+        void putString(String value) {
+            putInt(indexOf(value));
+        }
+
+        private int indexOf(String value) {
+            if (value == null) return -1;
+            return stringIndices.computeIfAbsent(value, s -> {
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                strings.add(bytes);
+                stringBytes += bytes.length;
+                return strings.size() - 1;
+            });
+        }
+
+        /**
+         * @return the head, the settings and the objects, ready to be written one after another
+         */
+        ByteBuffer[] encode(List<CelestialObject> objects, int dimension) {
+            int n = objects.size();
+            int axisLength = 0;
+            for (CelestialObject co : objects) axisLength += co.rotationAxis.length;
+
+            ByteBuffer body = newBuffer(Integer.BYTES * 2
+                    + n * (Double.BYTES * (13 + 2 * dimension) + Integer.BYTES * 8 + 1)
+                    + axisLength * Double.BYTES);
+            body.putInt(n);
+            body.putInt(dimension);
+
+            for (CelestialObject co : objects) body.putInt(indexOf(co.id));
+            for (CelestialObject co : objects) body.putInt(indexOf(co.shownName));
+            for (CelestialObject co : objects) body.putInt(indexOf(co.bodyType.name()));
+            for (CelestialObject co : objects) body.putInt(indexOf(co.getColorCode()));
+            for (CelestialObject co : objects) body.putInt(indexOf(co.lightColorCode));
+            for (CelestialObject co : objects) body.putInt(indexOf(co.getTexturePath()));
+
+            for (CelestialObject co : objects) body.putDouble(co.mass);
+            for (CelestialObject co : objects) body.putDouble(co.equatorialRadius);
+            for (CelestialObject co : objects) body.putDouble(co.polarRadius);
+            for (CelestialObject co : objects) body.putDouble(co.angularVelocity);
+            for (CelestialObject co : objects) body.putDouble(co.tidalLoveNumber);
+            for (CelestialObject co : objects) body.putDouble(co.dissipationFunction);
+            for (CelestialObject co : objects) body.putDouble(co.emissivity);
+            for (CelestialObject co : objects) body.putDouble(co.internalThermalEnergy);
+            for (CelestialObject co : objects) body.putDouble(co.surfaceThermalEnergy);
+            for (CelestialObject co : objects) body.putDouble(co.rotationAngle);
+            for (CelestialObject co : objects) body.putDouble(co.lastBreakTime);
+            for (CelestialObject co : objects) body.putDouble(co.timeInsideRocheLimit);
+            for (CelestialObject co : objects) body.putDouble(co.dieTime);
+
+            for (CelestialObject co : objects) body.putInt(co.debrisLevel);
+            for (CelestialObject co : objects) body.put((byte) (co.exist ? 1 : 0));
+
+            for (CelestialObject co : objects) {
+                for (int d = 0; d < dimension; d++) body.putDouble(co.position[d]);
+            }
+            for (CelestialObject co : objects) {
+                for (int d = 0; d < dimension; d++) body.putDouble(co.velocity[d]);
+            }
+            for (CelestialObject co : objects) body.putInt(co.rotationAxis.length);
+            for (CelestialObject co : objects) {
+                for (double a : co.rotationAxis) body.putDouble(a);
+            }
+            body.flip();
+
+            ByteBuffer head = newBuffer(MAGIC.length + Integer.BYTES * (2 + strings.size()) + stringBytes);
+            head.put(MAGIC);
+            head.putInt(VERSION);
+            head.putInt(strings.size());
+            for (byte[] bytes : strings) {
+                head.putInt(bytes.length);
+                head.put(bytes);
+            }
+            head.flip();
+            settings.flip();
+
+            return new ByteBuffer[]{head, settings, body};
+        }
+    }
+
+    /**
+     * Reads a mapped file, or encoded bytes, in the order of {@link Writer}.
+     */
+    static class Reader {
+        private final ByteBuffer buffer;
+        private final int[] stringOffsets;
+        private final String[] strings;  // decoded when first used
+
+        Reader(Path path) throws IOException {
+            this(map(path), path.toString());
+        }
+
+        Reader(ByteBuffer buffer, String source) throws IOException {
+            this.buffer = buffer;
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            for (byte b : MAGIC) {
+                if (buffer.remaining() == 0 || buffer.get() != b) {
+                    throw new IOException(source + " is not a binary snapshot");
+                }
+            }
+            int version = buffer.getInt();
+            if (version > VERSION) {
+                throw new IOException(source + " has snapshot version " + version + ", newer than " + VERSION);
+            }
+            strings = new String[buffer.getInt()];
+            stringOffsets = new int[strings.length];
+            for (int i = 0; i < strings.length; i++) {
+                stringOffsets[i] = buffer.position();
+                buffer.position(buffer.position() + Integer.BYTES + buffer.getInt(buffer.position()));
+            }
+        }
+
+        private static ByteBuffer map(Path path) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+        }
+
+        int getInt() {
+            return buffer.getInt();
+        }
+
+        double getDouble() {
+            return buffer.getDouble();
+        }
+
+        boolean getBoolean() {
+            return buffer.get() != 0;
+        }
+
+        String getString() {
+            return stringAt(buffer.getInt());
+        }
+
+        private String stringAt(int index) {
+            if (index == -1) return null;
+            String string = strings[index];
+            if (string == null) {
+                byte[] bytes = new byte[buffer.getInt(stringOffsets[index])];
+                buffer.get(stringOffsets[index] + Integer.BYTES, bytes);
+                string = new String(bytes, StandardCharsets.UTF_8);
+                strings[index] = string;
+            }
+            return string;
+        }
+
+        private int[] getInts(int n) {
+            int[] values = new int[n];
+            buffer.asIntBuffer().get(values);
+            buffer.position(buffer.position() + n * Integer.BYTES);
+            return values;
+        }
+
+        private double[] getDoubles(int n) {
+            double[] values = new double[n];
+            buffer.asDoubleBuffer().get(values);
+            buffer.position(buffer.position() + n * Double.BYTES);
+            return values;
+        }
+
+        /**
+         * Reads the objects, restored like {@link CelestialObject#fromJson}.
+         */
+        List<CelestialObject> readObjects() {
+            int n = buffer.getInt();
+            int dimension = buffer.getInt();
+
+            int[] ids = getInts(n);
+            int[] shownNames = getInts(n);
+            int[] bodyTypes = getInts(n);
+            int[] colorCodes = getInts(n);
+            int[] lightColorCodes = getInts(n);
+            int[] texturePaths = getInts(n);
+
+            double[] mass = getDoubles(n);
+            double[] equatorialRadius = getDoubles(n);
+            double[] polarRadius = getDoubles(n);
+            double[] angularVelocity = getDoubles(n);
+            double[] tidalLoveNumber = getDoubles(n);
+            double[] dissipationFunction = getDoubles(n);
+            double[] emissivity = getDoubles(n);
+            double[] internalThermalEnergy = getDoubles(n);
+            double[] surfaceThermalEnergy = getDoubles(n);
+            double[] rotationAngle = getDoubles(n);
+            double[] lastBreakTime = getDoubles(n);
+            double[] timeInsideRocheLimit = getDoubles(n);
+            double[] dieTime = getDoubles(n);
+
+            int[] debrisLevel = getInts(n);
+            byte[] exist = new byte[n];
+            buffer.get(exist);
+
+            double[] positions = getDoubles(n * dimension);
+            double[] velocities = getDoubles(n * dimension);
+            int[] axisLengths = getInts(n);
+            int axisTotal = 0;
+            for (int length : axisLengths) axisTotal += length;
+            double[] axes = getDoubles(axisTotal);
+
+            BodyType[] bodyTypeValues = new BodyType[strings.length];
+            List<CelestialObject> objects = new ArrayList<>(n);
+            int axisOffset = 0;
+            for (int i = 0; i < n; i++) {
+                BodyType bodyType = bodyTypeValues[bodyTypes[i]];
+                if (bodyType == null) {
+                    bodyType = BodyType.valueOf(stringAt(bodyTypes[i]));
+                    bodyTypeValues[bodyTypes[i]] = bodyType;
+                }
+                double[] position = new double[dimension];
+                double[] velocity = new double[dimension];
+                System.arraycopy(positions, i * dimension, position, 0, dimension);
+                System.arraycopy(velocities, i * dimension, velocity, 0, dimension);
+                double[] rotationAxis = new double[axisLengths[i]];
+                System.arraycopy(axes, axisOffset, rotationAxis, 0, rotationAxis.length);
+                axisOffset += rotationAxis.length;
+
+                CelestialObject co = new CelestialObject(
+                        stringAt(ids[i]),
+                        bodyType,
+                        mass[i],
+                        equatorialRadius[i],
+                        polarRadius[i],
+                        position,
+                        velocity,
+                        rotationAxis,
+                        angularVelocity[i],
+                        stringAt(colorCodes[i]),
+                        stringAt(texturePaths[i]),
+                        0
+                );
+                co.shownName = stringAt(shownNames[i]);
+                co.exist = exist[i] != 0;
+                co.lightColorCode = stringAt(lightColorCodes[i]);
+                co.debrisLevel = debrisLevel[i];
+                co.tidalLoveNumber = tidalLoveNumber[i];
+                co.dissipationFunction = dissipationFunction[i];
+                co.emissivity = emissivity[i];
+                co.surfaceThermalEnergy = surfaceThermalEnergy[i];
+                co.internalThermalEnergy = internalThermalEnergy[i];
+                co.rotationAngle = rotationAngle[i];
+                co.lastBreakTime = lastBreakTime[i];
+                co.dieTime = dieTime[i];
+                co.timeInsideRocheLimit = timeInsideRocheLimit[i];
+
+                co.updateStatus(true);
+                objects.add(co);
+            }
+            return objects;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.trashsoftware.gravity2.physics;
+
+/**
+ * Kick-drift-kick leapfrog with hierarchical block time steps.
+ * <p>
+ * Within one step of the simulator, body {@code i} advances with its own sub-step
+ * {@code timeStep / 2^level[i]}. All bodies drift together on the finest sub-step, but only the
+ * bodies whose sub-step ends at a tick have their forces evaluated and are kicked. So a tight moon
+ * is resolved finely while the planets and the bulk of small bodies take the full step.
+ * <p>
+ * The level of a body is chosen at the beginning of each step, from the smaller of
+ * <ul>
+ *     <li>the accuracy criterion {@code eta * |a| / |da/dt|}, and</li>
+ *     <li>the resolution of its hill master's Roche limit, the same quantity the
+ *     {@link Simulator.SimResult#TOO_FAST} check uses.</li>
+ * </ul>
+ * Accelerations and jerks are computed by direct summation over all bodies, honouring the force cutoff.
+ * The last tick of a step evaluates every body, so the next step starts from those values unless
+ * the bodies have been reloaded in between. Their jerks are then the ones of half a sub-step earlier
+ * velocities, which is close enough for choosing the levels.
+ */
+class BlockTimeStepper extends Integrator {
+    public static final int MAX_LEVEL = 12;
+    static final double DEFAULT_ETA = 0.02;
+
+    private final AccelerationJerkKernel kernel;
+
+    private int[] levels = new int[0];
+    private double[] jerk = new double[0];  // [body * dimension + d]
+    private int[] active = new int[0];
+    private int nActive;
+    private int maxLevel;
+    private int evaluatedModCount = -1;  // the accelerations and jerks are of the current state while this is store.modCount
+
+    BlockTimeStepper(Simulator simulator, BodyStore store) {
+        super(simulator, store);
+        this.kernel = new AccelerationJerkKernel(simulator, store, simulator.getForceCalculationPool());
+    }
+
+    private void ensureCapacity(int n) {
+        if (levels.length >= n) return;
+        int capacity = Math.max(n, levels.length * 3 / 2);
+        levels = new int[capacity];
+        jerk = new double[capacity * dimension];
+        active = new int[capacity];
+        evaluatedModCount = -1;
+    }
+
+    /**
+     * Advances all bodies in the store by {@code timeStep}. Afterwards they are synchronized again,
+     * and the acceleration of the store holds the acceleration at the end of the step.
+     */
+    @Override
+    void step(double timeStep) {
+        int n = store.size;
+        ensureCapacity(n);
+        double eta = simulator.getBlockTimeStepAccuracy();
+
+        if (evaluatedModCount != store.modCount) {
+            nActive = n;
+            for (int i = 0; i < n; i++) active[i] = i;
+            kernel.evaluate(active, nActive, store.acceleration, jerk);
+        }
+
+        maxLevel = 0;
+        for (int i = 0; i < n; i++) {
+            levels[i] = chooseLevel(i, timeStep, eta);
+            maxLevel = Math.max(maxLevel, levels[i]);
+        }
+        // opening half kicks
+        for (int i = 0; i < n; i++) {
+            kick(i, 0.5 * subStepOf(i, timeStep));
+        }
+
+        int nTicks = 1 << maxLevel;
+        double tickLength = timeStep / nTicks;
+        for (int tick = 1; tick <= nTicks; tick++) {
+            drift(tickLength);
+            nActive = 0;
+            for (int i = 0; i < n; i++) {
+                int ticksPerStep = 1 << (maxLevel - levels[i]);
+                if (tick % ticksPerStep == 0) active[nActive++] = i;
+            }
+            kernel.evaluate(active, nActive, store.acceleration, jerk);
+            for (int a = 0; a < nActive; a++) {
+                int i = active[a];
+                double dt = subStepOf(i, timeStep);
+                // the closing half kick, merged with the opening one of the next sub-step
+                kick(i, tick == nTicks ? 0.5 * dt : dt);
+            }
+        }
+        // the last tick has evaluated all bodies
+        evaluatedModCount = store.modCount;
+    }
+
+    private void kick(int i, double dt) {
+        int base = i * dimension;
+        for (int d = base; d < base + dimension; d++) {
+            store.velocity[d] += store.acceleration[d] * dt;
+        }
+    }
+
+    private double subStepOf(int i, double timeStep) {
+        return timeStep / (1 << levels[i]);
+    }
+
+    @Override
+    double lastStepOf(int i, double timeStep) {
+        return i < levels.length ? subStepOf(i, timeStep) : timeStep;
+    }
+
+    private int chooseLevel(int i, double timeStep, double eta) {
+        int base = i * dimension;
+        double sqrAcc = 0, sqrJerk = 0;
+        for (int d = base; d < base + dimension; d++) {
+            sqrAcc += store.acceleration[d] * store.acceleration[d];
+            sqrJerk += jerk[d] * jerk[d];
+        }
+        double maxDt = Double.MAX_VALUE;
+        if (sqrJerk > 0) {
+            maxDt = eta * Math.sqrt(sqrAcc / sqrJerk);
+        }
+
+        CelestialObject hillMaster = store.objects[i].hillMaster;
+        if (hillMaster != null && hillMaster.possibleRocheLimit != 0.0) {
+            int m = store.indexOf(hillMaster);
+            if (m != -1) {
+                int mBase = m * dimension;
+                double sqrRelVel = 0;
+                for (int d = 0; d < dimension; d++) {
+                    double diff = store.velocity[base + d] - store.velocity[mBase + d];
+                    sqrRelVel += diff * diff;
+                }
+                if (sqrRelVel > 0) {
+                    // leave a margin below the 0.33 of the TOO_FAST check
+                    maxDt = Math.min(maxDt, hillMaster.possibleRocheLimit * 0.25 / Math.sqrt(sqrRelVel));
+                }
+            }
+        }
+
+        int level = 0;
+        double dt = timeStep;
+        while (dt > maxDt && level < MAX_LEVEL) {
+            dt /= 2;
+            level++;
+        }
+        return level;
+    }
+
+    public int getMaxLevel() {
+        return maxLevel;
+    }
+}
@@ -0,0 +1,107 @@
+package com.trashsoftware.gravity2.physics;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Packed structure-of-arrays copy of the kinematic state of all objects.
+ * <p>
+ * While {@link Simulator#simulate(int)} is running, this store is the authority of positions,
+ * velocities and accelerations. The {@link CelestialObject}s are only synced back when something
+ * object-level needs them (collisions, path recording, and at the end of each call), so that the GUI
+ * and the json layers always see a consistent state between two calls.
+ * <p>
+ * Vectors are stored interleaved, component {@code d} of body {@code i} is at {@code i * dimension + d}.
+ */
+public class BodyStore {
+    final int dimension;
+    int size;
+    int modCount;  // incremented whenever bodies are (re)loaded from their objects
+
+    CelestialObject[] objects = new CelestialObject[0];
+    double[] position = new double[0];
+    double[] velocity = new double[0];
+    double[] acceleration = new double[0];
+    double[] mass = new double[0];
+    double[] radius = new double[0];  // average radius
+
+    BodyStore(int dimension) {
+        this.dimension = dimension;
+    }
+
+    private void ensureCapacity(int n) {
+        if (objects.length >= n) return;
+        int capacity = Math.max(n, objects.length * 3 / 2);
+        objects = Arrays.copyOf(objects, capacity);
+        position = Arrays.copyOf(position, capacity * dimension);
+        velocity = Arrays.copyOf(velocity, capacity * dimension);
+        acceleration = Arrays.copyOf(acceleration, capacity * dimension);
+        mass = Arrays.copyOf(mass, capacity);
+        radius = Arrays.copyOf(radius, capacity);
+    }
+
+    /**
+     * Replaces the whole content of this store with the current state of the objects.
+     */
+    void load(List<CelestialObject> list) {
+        int n = list.size();
+        ensureCapacity(n);
+        for (int i = 0; i < n; i++) {
+            objects[i] = list.get(i);
+            loadBody(i);
+        }
+        // do not hold the removed ones
+        Arrays.fill(objects, n, size > n ? size : n, null);
+        size = n;
+        modCount++;
+    }
+
+    /**
+     * Reads body {@code i} from its object, after object-level code has modified it.
+     */
+    void loadBody(int i) {
+        CelestialObject co = objects[i];
+        co.storeIndex = i;
+        int base = i * dimension;
+        System.arraycopy(co.position, 0, position, base, dimension);
+        System.arraycopy(co.velocity, 0, velocity, base, dimension);
+        System.arraycopy(co.lastAcceleration, 0, acceleration, base, dimension);
+        mass[i] = co.mass;
+        radius[i] = co.getAverageRadius();
+        modCount++;
+    }
+
+    /**
+     * Writes the kinematic state of body {@code i} back to its object.
+     */
+    void storeBody(int i) {
+        CelestialObject co = objects[i];
+        int base = i * dimension;
+        System.arraycopy(position, base, co.position, 0, dimension);
+        System.arraycopy(velocity, base, co.velocity, 0, dimension);
+        System.arraycopy(acceleration, base, co.lastAcceleration, 0, dimension);
+    }
+
+    void storeAll() {
+        for (int i = 0; i < size; i++) {
+            storeBody(i);
+        }
+    }
+
+    /**
+     * @return the index of the object in this store, or -1 if it is not in
+     */
+    int indexOf(CelestialObject co) {
+        int index = co.storeIndex;
+        if (index >= 0 && index < size && objects[index] == co) return index;
+        return -1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+}
@@ -39,19 +39,19 @@ public class CelestialObject implements Comparable<CelestialObject>, AbstractObj
 
     protected transient Status status;
 
-    private boolean exist = true;
+    protected boolean exist = true;
 
     /**
      * Status
      */
-    private double rotationAngle;
-    private double lastBreakTime;
-    private double timeInsideRocheLimit;  // the time steps of this inside other's roche limit
+    protected double rotationAngle;
+    protected double lastBreakTime;
+    protected double timeInsideRocheLimit;  // the time steps of this inside other's roche limit
     protected double dieTime = -1;
-    private int debrisLevel;
+    protected int debrisLevel;
 
     private String colorCode;
-    private String lightColorCode;
+    protected String lightColorCode;
     private final String texturePath;
 
     protected transient double[] lastAcceleration;
@@ -62,6 +62,7 @@ public class CelestialObject implements Comparable<CelestialObject>, AbstractObj
     protected transient double hillRadius;
     protected transient double possibleRocheLimit;
     protected transient double approxRocheLimit;
+    transient int storeIndex = -1;  // index in the simulator's BodyStore, only valid while it is in
 //    protected transient double lastLuminosity;
 
     CelestialObject(String id,
@@ -462,6 +463,27 @@ public class CelestialObject implements Comparable<CelestialObject>, AbstractObj
         return fIncident(luminosity, distance) * approxLightArea;
     }
 
+    /**
+     * @return the power absorbed per unit incident flux, {@code (1 - albedo)} times the cross-section
+     */
+    double getAbsorbingArea() {
+        return (1 - estimateAlbedo()) * Math.pow(getAverageRadius(), 2) * Math.PI;
+    }
+
+    /**
+     * @return the surface thermal energy per kelvin of surface temperature
+     */
+    double getSurfaceHeatCapacity() {
+        return thermalSkinMass(getSurfaceArea()) * bodyType.thermalSkinHeatCapacity;
+    }
+
+    /**
+     * @return the thermal emission divided by the fourth power of the surface temperature
+     */
+    double getEmissionCoefficient() {
+        return emissivity * STEFAN_BOLTZMANN_CONSTANT * getSurfaceArea();
+    }
+
     public void receiveLight(double[] sourcePos, double luminosity, double timeStep) {
         double albedo = estimateAlbedo();
         double distance = VectorOperations.distance(sourcePos, position);
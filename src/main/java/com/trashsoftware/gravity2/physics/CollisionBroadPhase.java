@@ -0,0 +1,251 @@
+package com.trashsoftware.gravity2.physics;
+
+import java.util.Arrays;
+
+/**
+ * Hierarchical spatial hash that finds the pairs of bodies which may collide or be inside each
+ * other's Roche limit.
+ * <p>
+ * Each body has a reach, the larger of its average radius and its {@code possibleRocheLimit}.
+ * Two bodies are a candidate pair if their distance is less than the sum of their reaches,
+ * which includes every pair the narrow phase in {@link Simulator} would act on.
+ * <p>
+ * The cells of level {@code L} are {@code 2^L} times as wide as those of level 0, which are twice the
+ * reach of most bodies. A body is binned at the lowest level whose cells are at least twice its reach.
+ * It then only has to look into the cells within its reach plus half a cell, at most 3^dimension on its
+ * own level and usually 2^dimension on each higher one in use. The pairs with the bodies of lower levels
+ * are found by those bodies. A level with fewer bodies than cells to look into is tested body by body
+ * instead. A star with a wide Roche limit
+ * thus costs a few tests, however many bodies there are, and the whole phase stays about linear for
+ * any spread of reaches.
+ */
+class CollisionBroadPhase {
+    private static final int EMPTY = -1;
+    private static final double CELL_QUANTILE = 0.9;
+    // below this, testing all pairs is cheaper than hashing
+    private static final int GRID_THRESHOLD = 128;
+    // the levels in use are the bits of a long
+    private static final int MAX_LEVEL = 63;
+
+    private final int dimension;
+
+    private double[] reach = new double[0];
+    private double[] sortedReach = new double[0];
+    private int[] levels = new int[0];
+    private long[] cellCoords = new long[0];  // [body * dimension + d], on the level of the body
+    private int[] nextInCell = new int[0];
+    private int[] byLevel = new int[0];  // the bodies grouped by level
+    private final int[] levelStarts = new int[MAX_LEVEL + 2];
+
+    // open addressing table, (level, cell) key -> first body in that cell
+    private long[] tableKeys = new long[0];
+    private int[] tableHeads = new int[0];
+
+    private final long[] lowCoords;
+    private final long[] highCoords;
+    private final long[] cursorCoords;
+    private long[] pairs = new long[64];  // (i << 32) | j, with i > j
+    private int nPairs;
+
+    CollisionBroadPhase(int dimension) {
+        this.dimension = dimension;
+        this.lowCoords = new long[dimension];
+        this.highCoords = new long[dimension];
+        this.cursorCoords = new long[dimension];
+    }
+
+    private void ensureCapacity(int n) {
+        if (reach.length >= n) return;
+        int capacity = Math.max(n, reach.length * 3 / 2);
+        reach = new double[capacity];
+        sortedReach = new double[capacity];
+        levels = new int[capacity];
+        cellCoords = new long[capacity * dimension];
+        nextInCell = new int[capacity];
+        byLevel = new int[capacity];
+    }
+
+    /**
+     * Finds all candidate pairs among the bodies {@code [0, limit)} of the store.
+     * The pairs are sorted ascending by the larger index, then by the smaller one.
+     *
+     * @return the number of pairs
+     */
+    int findPairs(BodyStore store, int limit) {
+        nPairs = 0;
+        int n = Math.min(limit, store.size);
+        if (n < 2) return 0;
+        ensureCapacity(n);
+
+        for (int i = 0; i < n; i++) {
+            reach[i] = Math.max(store.radius[i], store.objects[i].possibleRocheLimit);
+        }
+        if (n < GRID_THRESHOLD) {
+            for (int i = 1; i < n; i++) {
+                for (int j = 0; j < i; j++) {
+                    testPair(store, i, j);
+                }
+            }
+            // already in order
+            return nPairs;
+        }
+        System.arraycopy(reach, 0, sortedReach, 0, n);
+        Arrays.sort(sortedReach, 0, n);
+        double cellSize = sortedReach[(int) ((n - 1) * CELL_QUANTILE)] * 2;
+        if (cellSize <= 0) cellSize = sortedReach[n - 1] * 2;
+        if (cellSize <= 0) return 0;  // nothing has a size, nothing can touch
+
+        int tableSize = Integer.highestOneBit(Math.max(4, n * 2)) << 1;
+        if (tableKeys.length < tableSize) {
+            tableKeys = new long[tableSize];
+            tableHeads = new int[tableSize];
+        }
+        Arrays.fill(tableHeads, 0, tableSize, EMPTY);
+        int mask = tableSize - 1;
+
+        // bin every body on its level
+        double[] position = store.position;
+        long usedLevels = 0;
+        Arrays.fill(levelStarts, 0);
+        for (int i = 0; i < n; i++) {
+            int level = levelOf(reach[i], cellSize);
+            levels[i] = level;
+            usedLevels |= 1L << level;
+            levelStarts[level + 1]++;
+            int base = i * dimension;
+            double size = Math.scalb(cellSize, level);
+            for (int d = 0; d < dimension; d++) {
+                cellCoords[base + d] = (long) Math.floor(position[base + d] / size);
+            }
+            long key = hashCell(level, cellCoords, base);
+            int slot = findSlot(key, mask);
+            if (tableHeads[slot] == EMPTY) tableKeys[slot] = key;
+            nextInCell[i] = tableHeads[slot];
+            tableHeads[slot] = i;
+        }
+        for (int level = 0; level <= MAX_LEVEL; level++) {
+            levelStarts[level + 1] += levelStarts[level];
+        }
+        for (int i = 0; i < n; i++) {
+            byLevel[levelStarts[levels[i]]++] = i;
+        }
+        // each start has moved to the next one
+        System.arraycopy(levelStarts, 0, levelStarts, 1, MAX_LEVEL + 1);
+        levelStarts[0] = 0;
+
+        for (int i = 0; i < n; i++) {
+            int ownLevel = levels[i];
+            int base = i * dimension;
+            // the levels in use from the own one up
+            for (long rest = usedLevels >>> ownLevel << ownLevel; rest != 0; rest &= rest - 1) {
+                int level = Long.numberOfTrailingZeros(rest);
+                // the cells holding what i may reach, no body of this level reaches further than half a cell
+                double size = Math.scalb(cellSize, level);
+                double extent = reach[i] + size / 2;
+                long nCells = 1;
+                for (int d = 0; d < dimension; d++) {
+                    double x = position[base + d];
+                    lowCoords[d] = (long) Math.floor((x - extent) / size);
+                    highCoords[d] = (long) Math.floor((x + extent) / size);
+                    nCells *= highCoords[d] - lowCoords[d] + 1;
+                }
+                if (levelStarts[level + 1] - levelStarts[level] <= nCells) {
+                    // a sparse level, cheaper to test than to look up
+                    for (int k = levelStarts[level]; k < levelStarts[level + 1]; k++) {
+                        testLevelPair(store, i, byLevel[k], level == ownLevel);
+                    }
+                    continue;
+                }
+                System.arraycopy(lowCoords, 0, cursorCoords, 0, dimension);
+                while (true) {
+                    int slot = findSlot(hashCell(level, cursorCoords, 0), mask);
+                    for (int j = tableHeads[slot]; j != EMPTY; j = nextInCell[j]) {
+                        if (levels[j] != level) continue;  // another level sharing the hash
+                        testLevelPair(store, i, j, level == ownLevel);
+                    }
+                    // next cell of the range
+                    int d = 0;
+                    while (d < dimension && cursorCoords[d] == highCoords[d]) {
+                        cursorCoords[d] = lowCoords[d];
+                        d++;
+                    }
+                    if (d == dimension) break;
+                    cursorCoords[d]++;
+                }
+            }
+        }
+        Arrays.sort(pairs, 0, nPairs);
+        return nPairs;
+    }
+
+    /**
+     * @return the lowest level whose cells are at least twice {@code reach}
+     */
+    private static int levelOf(double reach, double cellSize) {
+        int level = 0;
+        double size = cellSize;
+        while (reach * 2 > size && level < MAX_LEVEL) {
+            size *= 2;
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * Tests {@code i} against {@code j} of a level not lower than its own.
+     */
+    private void testLevelPair(BodyStore store, int i, int j, boolean sameLevel) {
+        if (sameLevel) {
+            // the pairs of a level are taken by the larger index
+            if (j < i) testPair(store, i, j);
+        } else {
+            testPair(store, Math.max(i, j), Math.min(i, j));
+        }
+    }
+
+    private void testPair(BodyStore store, int i, int j) {
+        double[] position = store.position;
+        int iBase = i * dimension;
+        int jBase = j * dimension;
+        double sqrDt = 0;
+        for (int d = 0; d < dimension; d++) {
+            double diff = position[iBase + d] - position[jBase + d];
+            sqrDt += diff * diff;
+        }
+        double maxDt = reach[i] + reach[j];
+        if (sqrDt < maxDt * maxDt) {
+            if (nPairs == pairs.length) pairs = Arrays.copyOf(pairs, nPairs * 2);
+            pairs[nPairs++] = ((long) i << 32) | j;
+        }
+    }
+
+    private int findSlot(long key, int mask) {
+        int slot = (int) (key ^ (key >>> 32)) & mask;
+        while (tableHeads[slot] != EMPTY && tableKeys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private long hashCell(int level, long[] coords, int offset) {
+        long h = level;
+        for (int d = 0; d < dimension; d++) {
+            h = h * 0x9E3779B97F4A7C15L + coords[offset + d];
+        }
+        return h ^ (h >>> 29);
+    }
+
+    /**
+     * @return the larger index of the k-th pair
+     */
+    int first(int k) {
+        return (int) (pairs[k] >>> 32);
+    }
+
+    /**
+     * @return the smaller index of the k-th pair
+     */
+    int second(int k) {
+        return (int) pairs[k];
+    }
+}
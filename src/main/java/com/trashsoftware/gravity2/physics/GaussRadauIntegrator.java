@@ -0,0 +1,321 @@
+package com.trashsoftware.gravity2.physics;
+
+import java.util.Arrays;
+
+/**
+ * Adaptive 15th order Gauss-Radau integrator in the style of IAS15.
+ * <p>
+ * The acceleration over a sub-step is approximated by a polynomial of degree 7 in the fraction of
+ * the sub-step, fitted at the 7 Gauss-Radau spacings by predictor-corrector iterations. Sub-steps
+ * are sized from the shortest dynamical timescale found in that polynomial, so that the
+ * relative size of its next term stays below the tolerance of the simulator. One step of the
+ * simulator is split into as many sub-steps as needed, the last good sub-step is carried over.
+ * <p>
+ * Forces are evaluated by the force method of the simulator, so Barnes-Hut also works here.
+ * <p>
+ * H. Rein and D. S. Spiegel, IAS15: a fast, adaptive, high-order integrator for gravitational
+ * dynamics, accurate to machine precision over a billion orbits, MNRAS 446 (2015).
+ */
+class GaussRadauIntegrator extends Integrator {
+    public static final double DEFAULT_TOLERANCE = 1e-9;
+    private static final double[] H = {
+            0.0,
+            0.0562625605369221464656521910318,
+            0.180240691736892364987579942780,
+            0.352624717113169637373907769648,
+            0.547153626330555383001448554766,
+            0.734210177215410531523210605558,
+            0.885320946839095768090359771030,
+            0.977520613561287501891174488626
+    };
+    private static final int N_STAGES = 7;
+    private static final int MAX_ITERATIONS = 12;
+    private static final double SAFETY = 0.25;
+    private static final double MIN_FRACTION = 1.0 / (1 << 20);
+
+    // COEFFICIENTS[k][p]: coefficient of h^p in h * (h - H[1]) ... (h - H[k - 1])
+    private static final double[][] COEFFICIENTS = new double[N_STAGES + 1][N_STAGES + 1];
+    // AT_NODES[n][k]: the k-th polynomial at H[n]
+    private static final double[][] AT_NODES = new double[N_STAGES + 1][N_STAGES + 1];
+    private static final double[][] BINOMIALS = new double[N_STAGES + 1][N_STAGES + 1];
+
+    static {
+        for (int k = 1; k <= N_STAGES; k++) {
+            double[] poly = COEFFICIENTS[k];
+            poly[1] = 1;
+            for (int m = 1; m < k; m++) {
+                // multiply by (h - H[m])
+                for (int p = k; p >= 1; p--) {
+                    poly[p] = poly[p - 1] - H[m] * poly[p];
+                }
+            }
+            for (int n = 1; n <= N_STAGES; n++) {
+                double value = 0;
+                for (int p = k; p >= 1; p--) {
+                    value = (value + poly[p]) * H[n];
+                }
+                AT_NODES[n][k] = value;
+            }
+        }
+        for (int p = 0; p <= N_STAGES; p++) {
+            BINOMIALS[p][0] = 1;
+            for (int m = 1; m <= p; m++) {
+                BINOMIALS[p][m] = BINOMIALS[p - 1][m - 1] + (m < p ? BINOMIALS[p - 1][m] : 0);
+            }
+        }
+    }
+
+    private double[] x0 = new double[0];
+    private double[] v0 = new double[0];
+    private double[] a0 = new double[0];
+    private double[] aStage = new double[0];
+    private double[][] b = new double[N_STAGES + 1][0];  // b[p], coefficient of h^p, p in [1, 7]
+    private double[][] g = new double[N_STAGES + 1][0];
+
+    private double dtTry;
+    private boolean bValid;
+    private int lastModCount = -1;
+    private int a0ModCount = -1;  // a0 is the acceleration at the current positions while this is store.modCount
+    private int subStepCount;
+
+    GaussRadauIntegrator(Simulator simulator, BodyStore store) {
+        super(simulator, store);
+    }
+
+    private void ensureCapacity() {
+        int length = store.position.length;
+        if (x0.length >= length) return;
+        x0 = new double[length];
+        v0 = new double[length];
+        a0 = new double[length];
+        aStage = new double[length];
+        for (int p = 1; p <= N_STAGES; p++) {
+            b[p] = new double[length];
+            g[p] = new double[length];
+        }
+        bValid = false;
+        a0ModCount = -1;
+    }
+
+    @Override
+    void step(double timeStep) {
+        ensureCapacity();
+        if (lastModCount != store.modCount) {
+            // bodies changed, the old polynomial says nothing about them
+            bValid = false;
+        }
+        if (dtTry <= 0 || dtTry > timeStep) dtTry = timeStep;
+
+        subStepCount = 0;
+        double remaining = timeStep;
+        while (remaining > 0) {
+            double dt = Math.min(dtTry, remaining);
+            if (remaining - dt < timeStep * 1e-12) dt = remaining;
+            double dtNew = trySubStep(dt, dt <= timeStep * MIN_FRACTION);
+            if (dtNew <= 0) {
+                // rejected, retry with the smaller one, a proposal of 0 is -0.0 here
+                dtTry = Math.max(-dtNew, timeStep * MIN_FRACTION);
+                continue;
+            }
+            remaining -= dt;
+            subStepCount++;
+            if (dt == dtTry || dtNew < dtTry) {
+                // do not let the clipped last sub-step shrink the next one
+                dtTry = Math.max(dtNew, timeStep * MIN_FRACTION);
+            }
+        }
+        lastModCount = store.modCount;
+    }
+
+    /**
+     * @return the proposed next sub-step if accepted, or the negated retry sub-step if rejected, which
+     * may be {@code -0.0}
+     */
+    private double trySubStep(double dt, boolean forceAccept) {
+        int nComponents = store.size * dimension;
+        double[] position = store.position;
+        double[] velocity = store.velocity;
+        double tolerance = simulator.getAdaptiveTolerance();
+
+        System.arraycopy(position, 0, x0, 0, nComponents);
+        System.arraycopy(velocity, 0, v0, 0, nComponents);
+        if (a0ModCount != store.modCount) {
+            // otherwise kept from the end of the last accepted sub-step, or from the rejected try
+            simulator.evaluateAccelerations(a0, 1.0);
+            a0ModCount = store.modCount;
+        }
+
+        if (!bValid) {
+            for (int p = 1; p <= N_STAGES; p++) {
+                Arrays.fill(b[p], 0, nComponents, 0.0);
+            }
+        }
+        bToG(nComponents);
+
+        double maxAcc = 0;
+        for (int k = 0; k < nComponents; k++) {
+            maxAcc = Math.max(maxAcc, Math.abs(a0[k]));
+        }
+        // iterate until the correction of the highest coefficient is at roundoff
+
+        double lastCorrection = Double.MAX_VALUE;
+        for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+            double maxCorrection = 0;
+            for (int n = 1; n <= N_STAGES; n++) {
+                predictPositions(H[n], dt, nComponents);
+                simulator.evaluateAccelerations(aStage, 1.0);
+                double[] atNode = AT_NODES[n];
+                double[] gn = g[n];
+                for (int k = 0; k < nComponents; k++) {
+                    double value = aStage[k] - a0[k];
+                    for (int m = 1; m < n; m++) {
+                        value -= g[m][k] * atNode[m];
+                    }
+                    value /= atNode[n];
+                    double change = value - gn[k];
+                    gn[k] = value;
+                    // keep b in sync with g
+                    for (int p = 1; p <= n; p++) {
+                        b[p][k] += change * COEFFICIENTS[n][p];
+                    }
+                    if (n == N_STAGES) maxCorrection = Math.max(maxCorrection, Math.abs(change));
+                }
+            }
+            double relCorrection = maxAcc == 0 ? 0 : maxCorrection / maxAcc;
+            if (relCorrection < 1e-16 || (iteration > 1 && relCorrection >= lastCorrection)) break;
+            lastCorrection = relCorrection;
+        }
+
+        double minTimescale = minTimescale(dt);
+        double dtNew;
+        if (Double.isFinite(minTimescale)) {
+            dtNew = Math.pow(tolerance * 5040, 1.0 / 7) * minTimescale;
+        } else {
+            dtNew = dt / SAFETY;
+        }
+
+        if (dtNew < dt * SAFETY && !forceAccept) {
+            System.arraycopy(x0, 0, position, 0, nComponents);
+            System.arraycopy(v0, 0, velocity, 0, nComponents);
+            // same start, shorter step
+            rescale(dtNew / dt, false, nComponents);
+            return -dtNew;
+        }
+
+        // accept, the end of the sub-step
+        for (int k = 0; k < nComponents; k++) {
+            double dx = a0[k] / 2;
+            double dv = a0[k];
+            for (int p = 1; p <= N_STAGES; p++) {
+                dx += b[p][k] / ((p + 1) * (p + 2));
+                dv += b[p][k] / (p + 1);
+            }
+            position[k] = x0[k] + dt * (v0[k] + dt * dx);
+            velocity[k] = v0[k] + dt * dv;
+        }
+        // the start of the next sub-step
+        simulator.evaluateAccelerations(a0, 1.0);
+        System.arraycopy(a0, 0, store.acceleration, 0, nComponents);
+
+        // positive, a zero would read as a rejection
+        dtNew = Math.max(Math.min(dtNew, dt / SAFETY), Double.MIN_NORMAL);
+        // the next sub-step starts where this one ends
+        rescale(dtNew / dt, true, nComponents);
+        bValid = true;
+        return dtNew;
+    }
+
+    /**
+     * The original IAS15 error, {@code |b7| / |a|}, is the 7th divided difference of the accelerations and
+     * hits a roundoff floor for tight orbits far from the origin. The same criterion is written with
+     * the timescale {@code sqrt(2 |a|^2 / (|a'|^2 + |a| |a''|))} instead, which only needs the well conditioned
+     * lower derivatives. For a harmonic orbit of frequency w it is 1 / w, and the relative {@code b7} is
+     * {@code (w dt)^7 / 7!}, hence the step {@code (7! tolerance)^(1/7)} times the smallest timescale.
+     *
+     * @return the smallest timescale over all bodies at the end of the sub-step, infinity if there is none
+     */
+    private double minTimescale(double dt) {
+        double minTimescale = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < store.size; i++) {
+            double sqrAcc = 0, sqrJerk = 0, sqrSnap = 0;
+            for (int k = i * dimension; k < (i + 1) * dimension; k++) {
+                double acc = a0[k];
+                double jerk = 0;
+                double snap = 0;
+                for (int p = 1; p <= N_STAGES; p++) {
+                    acc += b[p][k];
+                    jerk += p * b[p][k];
+                    snap += p * (p - 1) * b[p][k];
+                }
+                jerk /= dt;
+                snap /= dt * dt;
+                sqrAcc += acc * acc;
+                sqrJerk += jerk * jerk;
+                sqrSnap += snap * snap;
+            }
+            double denominator = sqrJerk + Math.sqrt(sqrAcc * sqrSnap);
+            if (sqrAcc > 0 && denominator > 0) {
+                minTimescale = Math.min(minTimescale, Math.sqrt(2 * sqrAcc / denominator));
+            }
+        }
+        return minTimescale;
+    }
+
+    private void predictPositions(double h, double dt, int nComponents) {
+        double[] position = store.position;
+        for (int k = 0; k < nComponents; k++) {
+            double sum = 0;
+            for (int p = N_STAGES; p >= 1; p--) {
+                sum = (sum + b[p][k] / ((p + 1) * (p + 2))) * h;
+            }
+            sum += a0[k] / 2;
+            position[k] = x0[k] + h * dt * (v0[k] + h * dt * sum);
+        }
+    }
+
+    /**
+     * Re-expresses the acceleration polynomial for a new sub-step of {@code q} times the length,
+     * starting either at the same point or at the end of the current sub-step.
+     */
+    private void rescale(double q, boolean fromEnd, int nComponents) {
+        for (int k = 0; k < nComponents; k++) {
+            double qm = 1;
+            for (int m = 1; m <= N_STAGES; m++) {
+                qm *= q;
+                double sum;
+                if (fromEnd) {
+                    // a(1 + q u): binomial expansion, b[p] for p > m are still the old ones
+                    sum = 0;
+                    for (int p = m; p <= N_STAGES; p++) {
+                        sum += BINOMIALS[p][m] * b[p][k];
+                    }
+                } else {
+                    sum = b[m][k];
+                }
+                b[m][k] = sum * qm;
+            }
+        }
+    }
+
+    /**
+     * Solves b = C g, C being upper triangular with ones on its diagonal.
+     */
+    private void bToG(int nComponents) {
+        for (int k = 0; k < nComponents; k++) {
+            for (int p = N_STAGES; p >= 1; p--) {
+                double value = b[p][k];
+                for (int m = p + 1; m <= N_STAGES; m++) {
+                    value -= g[m][k] * COEFFICIENTS[m][p];
+                }
+                g[p][k] = value;
+            }
+        }
+    }
+
+    /**
+     * @return the number of sub-steps taken during the last step
+     */
+    int getSubStepCount() {
+        return subStepCount;
+    }
+}
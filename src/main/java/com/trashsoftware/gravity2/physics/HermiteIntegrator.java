@@ -0,0 +1,87 @@
+package com.trashsoftware.gravity2.physics;
+
+/**
+ * Fourth order Hermite predictor-corrector, using accelerations and their analytic jerks.
+ * <p>
+ * One evaluation per step: the acceleration and jerk at the predicted state are reused as the
+ * start of the next step, unless the store has been reloaded in between (collisions, debris,
+ * a new {@link Simulator#simulate(int)} call). Forces are always summed directly.
+ * <p>
+ * J. Makino and S. J. Aarseth, On a Hermite integrator with Ahmad-Cohen scheme for
+ * gravitational many-body problems, PASJ 44 (1992).
+ */
+class HermiteIntegrator extends Integrator {
+    private final AccelerationJerkKernel kernel;
+
+    private int[] all = new int[0];
+    private double[] x0 = new double[0];
+    private double[] v0 = new double[0];
+    private double[] a0 = new double[0];
+    private double[] j0 = new double[0];
+    private double[] a1 = new double[0];
+    private double[] j1 = new double[0];
+    private int evaluatedModCount = -1;
+
+    HermiteIntegrator(Simulator simulator, BodyStore store) {
+        super(simulator, store);
+        this.kernel = new AccelerationJerkKernel(simulator, store, simulator.getForceCalculationPool());
+    }
+
+    private void ensureCapacity(int n) {
+        if (all.length < n) {
+            all = new int[store.objects.length];
+            for (int i = 0; i < all.length; i++) all[i] = i;
+        }
+        int length = store.position.length;
+        if (x0.length < length) {
+            x0 = new double[length];
+            v0 = new double[length];
+            a0 = new double[length];
+            j0 = new double[length];
+            a1 = new double[length];
+            j1 = new double[length];
+            evaluatedModCount = -1;
+        }
+    }
+
+    @Override
+    void step(double timeStep) {
+        int n = store.size;
+        ensureCapacity(n);
+        if (evaluatedModCount != store.modCount) {
+            kernel.evaluate(all, n, a0, j0);
+        }
+
+        double[] position = store.position;
+        double[] velocity = store.velocity;
+        int nComponents = n * dimension;
+        double dt = timeStep;
+        double dt2 = dt * dt;
+
+        // predict
+        System.arraycopy(position, 0, x0, 0, nComponents);
+        System.arraycopy(velocity, 0, v0, 0, nComponents);
+        for (int k = 0; k < nComponents; k++) {
+            position[k] = x0[k] + v0[k] * dt + a0[k] * dt2 / 2 + j0[k] * dt2 * dt / 6;
+            velocity[k] = v0[k] + a0[k] * dt + j0[k] * dt2 / 2;
+        }
+
+        // evaluate
+        kernel.evaluate(all, n, a1, j1);
+
+        // correct
+        for (int k = 0; k < nComponents; k++) {
+            velocity[k] = v0[k] + (a0[k] + a1[k]) * dt / 2 + (j0[k] - j1[k]) * dt2 / 12;
+            position[k] = x0[k] + (v0[k] + velocity[k]) * dt / 2 + (a0[k] - a1[k]) * dt2 / 12;
+        }
+        System.arraycopy(a1, 0, store.acceleration, 0, nComponents);
+
+        double[] tmp = a0;
+        a0 = a1;
+        a1 = tmp;
+        tmp = j0;
+        j0 = j1;
+        j1 = tmp;
+        evaluatedModCount = store.modCount;
+    }
+}
@@ -0,0 +1,60 @@
+package com.trashsoftware.gravity2.physics;
+
+/**
+ * Advances the packed state of the simulator by one step of the simulator.
+ * <p>
+ * Collisions, debris and path recording are handled by {@link Simulator#simulate(int)} between two
+ * calls of {@link #step(double)}, so an integrator only moves the bodies. After a step the acceleration
+ * array of the store must hold a meaningful acceleration, it becomes {@code lastAcceleration}.
+ */
+abstract class Integrator {
+    protected final Simulator simulator;
+    protected final BodyStore store;
+    protected final int dimension;
+
+    Integrator(Simulator simulator, BodyStore store) {
+        this.simulator = simulator;
+        this.store = store;
+        this.dimension = store.dimension;
+    }
+
+    static Integrator create(Simulator.IntegratorType type, Simulator simulator, BodyStore store) {
+        return switch (type) {
+            case LEAPFROG -> new LeapfrogIntegrator(simulator, store);
+            case BLOCK_LEAPFROG -> new BlockTimeStepper(simulator, store);
+            case YOSHIDA_4 -> new YoshidaIntegrator(simulator, store);
+            case HERMITE_4 -> new HermiteIntegrator(simulator, store);
+            case IAS15 -> new GaussRadauIntegrator(simulator, store);
+        };
+    }
+
+    abstract void step(double timeStep);
+
+    /**
+     * @return the step body {@code i} has been advanced with during the last {@link #step(double)},
+     * for the checks that depend on the step length
+     */
+    double lastStepOf(int i, double timeStep) {
+        return timeStep;
+    }
+
+    protected void drift(double dt) {
+        double[] position = store.position;
+        double[] velocity = store.velocity;
+        int nComponents = store.size * dimension;
+        for (int k = 0; k < nComponents; k++) {
+            position[k] += velocity[k] * dt;
+        }
+    }
+
+    /**
+     * {@code velocity += acc * dt} for all bodies.
+     */
+    protected void kick(double[] acc, double dt) {
+        double[] velocity = store.velocity;
+        int nComponents = store.size * dimension;
+        for (int k = 0; k < nComponents; k++) {
+            velocity[k] += acc[k] * dt;
+        }
+    }
+}
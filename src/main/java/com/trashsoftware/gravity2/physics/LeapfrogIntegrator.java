@@ -0,0 +1,35 @@
+package com.trashsoftware.gravity2.physics;
+
+/**
+ * The kick-drift-kick leapfrog, second order and symplectic. Two force evaluations per step.
+ * <p>
+ * The acceleration left in the store is the mean of the two half-kicks, as it always has been.
+ */
+class LeapfrogIntegrator extends Integrator {
+    private double[] halfAcc = new double[0];
+
+    LeapfrogIntegrator(Simulator simulator, BodyStore store) {
+        super(simulator, store);
+    }
+
+    @Override
+    void step(double timeStep) {
+        int nComponents = store.size * dimension;
+        if (halfAcc.length < nComponents) halfAcc = new double[store.position.length];
+
+        // Half-step velocity update
+        simulator.evaluateAccelerations(store.acceleration, 0.5);
+        kick(store.acceleration, timeStep);
+
+        // Full-step position update
+        drift(timeStep);
+
+        // Half-step velocity update, with forces at the new positions
+        simulator.evaluateAccelerations(halfAcc, 0.5);
+        kick(halfAcc, timeStep);
+        double[] acceleration = store.acceleration;
+        for (int k = 0; k < nComponents; k++) {
+            acceleration[k] += halfAcc[k];
+        }
+    }
+}
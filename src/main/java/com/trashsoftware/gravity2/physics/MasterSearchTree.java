@@ -0,0 +1,352 @@
+package com.trashsoftware.gravity2.physics;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A k-d tree over a set of bodies, for finding the masters of other bodies without visiting all pairs.
+ * <p>
+ * Every node keeps the bounding box of its bodies, their largest mass and their largest reach,
+ * the hill radius for {@link #findHillMaster}. A query skips whole nodes that are too light,
+ * or too far away to reach the queried position. The strongest attractor of a position is found in
+ * about O(log n), since a node of bodies no heavier than {@code M} at distance at least {@code r}
+ * cannot pull harder than {@code M / r^dtPower}.
+ * <p>
+ * The tree is a snapshot, it does not follow the bodies as they move.
+ * Like {@link BarnesHutTree} the nodes live in flat arrays, a rebuild does not allocate once the
+ * arrays fit the simulation.
+ * <p>
+ * The queries keep their state on the stack, so any number of them may run at once, from any threads.
+ * {@link #build} must not run at the same time as a query.
+ *
+ * @see Simulator#getMasterSearchTree()
+ */
+public class MasterSearchTree {
+    private static final int LEAF_SIZE = 8;
+    private static final int EMPTY = -1;
+
+    private final int dimension;
+
+    private int nBodies;
+    private CelestialObject[] bodies = new CelestialObject[0];  // in tree order
+    private double[] positions = new double[0];  // [slot * dimension + d]
+    private double[] masses = new double[0];
+    private double[] reaches = new double[0];
+
+    private int nNodes;
+    private int[] nodeStart = new int[0];
+    private int[] nodeEnd = new int[0];
+    private int[] leftChild = new int[0];  // EMPTY for leaves
+    private int[] rightChild = new int[0];
+    private double[] boxMin = new double[0];  // [node * dimension + d]
+    private double[] boxMax = new double[0];
+    private double[] nodeMaxMass = new double[0];
+    private double[] nodeMaxReach = new double[0];
+
+    public MasterSearchTree(int dimension) {
+        this.dimension = dimension;
+    }
+
+    private void ensureCapacity(int n) {
+        if (bodies.length < n) {
+            int capacity = Math.max(n, bodies.length * 3 / 2);
+            bodies = new CelestialObject[capacity];
+            positions = new double[capacity * dimension];
+            masses = new double[capacity];
+            reaches = new double[capacity];
+        }
+        // a tree with leaves of at least LEAF_SIZE / 2 bodies
+        int maxNodes = Math.max(1, 4 * n / LEAF_SIZE + 2);
+        if (nodeStart.length < maxNodes) {
+            nodeStart = new int[maxNodes];
+            nodeEnd = new int[maxNodes];
+            leftChild = new int[maxNodes];
+            rightChild = new int[maxNodes];
+            boxMin = new double[maxNodes * dimension];
+            boxMax = new double[maxNodes * dimension];
+            nodeMaxMass = new double[maxNodes];
+            nodeMaxReach = new double[maxNodes];
+        }
+    }
+
+    /**
+     * Rebuilds the tree over the given bodies, at their current positions, masses and hill radii.
+     */
+    public void build(List<CelestialObject> objects) {
+        int n = objects.size();
+        ensureCapacity(n);
+        if (nBodies > n) Arrays.fill(bodies, n, nBodies, null);  // do not keep removed bodies alive
+        nBodies = n;
+        nNodes = 0;
+        for (int i = 0; i < n; i++) {
+            CelestialObject co = objects.get(i);
+            bodies[i] = co;
+            System.arraycopy(co.position, 0, positions, i * dimension, dimension);
+            masses[i] = co.mass;
+            reaches[i] = co.hillRadius;
+        }
+        if (n > 0) buildNode(0, n);
+    }
+
+    private int buildNode(int start, int end) {
+        int node = nNodes++;
+        nodeStart[node] = start;
+        nodeEnd[node] = end;
+
+        int base = node * dimension;
+        Arrays.fill(boxMin, base, base + dimension, Double.POSITIVE_INFINITY);
+        Arrays.fill(boxMax, base, base + dimension, Double.NEGATIVE_INFINITY);
+        double maxMass = 0, maxReach = 0;
+        for (int s = start; s < end; s++) {
+            for (int d = 0; d < dimension; d++) {
+                double x = positions[s * dimension + d];
+                boxMin[base + d] = Math.min(boxMin[base + d], x);
+                boxMax[base + d] = Math.max(boxMax[base + d], x);
+            }
+            maxMass = Math.max(maxMass, masses[s]);
+            maxReach = Math.max(maxReach, reaches[s]);
+        }
+        nodeMaxMass[node] = maxMass;
+        nodeMaxReach[node] = maxReach;
+
+        if (end - start <= LEAF_SIZE) {
+            leftChild[node] = EMPTY;
+            rightChild[node] = EMPTY;
+            return node;
+        }
+        int axis = 0;
+        for (int d = 1; d < dimension; d++) {
+            if (boxMax[base + d] - boxMin[base + d] > boxMax[base + axis] - boxMin[base + axis]) axis = d;
+        }
+        int mid = (start + end) >>> 1;
+        select(start, end - 1, mid, axis);
+        leftChild[node] = buildNode(start, mid);
+        rightChild[node] = buildNode(mid, end);
+        return node;
+    }
+
+    /**
+     * Partially sorts the slots {@code [left, right]} along {@code axis} so that slot {@code k} holds
+     * the body that would be there if fully sorted.
+     */
+    private void select(int left, int right, int k, int axis) {
+        while (left < right) {
+            double pivot = positions[((left + right) >>> 1) * dimension + axis];
+            int i = left, j = right;
+            while (i <= j) {
+                while (positions[i * dimension + axis] < pivot) i++;
+                while (positions[j * dimension + axis] > pivot) j--;
+                if (i <= j) {
+                    swap(i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) right = j;
+            else if (k >= i) left = i;
+            else return;
+        }
+    }
+
+    private void swap(int a, int b) {
+        CelestialObject co = bodies[a];
+        bodies[a] = bodies[b];
+        bodies[b] = co;
+        double tmp = masses[a];
+        masses[a] = masses[b];
+        masses[b] = tmp;
+        tmp = reaches[a];
+        reaches[a] = reaches[b];
+        reaches[b] = tmp;
+        for (int d = 0; d < dimension; d++) {
+            tmp = positions[a * dimension + d];
+            positions[a * dimension + d] = positions[b * dimension + d];
+            positions[b * dimension + d] = tmp;
+        }
+    }
+
+    private double sqrDistanceToBox(int node, double[] position) {
+        int base = node * dimension;
+        double sqrDt = 0;
+        for (int d = 0; d < dimension; d++) {
+            double x = position[d];
+            double diff = x < boxMin[base + d] ? boxMin[base + d] - x : (x > boxMax[base + d] ? x - boxMax[base + d] : 0);
+            sqrDt += diff * diff;
+        }
+        return sqrDt;
+    }
+
+    private double sqrDistanceToSlot(int slot, double[] position) {
+        double sqrDt = 0;
+        for (int d = 0; d < dimension; d++) {
+            double diff = positions[slot * dimension + d] - position[d];
+            sqrDt += diff * diff;
+        }
+        return sqrDt;
+    }
+
+    /**
+     * Finds the body heavier than {@code target} whose hill sphere contains the target deepest,
+     * by the ratio of distance to hill radius.
+     *
+     * @return the body, or null if the target is inside no heavier body's hill sphere
+     */
+    public CelestialObject findHillMaster(CelestialObject target) {
+        int bestSlot = nNodes > 0 ? findHillMaster(0, target, EMPTY) : EMPTY;
+        return bestSlot == EMPTY ? null : bodies[bestSlot];
+    }
+
+    /**
+     * @return the best slot found in the node, or {@code bestSlot} if none is better
+     */
+    private int findHillMaster(int node, CelestialObject target, int bestSlot) {
+        double mass = target.mass;
+        if (nodeMaxMass[node] <= mass) return bestSlot;
+        double boxSqrDt = sqrDistanceToBox(node, target.position);
+        double maxReach = nodeMaxReach[node];
+        if (boxSqrDt > maxReach * maxReach) return bestSlot;
+        double bestScore = bestSlot == EMPTY ? Double.MAX_VALUE : hillPercent(bestSlot, target);
+        // no hill sphere in this node is big enough to beat the best ratio
+        if (boxSqrDt > bestScore * bestScore * maxReach * maxReach) return bestSlot;
+
+        if (leftChild[node] == EMPTY) {
+            for (int s = nodeStart[node]; s < nodeEnd[node]; s++) {
+                if (masses[s] <= mass || bodies[s] == target) continue;
+                double hillPercent = hillPercent(s, target);
+                if (hillPercent <= 1.0 && hillPercent < bestScore) {
+                    bestScore = hillPercent;
+                    bestSlot = s;
+                }
+            }
+            return bestSlot;
+        }
+        bestSlot = findHillMaster(leftChild[node], target, bestSlot);
+        return findHillMaster(rightChild[node], target, bestSlot);
+    }
+
+    private double hillPercent(int slot, CelestialObject target) {
+        return Math.sqrt(sqrDistanceToSlot(slot, target.position)) / reaches[slot];
+    }
+
+    /**
+     * Finds the body pulling hardest at {@code position} among the bodies heavier than {@code minMass},
+     * the force being proportional to {@code mass / distance^dtPower}.
+     *
+     * @param exclude a body to ignore, usually the one at the position, may be null
+     * @return the body, or null if there is no heavier body
+     */
+    public CelestialObject findStrongestAttractor(double[] position, double minMass,
+                                                  CelestialObject exclude, double dtPower) {
+        int bestSlot = nNodes > 0 ? findStrongestAttractor(0, position, minMass, exclude, dtPower, EMPTY) : EMPTY;
+        return bestSlot == EMPTY ? null : bodies[bestSlot];
+    }
+
+    /**
+     * @return the best slot found in the node, or {@code bestSlot} if none is better
+     */
+    private int findStrongestAttractor(int node, double[] position, double minMass,
+                                       CelestialObject exclude, double dtPower, int bestSlot) {
+        if (nodeMaxMass[node] <= minMass) return bestSlot;
+        double bestScore = bestSlot == EMPTY ? 0 : pull(bestSlot, position, dtPower);
+        double boxSqrDt = sqrDistanceToBox(node, position);
+        if (boxSqrDt > 0 && nodeMaxMass[node] / powOfSqr(boxSqrDt, dtPower) <= bestScore) return bestSlot;
+
+        int left = leftChild[node];
+        if (left == EMPTY) {
+            for (int s = nodeStart[node]; s < nodeEnd[node]; s++) {
+                if (masses[s] <= minMass || bodies[s] == exclude) continue;
+                double sqrDt = sqrDistanceToSlot(s, position);
+                if (sqrDt == 0) continue;
+                double pull = masses[s] / powOfSqr(sqrDt, dtPower);
+                if (pull > bestScore) {
+                    bestScore = pull;
+                    bestSlot = s;
+                }
+            }
+            return bestSlot;
+        }
+        // the nearer one first, it more likely holds the answer and prunes the other one
+        int right = rightChild[node];
+        if (sqrDistanceToBox(left, position) <= sqrDistanceToBox(right, position)) {
+            bestSlot = findStrongestAttractor(left, position, minMass, exclude, dtPower, bestSlot);
+            return findStrongestAttractor(right, position, minMass, exclude, dtPower, bestSlot);
+        } else {
+            bestSlot = findStrongestAttractor(right, position, minMass, exclude, dtPower, bestSlot);
+            return findStrongestAttractor(left, position, minMass, exclude, dtPower, bestSlot);
+        }
+    }
+
+    private double pull(int slot, double[] position, double dtPower) {
+        return masses[slot] / powOfSqr(sqrDistanceToSlot(slot, position), dtPower);
+    }
+
+    /**
+     * How much the distances from {@code position} may change before any body heavier than {@code minMass}
+     * could pull as hard as {@code attractor}, which pulls hardest now. Its distance growing by
+     * {@code delta} and the distance of another body of mass {@code m} at {@code r} shrinking by
+     * {@code delta}, they pull equally when {@code (r - delta) / (distance + delta) = (m / mass)^(1 / dtPower)}.
+     *
+     * @param exclude a body to ignore besides the attractor, usually the one at the position, may be null
+     * @return the smallest such {@code delta} over the bodies, infinity if there is no other candidate
+     */
+    public double findSwitchMargin(double[] position, double minMass, CelestialObject attractor,
+                                   CelestialObject exclude, double dtPower) {
+        if (nNodes == 0) return Double.POSITIVE_INFINITY;
+        double attractorDistance = VectorOperations.distance(position, attractor.position);
+        return findSwitchMargin(0, position, minMass, attractor, attractorDistance, exclude, dtPower,
+                Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * @return the smallest margin found in the node, or {@code bestMargin} if none is smaller
+     */
+    private double findSwitchMargin(int node, double[] position, double minMass,
+                                    CelestialObject attractor, double attractorDistance,
+                                    CelestialObject exclude, double dtPower, double bestMargin) {
+        if (bestMargin <= 0 || nodeMaxMass[node] <= minMass) return bestMargin;
+        // the margin shrinks with mass and grows with distance, so this bounds every body in the node
+        double bound = crossingDistance(nodeMaxMass[node], Math.sqrt(sqrDistanceToBox(node, position)),
+                attractor.mass, attractorDistance, dtPower);
+        if (bound >= bestMargin) return bestMargin;
+
+        int left = leftChild[node];
+        if (left == EMPTY) {
+            for (int s = nodeStart[node]; s < nodeEnd[node]; s++) {
+                if (masses[s] <= minMass || bodies[s] == exclude || bodies[s] == attractor) continue;
+                double margin = crossingDistance(masses[s], Math.sqrt(sqrDistanceToSlot(s, position)),
+                        attractor.mass, attractorDistance, dtPower);
+                if (margin < bestMargin) bestMargin = margin;
+            }
+            return bestMargin;
+        }
+        int right = rightChild[node];
+        if (sqrDistanceToBox(left, position) <= sqrDistanceToBox(right, position)) {
+            bestMargin = findSwitchMargin(left, position, minMass, attractor, attractorDistance, exclude,
+                    dtPower, bestMargin);
+            return findSwitchMargin(right, position, minMass, attractor, attractorDistance, exclude,
+                    dtPower, bestMargin);
+        } else {
+            bestMargin = findSwitchMargin(right, position, minMass, attractor, attractorDistance, exclude,
+                    dtPower, bestMargin);
+            return findSwitchMargin(left, position, minMass, attractor, attractorDistance, exclude,
+                    dtPower, bestMargin);
+        }
+    }
+
+    private static double crossingDistance(double mass, double distance,
+                                           double attractorMass, double attractorDistance, double dtPower) {
+        double k = dtPower == 2 ? Math.sqrt(mass / attractorMass) : Math.pow(mass / attractorMass, 1 / dtPower);
+        return Math.max(0, (distance - k * attractorDistance) / (1 + k));
+    }
+
+    private static double powOfSqr(double sqrDt, double dtPower) {
+        return dtPower == 2 ? sqrDt : Math.pow(sqrDt, dtPower / 2);
+    }
+
+    /**
+     * @return the number of bodies in the tree
+     */
+    public int size() {
+        return nBodies;
+    }
+}
@@ -0,0 +1,119 @@
+package com.trashsoftware.gravity2.physics;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the gravity master and the strongest attractor of every body up to date between frames,
+ * searching again only for the bodies whose answer may have changed.
+ * <p>
+ * When a body is searched in the {@link MasterSearchTree} of the simulator, the search also gives a margin:
+ * how much any of its distances to the other bodies may change before some other body could pull harder
+ * than the one found. Afterwards
+ * the body is skipped as long as its own displacement, plus the largest displacement any body
+ * could have made in the meantime, stays below that margin.
+ * <p>
+ * Any change of the set of bodies or of a mass invalidates all margins, then everything is searched.
+ */
+class MasterTracker {
+
+    private final Simulator simulator;
+    private final Map<CelestialObject, Entry> entries = new IdentityHashMap<>();
+    // sum over the updates of the largest displacement of any body, bounds how far any body has moved
+    private double travel;
+    private int searchedCount;
+
+    MasterTracker(Simulator simulator) {
+        this.simulator = simulator;
+    }
+
+    private static class Entry {
+        final double[] lastPosition;
+        final double[] searchedPosition;
+        double searchedTravel;
+        double margin;
+        double mass;
+
+        Entry(int dimension) {
+            this.lastPosition = new double[dimension];
+            this.searchedPosition = new double[dimension];
+        }
+    }
+
+    /**
+     * Updates {@code gravityMaster} and {@code maxGravityObject} of all the objects.
+     */
+    void update(List<CelestialObject> objects) {
+        int n = objects.size();
+        boolean full = entries.size() != n;
+        double maxStep = 0;
+        if (!full) {
+            for (CelestialObject co : objects) {
+                Entry entry = entries.get(co);
+                if (entry == null || entry.mass != co.mass) {
+                    full = true;
+                    break;
+                }
+                maxStep = Math.max(maxStep, VectorOperations.distance(co.position, entry.lastPosition));
+            }
+        }
+        if (full) {
+            entries.clear();
+            travel = 0;
+        } else {
+            travel += maxStep;
+        }
+
+        searchedCount = 0;
+        int dimension = simulator.getDimension();
+        for (int i = 0; i < n; i++) {
+            CelestialObject co = objects.get(i);
+            Entry entry = entries.get(co);
+            if (entry == null) {
+                entry = new Entry(dimension);
+                entries.put(co, entry);
+            } else {
+                double moved = VectorOperations.distance(co.position, entry.searchedPosition) +
+                        travel - entry.searchedTravel;
+                if (moved < entry.margin) {
+                    System.arraycopy(co.position, 0, entry.lastPosition, 0, dimension);
+                    continue;
+                }
+            }
+            search(co, entry);
+            System.arraycopy(co.position, 0, entry.lastPosition, 0, dimension);
+            System.arraycopy(co.position, 0, entry.searchedPosition, 0, dimension);
+            entry.searchedTravel = travel;
+            entry.mass = co.mass;
+            searchedCount++;
+        }
+    }
+
+    private void search(CelestialObject target, Entry entry) {
+        MasterSearchTree tree = simulator.getMasterSearchTree();
+        double dtPower = simulator.getGravityDtPower();
+        double[] position = target.position;
+
+        CelestialObject master = tree.findStrongestAttractor(position, target.mass, target, dtPower);
+        CelestialObject strongest = tree.findStrongestAttractor(position, 0, target, dtPower);
+        target.gravityMaster = master;
+        target.maxGravityObject = strongest;
+
+        double margin = Double.POSITIVE_INFINITY;
+        if (master != null) {
+            margin = tree.findSwitchMargin(position, target.mass, master, target, dtPower);
+        }
+        if (strongest != null && margin > 0) {
+            margin = Math.min(margin, tree.findSwitchMargin(position, 0, strongest, target, dtPower));
+        }
+        entry.margin = margin;
+    }
+
+    /**
+     * @return the number of bodies searched by the last update
+     */
+    int getSearchedCount() {
+        return searchedCount;
+    }
+}
@@ -0,0 +1,185 @@
+package com.trashsoftware.gravity2.physics;
+
+/**
+ * The recent positions of one body, newest first, in a ring buffer of floats.
+ * <p>
+ * Positions are kept as floats relative to a reference point of the path, its first recorded position.
+ * The error is then about 1e-7 of the distance from that point, far below a pixel, where floats of the
+ * absolute positions would lose small orbits far from the origin. The times are not stored per path,
+ * every path records the same samples of its {@link PathHistory}.
+ */
+public class PathBuffer {
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final PathHistory history;
+    private final int dimension;
+    private final double[] reference;
+    private boolean referenceSet;
+
+    private float[] coords;  // [slot * dimension + d]
+    private int capacity;
+    private int head;  // slot of the newest point
+    private int size;
+    private long newestSample = -1;
+
+    PathBuffer(PathHistory history, int dimension) {
+        this.history = history;
+        this.dimension = dimension;
+        this.reference = new double[dimension];
+        this.capacity = Math.min(INITIAL_CAPACITY, history.getLimit());
+        this.coords = new float[capacity * dimension];
+    }
+
+    void append(double[] position, long sample) {
+        if (newestSample != sample - 1) {
+            // not recorded in between, the old part would connect to the new one
+            size = 0;
+        }
+        if (!referenceSet) {
+            System.arraycopy(position, 0, reference, 0, dimension);
+            referenceSet = true;
+        }
+        if (size == capacity && capacity < history.getLimit()) grow();
+
+        head = head + 1 == capacity ? 0 : head + 1;
+        int base = head * dimension;
+        for (int d = 0; d < dimension; d++) {
+            coords[base + d] = (float) (position[d] - reference[d]);
+        }
+        if (size < capacity) size++;  // otherwise the oldest one is overwritten
+        newestSample = sample;
+    }
+
+    private void grow() {
+        int newCapacity = Math.min(history.getLimit(), capacity * 2);
+        float[] newCoords = new float[newCapacity * dimension];
+        // unroll the ring, oldest at slot 0
+        int oldest = Math.floorMod(head - size + 1, capacity);
+        for (int k = 0; k < size; k++) {
+            int slot = oldest + k < capacity ? oldest + k : oldest + k - capacity;
+            System.arraycopy(coords, slot * dimension, newCoords, k * dimension, dimension);
+        }
+        coords = newCoords;
+        capacity = newCapacity;
+        head = size - 1;
+    }
+
+    /**
+     * Forgets the points whose sample is older than {@code oldestSample}.
+     */
+    void trim(long oldestSample) {
+        long kept = newestSample - oldestSample + 1;
+        if (kept < size) size = (int) Math.max(0, kept);
+    }
+
+    void shift(double[] shift) {
+        for (int d = 0; d < dimension; d++) {
+            reference[d] += shift[d];
+        }
+    }
+
+    void clear() {
+        size = 0;
+        newestSample = -1;
+    }
+
+    /**
+     * @return the number of points
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Writes the {@code index}-th newest point into {@code out}, the position followed by the time,
+     * the same layout as the old {@code double[]} entries of the paths.
+     *
+     * @param out array of at least {@code dimension + 1}
+     */
+    public void get(int index, double[] out) {
+        int base = slotOf(index) * dimension;
+        for (int d = 0; d < dimension; d++) {
+            out[d] = reference[d] + coords[base + d];
+        }
+        out[dimension] = getTime(index);
+    }
+
+    /**
+     * @return the {@code d}-th coordinate of the {@code index}-th newest point
+     */
+    public double get(int index, int d) {
+        return reference[d] + coords[slotOf(index) * dimension + d];
+    }
+
+    public double getTime(int index) {
+        return history.timeOfSample(sampleOf(index));
+    }
+
+    /**
+     * @return the sample of the history at which the {@code index}-th newest point was recorded
+     */
+    public long sampleOf(int index) {
+        return newestSample - index;
+    }
+
+    /**
+     * @return the index of the point recorded at {@code sample}, or -1 if this path has none
+     */
+    public int indexOfSample(long sample) {
+        long index = newestSample - sample;
+        return index >= 0 && index < size ? (int) index : -1;
+    }
+
+    /**
+     * @return the number of points not older than {@code earliestTime}, found by bisection
+     */
+    public int countSince(double earliestTime) {
+        int low = 0, high = size;  // the first index older than earliestTime is in [low, high]
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getTime(mid) < earliestTime) high = mid;
+            else low = mid + 1;
+        }
+        return low;
+    }
+
+    /**
+     * Picks at most {@code maxPoints} points spread evenly over the points not older than
+     * {@code earliestTime}, always including the newest and the oldest of them, in O(log n + maxPoints).
+     * <p>
+     * The points in between are those whose sample is a multiple of a power-of-two stride. The same points
+     * are picked again in later frames until the stride doubles, so a decimated path does not flicker
+     * as new points are appended.
+     *
+     * @param indices receives the picked indices, newest first, at least {@code maxPoints} long
+     * @return the number of picked indices
+     */
+    public int decimate(double earliestTime, int maxPoints, int[] indices) {
+        int count = earliestTime == Double.NEGATIVE_INFINITY ? size : countSince(earliestTime);
+        if (count <= maxPoints || maxPoints < 4) {
+            int n = Math.min(count, maxPoints);
+            for (int k = 0; k < n; k++) indices[k] = k;
+            return n;
+        }
+        // newest + oldest + at most count / stride + 1 multiples
+        long stride = Long.highestOneBit((count - 1) / (maxPoints - 3)) << 1;
+        int n = 0;
+        indices[n++] = 0;
+        long sample = Math.floorDiv(newestSample - 1, stride) * stride;
+        for (long index = newestSample - sample; index < count - 1; index += stride) {
+            indices[n++] = (int) index;
+        }
+        indices[n++] = count - 1;
+        return n;
+    }
+
+    private int slotOf(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+        int slot = head - index;
+        return slot < 0 ? slot + capacity : slot;
+    }
+}
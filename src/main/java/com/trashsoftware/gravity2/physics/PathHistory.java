@@ -0,0 +1,106 @@
+package com.trashsoftware.gravity2.physics;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The recent paths of all bodies and of the barycenter.
+ * <p>
+ * All paths are recorded at the same samples, so the time of each sample is stored once here, in a ring
+ * of at most {@code limit} entries. Every path is a {@link PathBuffer} of at most {@code limit} points,
+ * appending and evicting are O(1) and nothing is allocated once the buffers have grown to their size.
+ * Paths of removed bodies are kept until all of their samples have been evicted.
+ */
+public class PathHistory {
+    private final int dimension;
+    private final int limit;
+
+    private double[] times;
+    private long nSamples;  // samples ever recorded
+
+    private final Map<CelestialObject, PathBuffer> paths = new HashMap<>();
+    private final Map<CelestialObject, PathBuffer> pathsView = Collections.unmodifiableMap(paths);
+    private final PathBuffer barycenterPath;
+
+    PathHistory(int dimension, int limit) {
+        this.dimension = dimension;
+        this.limit = limit;
+        this.times = new double[Math.min(limit, 256)];
+        this.barycenterPath = new PathBuffer(this, dimension);
+    }
+
+    /**
+     * Records the current positions of {@code objects} and the barycenter as a new sample.
+     */
+    void record(List<CelestialObject> objects, double[] barycenter, double time) {
+        long sample = nSamples;
+        int slot = (int) (sample % limit);
+        if (slot >= times.length) times = Arrays.copyOf(times, Math.min(limit, times.length * 2));
+        times[slot] = time;
+        nSamples++;
+
+        for (CelestialObject object : objects) {
+            paths.computeIfAbsent(object, o -> new PathBuffer(this, dimension)).append(object.position, sample);
+        }
+        barycenterPath.append(barycenter, sample);
+    }
+
+    /**
+     * Drops the paths of removed bodies once they have no retained sample.
+     */
+    void trim() {
+        long oldest = getOldestSample();
+        paths.values().removeIf(path -> {
+            path.trim(oldest);
+            return path.isEmpty();
+        });
+    }
+
+    void shift(double[] shift) {
+        for (PathBuffer path : paths.values()) {
+            path.shift(shift);
+        }
+        barycenterPath.shift(shift);
+    }
+
+    void clear() {
+        paths.clear();
+        barycenterPath.clear();
+    }
+
+    /**
+     * @return the paths of the bodies, including the removed bodies whose paths are not evicted yet
+     */
+    public Map<CelestialObject, PathBuffer> getPaths() {
+        return pathsView;
+    }
+
+    public PathBuffer getPath(CelestialObject object) {
+        return paths.get(object);
+    }
+
+    public PathBuffer getBarycenterPath() {
+        return barycenterPath;
+    }
+
+    /**
+     * @return the oldest sample whose time is still known
+     */
+    public long getOldestSample() {
+        return Math.max(0, nSamples - limit);
+    }
+
+    public double timeOfSample(long sample) {
+        if (sample < getOldestSample() || sample >= nSamples) {
+            throw new IndexOutOfBoundsException("Sample " + sample + " is not retained");
+        }
+        return times[(int) (sample % limit)];
+    }
+
+    int getLimit() {
+        return limit;
+    }
+}
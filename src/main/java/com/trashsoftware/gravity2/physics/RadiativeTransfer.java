@@ -0,0 +1,129 @@
+package com.trashsoftware.gravity2.physics;
+
+import java.util.List;
+
+/**
+ * The heating of bodies by the light of stars, and their cooling by thermal emission.
+ * <p>
+ * Nothing moves during the thermal sub-steps of a frame, so the power each body absorbs from all
+ * stars is computed once per frame, into packed arrays. The sub-steps then only update the surface
+ * thermal energies in a loop over primitives, O(stars * n + n * subSteps) in total instead of
+ * O(stars * n * subSteps) calls into {@link CelestialObject}.
+ * <p>
+ * The order of the per-body updates is kept: within a sub-step, a body that is no star first
+ * receives the light of the stars listed before it, then emits, then receives the light of
+ * the stars listed after it. Stars only receive.
+ */
+class RadiativeTransfer {
+    private final int dimension;
+
+    private double[] starPositions = new double[0];  // [star * dimension + d]
+    private double[] starLuminosities = new double[0];  // divided by 4 pi
+    private int[] starIndices = new int[0];
+
+    private double[] absorbedBefore = new double[0];  // power from the stars listed before the body
+    private double[] absorbedAfter = new double[0];
+    private double[] heatCapacity = new double[0];
+    private double[] emissionCoefficient = new double[0];
+    private double[] energy = new double[0];
+    private boolean[] emitting = new boolean[0];
+
+    RadiativeTransfer(int dimension) {
+        this.dimension = dimension;
+    }
+
+    private void ensureCapacity(int n) {
+        if (energy.length >= n) return;
+        int capacity = Math.max(n, energy.length * 3 / 2);
+        starPositions = new double[capacity * dimension];
+        starLuminosities = new double[capacity];
+        starIndices = new int[capacity];
+        absorbedBefore = new double[capacity];
+        absorbedAfter = new double[capacity];
+        heatCapacity = new double[capacity];
+        emissionCoefficient = new double[capacity];
+        energy = new double[capacity];
+        emitting = new boolean[capacity];
+    }
+
+    /**
+     * Runs {@code nSubSteps} sub-steps of {@code each} seconds.
+     */
+    void apply(List<CelestialObject> objects, int nSubSteps, double each) {
+        int n = objects.size();
+        ensureCapacity(n);
+
+        int nStars = 0;
+        for (int i = 0; i < n; i++) {
+            CelestialObject co = objects.get(i);
+            double luminosity = co.getLuminosity();
+            if (luminosity > 0) {
+                System.arraycopy(co.position, 0, starPositions, nStars * dimension, dimension);
+                starLuminosities[nStars] = luminosity / (4 * Math.PI);
+                starIndices[nStars] = i;
+                nStars++;
+            }
+        }
+
+        for (int i = 0; i < n; i++) {
+            CelestialObject co = objects.get(i);
+            if (nStars > 0) {
+                computeAbsorbed(i, co.position, co.getAbsorbingArea(), nStars);
+            } else {
+                absorbedBefore[i] = 0;
+                absorbedAfter[i] = 0;
+            }
+            emitting[i] = co.getLuminosity() <= 0;
+            if (emitting[i]) {
+                heatCapacity[i] = co.getSurfaceHeatCapacity();
+                emissionCoefficient[i] = co.getEmissionCoefficient();
+            }
+            energy[i] = co.surfaceThermalEnergy;
+        }
+
+        for (int i = 0; i < n; i++) {
+            double e = energy[i];
+            double before = absorbedBefore[i] * each;
+            double after = absorbedAfter[i] * each;
+            if (emitting[i]) {
+                double capacity = heatCapacity[i];
+                double emission = emissionCoefficient[i] * each;
+                for (int k = 0; k < nSubSteps; k++) {
+                    e += before;
+                    double temperature = e / capacity;
+                    double sqrTemperature = temperature * temperature;
+                    e = Math.max(0, e - emission * sqrTemperature * sqrTemperature);
+                    e += after;
+                }
+            } else {
+                for (int k = 0; k < nSubSteps; k++) {
+                    e += before + after;
+                }
+            }
+            energy[i] = e;
+        }
+
+        for (int i = 0; i < n; i++) {
+            objects.get(i).surfaceThermalEnergy = energy[i];
+        }
+    }
+
+    private void computeAbsorbed(int i, double[] position, double absorbingArea, int nStars) {
+        double before = 0, after = 0;
+        for (int s = 0; s < nStars; s++) {
+            int star = starIndices[s];
+            if (star == i) continue;
+            double sqrDt = 0;
+            int base = s * dimension;
+            for (int d = 0; d < dimension; d++) {
+                double diff = position[d] - starPositions[base + d];
+                sqrDt += diff * diff;
+            }
+            double flux = starLuminosities[s] / sqrDt;
+            if (star < i) before += flux;
+            else after += flux;
+        }
+        absorbedBefore[i] = before * absorbingArea;
+        absorbedAfter[i] = after * absorbingArea;
+    }
+}
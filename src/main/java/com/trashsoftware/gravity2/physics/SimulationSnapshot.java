@@ -0,0 +1,578 @@
+package com.trashsoftware.gravity2.physics;
+
+import com.trashsoftware.gravity2.physics.status.Comet;
+import com.trashsoftware.gravity2.physics.status.CometTailParams;
+import com.trashsoftware.gravity2.physics.status.Star;
+import com.trashsoftware.gravity2.physics.status.Status;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The state of a {@link Simulator} after a batch of steps, as published by {@link SimulationThread}.
+ * <p>
+ * A snapshot holds what is shown every frame: the objects, their positions, velocities, rotations,
+ * masses, radii, colors and stars or comets, the barycenter and the time, and when asked for, the
+ * barycenters of the hieratical systems, the orbits and the points of the paths to be drawn. These are
+ * copies, or immutable, and do not change while the simulation goes on. The objects themselves do, so
+ * what is drawn must be read from here and the objects only used as keys. The {@code i}-th object has
+ * its values at index {@code i}, its vectors at {@code i * dimension}.
+ * <p>
+ * Snapshots are recycled by {@link SimulationThread}, one taken by {@link SimulationThread#takeSnapshot()}
+ * stays unchanged until the next call of that method.
+ */
+public final class SimulationSnapshot {
+    private final int dimension;
+
+    private List<CelestialObject> objects = List.of();
+    private Map<CelestialObject, Integer> indices = Map.of();
+    private long objectsVersion = -1;
+
+    private double[] positions = new double[0];
+    private double[] velocities = new double[0];
+    private double[] rotationAngles = new double[0];
+    private double[] rotationAxes = new double[0];
+    private double[] angularVelocities = new double[0];
+    private double[] masses = new double[0];
+    private double[] equatorialRadii = new double[0];
+    private double[] polarRadii = new double[0];
+    private double[] hillRadii = new double[0];
+    private double[] rocheLimits = new double[0];
+    private String[] colorCodes = new String[0];
+    private StarState[] stars = new StarState[0];
+    private CometState[] comets = new CometState[0];
+    private double[] barycenter;
+    private double time;
+    private double totalMass;
+
+    private boolean hasSystems;
+    private int[] systemDepths = new int[0];
+    private double[] systemPositions = new double[0];
+
+    private boolean hasOrbits;
+    private FullOrbitSpec[] primaryOrbits = new FullOrbitSpec[0];
+    private FullOrbitSpec[] secondaryOrbits = new FullOrbitSpec[0];
+    private double[] primaryChildShares = new double[0];
+    private double[] secondaryChildShares = new double[0];
+
+    private int pathCount;
+    private CelestialObject[] pathObjects = new CelestialObject[0];
+    private double[] pathMasses = new double[0];
+    private boolean pathsRelative;
+    private final PathPoints traces;
+    private final PathPoints fullPaths;
+    private int[] pickedIndices = new int[0];
+
+    SimulationSnapshot(int dimension) {
+        this.dimension = dimension;
+        this.barycenter = new double[dimension];
+        this.traces = new PathPoints(dimension);
+        this.fullPaths = new PathPoints(dimension);
+    }
+
+    /**
+     * @param objects        immutable copy of the objects of {@code simulator}
+     * @param indices        the index of each object in {@code objects}, shared by the snapshots of a version
+     * @param objectsVersion changes whenever the objects are not the same ones
+     */
+    void capture(Simulator simulator,
+                 List<CelestialObject> objects,
+                 Map<CelestialObject, Integer> indices,
+                 long objectsVersion,
+                 boolean withSystems,
+                 boolean withOrbits,
+                 PathWindows pathWindows) {
+        this.objects = objects;
+        this.indices = indices;
+        this.objectsVersion = objectsVersion;
+
+        int n = objects.size();
+        if (rotationAngles.length != n) {
+            positions = new double[n * dimension];
+            velocities = new double[n * dimension];
+            rotationAngles = new double[n];
+            rotationAxes = new double[n * dimension];
+            angularVelocities = new double[n];
+            masses = new double[n];
+            equatorialRadii = new double[n];
+            polarRadii = new double[n];
+            hillRadii = new double[n];
+            rocheLimits = new double[n];
+            colorCodes = new String[n];
+            stars = new StarState[n];
+            comets = new CometState[n];
+        }
+        totalMass = 0;
+        for (int i = 0; i < n; i++) {
+            CelestialObject co = objects.get(i);
+            System.arraycopy(co.position, 0, positions, i * dimension, dimension);
+            System.arraycopy(co.velocity, 0, velocities, i * dimension, dimension);
+            rotationAngles[i] = co.rotationAngle;
+            System.arraycopy(co.rotationAxis, 0, rotationAxes, i * dimension, dimension);
+            angularVelocities[i] = co.getAngularVelocity();
+            masses[i] = co.getMass();
+            totalMass += masses[i];
+            equatorialRadii[i] = co.getEquatorialRadius();
+            polarRadii[i] = co.getPolarRadius();
+            hillRadii[i] = co.getHillMaster() == null ? Double.NaN : co.getHillRadius();
+            rocheLimits[i] = co.getApproxRocheLimit();
+            colorCodes[i] = co.getColorCode();
+            Status status = co.getStatus();
+            stars[i] = status instanceof Star star ? StarState.of(star) : null;
+            comets[i] = status instanceof Comet comet ? CometState.of(comet) : null;
+        }
+        if (n > 0) System.arraycopy(simulator.barycenter(), 0, barycenter, 0, dimension);
+        time = simulator.getTimeStepAccumulator();
+
+        boolean masters = simulator.isEnableMasterCalculation();
+        hasSystems = withSystems && masters;
+        if (hasSystems) captureSystems(simulator, n);
+        hasOrbits = withOrbits;
+        if (hasOrbits) captureOrbits(simulator, n);
+        capturePaths(simulator, pathWindows);
+    }
+
+    private void captureSystems(Simulator simulator, int n) {
+        if (systemDepths.length != n) {
+            systemDepths = new int[n];
+            systemPositions = new double[n * dimension];
+        }
+        Arrays.fill(systemDepths, -1);
+        for (HieraticalSystem root : simulator.getRootSystems()) {
+            captureSystem(root, 0);
+        }
+    }
+
+    private void captureSystem(HieraticalSystem hs, int depth) {
+        if (hs.isObject()) return;
+        Integer index = indices.get(hs.master);
+        if (index == null) return;
+        systemDepths[index] = depth;
+        System.arraycopy(hs.getPosition(), 0, systemPositions, index * dimension, dimension);
+        for (HieraticalSystem child : hs.getChildrenSorted()) {
+            captureSystem(child, depth + 1);
+        }
+    }
+
+    private void captureOrbits(Simulator simulator, int n) {
+        if (primaryOrbits.length != n) {
+            primaryOrbits = new FullOrbitSpec[n];
+            secondaryOrbits = new FullOrbitSpec[n];
+            primaryChildShares = new double[n];
+            secondaryChildShares = new double[n];
+        }
+        for (int i = 0; i < n; i++) {
+            CelestialObject object = objects.get(i);
+            CelestialObject parent = object.getHillMaster();
+            CelestialObject maxObj = object.getMaxGravityObject();
+            primaryOrbits[i] = parent == null ? null : orbitOf(simulator, object, parent, true);
+            secondaryOrbits[i] = maxObj == null || maxObj == parent ? null : orbitOf(simulator, object, maxObj, false);
+            primaryChildShares[i] = childShareOf(primaryOrbits[i]);
+            secondaryChildShares[i] = childShareOf(secondaryOrbits[i]);
+        }
+    }
+
+    private static FullOrbitSpec orbitOf(Simulator simulator, CelestialObject object, CelestialObject parent,
+                                         boolean isPrimary) {
+        FullOrbitSpec spec = simulator.computeOrbitOf(object, parent, isPrimary);
+        // the barycenter may be the one a system keeps updating
+        return new FullOrbitSpec(spec.elements, spec.child, spec.massInvolved, spec.barycenter.clone());
+    }
+
+    private static double childShareOf(FullOrbitSpec spec) {
+        return spec == null ? 0 : spec.child.getMass() / spec.massInvolved;
+    }
+
+    private void capturePaths(Simulator simulator, PathWindows windows) {
+        // the removed bodies must not be kept by a snapshot not shown any more
+        Arrays.fill(pathObjects, 0, pathCount, null);
+        pathCount = 0;
+        pathsRelative = false;
+        traces.clear();
+        fullPaths.clear();
+        if (windows.tracePoints() <= 0 && windows.fullPathPoints() <= 0) return;
+
+        PathHistory history = simulator.getPathHistory();
+        PathBuffer centerPath = windows.barycentric()
+                ? history.getBarycenterPath()
+                : windows.center() == null ? null : history.getPath(windows.center());
+        pathsRelative = centerPath != null;
+        double earliest = time - windows.traceDuration();
+
+        for (Map.Entry<CelestialObject, PathBuffer> entry : history.getPaths().entrySet()) {
+            CelestialObject object = entry.getKey();
+            double mass = object.getMass();
+            if (mass < windows.minimumMass()) continue;
+            if (pathCount == pathObjects.length) {
+                int capacity = Math.max(16, pathCount * 2);
+                pathObjects = Arrays.copyOf(pathObjects, capacity);
+                pathMasses = Arrays.copyOf(pathMasses, capacity);
+            }
+            pathObjects[pathCount] = object;
+            pathMasses[pathCount] = mass;
+            pathCount++;
+            traces.add(entry.getValue(), centerPath, earliest, windows.tracePoints());
+            fullPaths.add(entry.getValue(), centerPath, Double.NEGATIVE_INFINITY, windows.fullPathPoints());
+        }
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    /**
+     * @return the objects, sorted from big to small as in the simulator, the list never changes
+     */
+    public List<CelestialObject> getObjects() {
+        return objects;
+    }
+
+    /**
+     * @return a number that is the same for two snapshots exactly when they have the same objects
+     */
+    public long getObjectsVersion() {
+        return objectsVersion;
+    }
+
+    /**
+     * @return the index of {@code object}, or -1 if it is not in this snapshot
+     */
+    public int indexOf(CelestialObject object) {
+        Integer index = indices.get(object);
+        return index == null ? -1 : index;
+    }
+
+    public double getPosition(int index, int d) {
+        return positions[index * dimension + d];
+    }
+
+    public double getVelocity(int index, int d) {
+        return velocities[index * dimension + d];
+    }
+
+    /**
+     * @return a copy of the position of {@code object}, or of its current position if it is not in this snapshot
+     */
+    public double[] getPosition(CelestialObject object) {
+        int index = indexOf(object);
+        if (index == -1) return object.getPosition().clone();
+        double[] result = new double[dimension];
+        System.arraycopy(positions, index * dimension, result, 0, dimension);
+        return result;
+    }
+
+    public double getRotationAngle(int index) {
+        return rotationAngles[index];
+    }
+
+    public double getRotationAxis(int index, int d) {
+        return rotationAxes[index * dimension + d];
+    }
+
+    public double getAngularVelocity(int index) {
+        return angularVelocities[index];
+    }
+
+    public double getMass(int index) {
+        return masses[index];
+    }
+
+    public double getEquatorialRadius(int index) {
+        return equatorialRadii[index];
+    }
+
+    public double getPolarRadius(int index) {
+        return polarRadii[index];
+    }
+
+    /**
+     * @return the hill radius of the {@code index}-th object, or NaN if it has no hill master
+     */
+    public double getHillRadius(int index) {
+        return hillRadii[index];
+    }
+
+    public double getRocheLimit(int index) {
+        return rocheLimits[index];
+    }
+
+    public String getColorCode(int index) {
+        return colorCodes[index];
+    }
+
+    /**
+     * @return the state of the {@code index}-th object as a star, or null if it is not a star
+     */
+    public StarState getStar(int index) {
+        return stars[index];
+    }
+
+    /**
+     * @return the state of the {@code index}-th object as a comet, or null if it is not a comet
+     */
+    public CometState getComet(int index) {
+        return comets[index];
+    }
+
+    /**
+     * @see CelestialObject#isEmittingLight()
+     */
+    public boolean isEmittingLight(int index) {
+        return stars[index] != null && stars[index].luminosity() > 0;
+    }
+
+    /**
+     * @return the barycenter of all objects, the array is part of this snapshot and must not be changed
+     */
+    public double[] getBarycenter() {
+        return barycenter;
+    }
+
+    public double getTime() {
+        return time;
+    }
+
+    public double getTotalMass() {
+        return totalMass;
+    }
+
+    /**
+     * @return whether the barycenters of the systems were captured
+     */
+    public boolean hasSystems() {
+        return hasSystems;
+    }
+
+    /**
+     * @return the depth from its root of the system the {@code index}-th object is the master of,
+     * or -1 if it has no satellites
+     */
+    public int getSystemDepth(int index) {
+        return systemDepths[index];
+    }
+
+    public double getSystemPosition(int index, int d) {
+        return systemPositions[index * dimension + d];
+    }
+
+    /**
+     * @return whether the orbits were captured
+     */
+    public boolean hasOrbits() {
+        return hasOrbits;
+    }
+
+    /**
+     * @return the orbit around the hill master of the {@code index}-th object, or null if it has none
+     */
+    public FullOrbitSpec getPrimaryOrbit(int index) {
+        return primaryOrbits[index];
+    }
+
+    /**
+     * @return the orbit around the object pulling the {@code index}-th object most, or null if it is the hill
+     * master or there is none
+     */
+    public FullOrbitSpec getSecondaryOrbit(int index) {
+        return secondaryOrbits[index];
+    }
+
+    /**
+     * @return the share of the orbiting child in the mass involved in the primary orbit, the child being
+     * the system of the {@code index}-th object
+     */
+    public double getPrimaryOrbitChildShare(int index) {
+        return primaryChildShares[index];
+    }
+
+    /**
+     * @return the share of the {@code index}-th object in the mass involved in its secondary orbit
+     */
+    public double getSecondaryOrbitChildShare(int index) {
+        return secondaryChildShares[index];
+    }
+
+    /**
+     * @return the number of paths captured, including those of the removed bodies still having points
+     */
+    public int getPathCount() {
+        return pathCount;
+    }
+
+    /**
+     * @return the body the {@code p}-th path is of
+     */
+    public CelestialObject getPathObject(int p) {
+        return pathObjects[p];
+    }
+
+    /**
+     * @return the mass of the body of the {@code p}-th path, when captured
+     */
+    public double getPathMass(int p) {
+        return pathMasses[p];
+    }
+
+    /**
+     * @return whether the paths are relative to the path of the center asked for, and so have to be moved
+     * to where the center is shown
+     */
+    public boolean isPathsRelative() {
+        return pathsRelative;
+    }
+
+    /**
+     * @return the number of points of the recent part of the {@code p}-th path
+     */
+    public int getTraceSize(int p) {
+        return traces.size(p);
+    }
+
+    /**
+     * @return the {@code d}-th coordinate of the {@code k}-th newest picked point of the recent part of
+     * the {@code p}-th path
+     */
+    public double getTracePoint(int p, int k, int d) {
+        return traces.get(p, k, d);
+    }
+
+    /**
+     * @return the number of points of the whole {@code p}-th path
+     */
+    public int getFullPathSize(int p) {
+        return fullPaths.size(p);
+    }
+
+    /**
+     * @return the {@code d}-th coordinate of the {@code k}-th newest picked point of the whole {@code p}-th path
+     */
+    public double getFullPathPoint(int p, int k, int d) {
+        return fullPaths.get(p, k, d);
+    }
+
+    /**
+     * @return the index of each object of {@code objects}
+     */
+    static Map<CelestialObject, Integer> indicesOf(List<CelestialObject> objects) {
+        Map<CelestialObject, Integer> indices = new IdentityHashMap<>(objects.size() * 2);
+        for (int i = 0; i < objects.size(); i++) {
+            indices.put(objects.get(i), i);
+        }
+        return indices;
+    }
+
+    /**
+     * What is shown of a star, as of a snapshot.
+     *
+     * @param habitableZone the inner and the outer radius of the habitable zone, must not be changed
+     */
+    public record StarState(double luminosity, double emissionColorTemperature, double[] habitableZone) {
+        public static StarState of(Star star) {
+            return new StarState(star.getLuminosity(),
+                    star.getEmissionColorTemperature(),
+                    star.estimateHabitableZone());
+        }
+    }
+
+    /**
+     * What is shown of a comet, as of a snapshot. The tails are replaced, not changed, by the simulator.
+     *
+     * @param ionTails the ion tail blown by each star
+     */
+    public record CometState(CometTailParams dustTail, Map<CelestialObject, CometTailParams> ionTails) {
+        public static CometState of(Comet comet) {
+            return new CometState(comet.getDustTail(), Map.copyOf(comet.getIonTails()));
+        }
+    }
+
+    /**
+     * What of the paths the snapshots capture. The paths are decimated as by
+     * {@link PathBuffer#decimate(double, int, int[])}, only the points drawn are copied.
+     *
+     * @param traceDuration  how long back the recent paths reach
+     * @param tracePoints    the most points of a recent path, 0 for none
+     * @param fullPathPoints the most points of a whole path, 0 for none
+     * @param barycentric    whether the paths are relative to the barycenter
+     * @param center         the body the paths are relative to if not barycentric, null for none
+     * @param minimumMass    only the paths of the bodies at least this heavy
+     */
+    public record PathWindows(double traceDuration,
+                              int tracePoints,
+                              int fullPathPoints,
+                              boolean barycentric,
+                              CelestialObject center,
+                              double minimumMass) {
+        public static final PathWindows NONE = new PathWindows(0, 0, 0, false, null, 0);
+    }
+
+    /**
+     * Picked points of paths, those of the {@code p}-th path from {@code starts[p]} to {@code starts[p + 1]},
+     * newest first. Like in {@link PathBuffer}, the points are floats relative to the newest one.
+     */
+    private final class PathPoints {
+        private final int dimension;
+        private int[] starts = new int[1];
+        private double[] references = new double[0];
+        private float[] coords = new float[0];
+        private int count;
+
+        PathPoints(int dimension) {
+            this.dimension = dimension;
+        }
+
+        void clear() {
+            count = 0;
+        }
+
+        /**
+         * Adds the points of {@code path} picked for at most {@code maxPoints}, relative to {@code centerPath}
+         * if not null. The points older than the center path are left out.
+         */
+        void add(PathBuffer path, PathBuffer centerPath, double earliest, int maxPoints) {
+            if (count + 2 > starts.length) {
+                int capacity = Math.max(16, starts.length * 2);
+                starts = Arrays.copyOf(starts, capacity);
+                references = Arrays.copyOf(references, capacity * dimension);
+            }
+            int start = starts[count];
+            int picked = maxPoints <= 0 ? 0 : pick(path, earliest, maxPoints);
+            if ((start + picked) * dimension > coords.length) {
+                coords = Arrays.copyOf(coords, Math.max((start + picked) * dimension, coords.length * 2));
+            }
+            int refBase = count * dimension;
+            int end = start;
+            for (int p = 0; p < picked; p++) {
+                int k = pickedIndices[p];
+                int centerIndex = -1;
+                if (centerPath != null) {
+                    centerIndex = centerPath.indexOfSample(path.sampleOf(k));
+                    if (centerIndex == -1) break;  // center not alive for this long
+                }
+                for (int d = 0; d < dimension; d++) {
+                    double value = path.get(k, d);
+                    if (centerIndex != -1) value -= centerPath.get(centerIndex, d);
+                    if (p == 0) references[refBase + d] = value;
+                    coords[end * dimension + d] = (float) (value - references[refBase + d]);
+                }
+                end++;
+            }
+            count++;
+            starts[count] = end;
+        }
+
+        private int pick(PathBuffer path, double earliest, int maxPoints) {
+            if (pickedIndices.length < maxPoints) pickedIndices = new int[maxPoints];
+            return path.decimate(earliest, maxPoints, pickedIndices);
+        }
+
+        int size(int p) {
+            return starts[p + 1] - starts[p];
+        }
+
+        double get(int p, int k, int d) {
+            return references[p * dimension + d] + coords[(starts[p] + k) * dimension + d];
+        }
+    }
+}
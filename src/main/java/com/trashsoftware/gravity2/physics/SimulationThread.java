@@ -0,0 +1,355 @@
+package com.trashsoftware.gravity2.physics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Runs a {@link Simulator}, or plays a {@link TrajectoryReplay}, on a thread of its own.
+ * <p>
+ * Only this thread touches the simulator once started. The others see it through:
+ * <ul>
+ *     <li>{@link #takeSnapshot()}, the latest {@link SimulationSnapshot}, for the renderer. The snapshots are
+ *     exchanged through three buffers: the thread writes one, one is the latest published, and one is
+ *     being shown. Publishing and taking are a single atomic swap each, neither side ever waits for the
+ *     other, and a slow renderer just skips snapshots. Of the paths, only the points drawn are captured,
+ *     see {@link #setPathWindows(SimulationSnapshot.PathWindows)}.</li>
+ *     <li>{@link #getTime()}, {@link #getTotalMass()} and {@link #getObjects()}, for the UI, always of the
+ *     latest snapshot.</li>
+ *     <li>{@link #execute(Runnable)} and {@link #query(Function)}, which run on this thread between two batches
+ *     of steps, to change the simulator or to compute something from its complete state.</li>
+ * </ul>
+ * The steps are done in batches of what has become due since the last batch, {@link #STEPS_PER_SECOND}
+ * steps per wall second as the render loop used to ask for. A batch is at most {@link #MAX_BATCH_STEPS}
+ * steps and is cut short once it has taken {@link #BATCH_BUDGET_NANOS}, see
+ * {@link Simulator#simulateFor(long, int)}. If the simulation cannot keep up it falls behind instead of
+ * asking for more and more, and the tasks never wait longer than a budget.
+ */
+public class SimulationThread implements Closeable {
+    public static final double STEPS_PER_SECOND = 1000.0;
+    public static final int MAX_BATCH_STEPS = 100;
+    public static final long BATCH_BUDGET_NANOS = 8_000_000L;
+    private static final long BATCH_INTERVAL_NANOS = 8_000_000L;
+
+    private static final int FRESH = 4;  // flag of the middle buffer, set if not taken yet
+    private static final int INDEX = 3;
+
+    private final Simulator simulator;
+    private final TrajectoryReplay replay;
+    private final Thread thread;
+    private final ReentrantLock batchLock = new ReentrantLock();
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    private final SimulationSnapshot[] buffers = new SimulationSnapshot[3];
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int back = 0;  // written by this thread
+    private int front = 2;  // shown by the consumer
+
+    private List<CelestialObject> objects;
+    private Map<CelestialObject, Integer> indices;
+    private long objectsVersion;
+    private volatile List<CelestialObject> publishedObjects;
+    private volatile double publishedTime;
+    private volatile double publishedTotalMass;
+
+    private volatile boolean running = true;
+    private volatile boolean playing;
+    private volatile boolean withSystems;
+    private volatile boolean withOrbits;
+    private volatile SimulationSnapshot.PathWindows pathWindows = SimulationSnapshot.PathWindows.NONE;
+    private final AtomicBoolean tooFast = new AtomicBoolean();
+    private volatile Throwable failure;
+    private volatile double simSecondsPerWallSecond = -1;
+    private double replayTime;
+
+    public SimulationThread(Simulator simulator) {
+        this(simulator, null);
+    }
+
+    /**
+     * Plays {@code replay} instead of simulating, from its current frame.
+     */
+    public SimulationThread(TrajectoryReplay replay) {
+        this(replay.getSimulator(), replay);
+    }
+
+    private SimulationThread(Simulator simulator, TrajectoryReplay replay) {
+        this.simulator = simulator;
+        this.replay = replay;
+        if (replay != null) replayTime = replay.getTime();
+
+        int dimension = simulator.getDimension();
+        for (int b = 0; b < buffers.length; b++) {
+            buffers[b] = new SimulationSnapshot(dimension);
+        }
+        // what is there before starting is shown too
+        publish();
+
+        thread = new Thread(this::run, "simulation");
+        thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    private void run() {
+        long lastBatch = System.nanoTime();
+        try {
+            while (running) {
+                long now = System.nanoTime();
+                boolean changed;
+                batchLock.lock();
+                try {
+                    changed = runTasks();
+                    if (playing && now - lastBatch >= BATCH_INTERVAL_NANOS) {
+                        int steps = (int) Math.min(MAX_BATCH_STEPS,
+                                Math.round((now - lastBatch) * STEPS_PER_SECOND / 1e9));
+                        lastBatch = now;
+                        step(steps);
+                        changed = true;
+                    } else if (!playing) {
+                        lastBatch = now;
+                    }
+                    if (changed) publish();
+                } finally {
+                    batchLock.unlock();
+                }
+                if (!changed && tasks.isEmpty()) {
+                    LockSupport.parkNanos(this, lastBatch + BATCH_INTERVAL_NANOS - System.nanoTime());
+                }
+            }
+        } catch (RuntimeException | Error e) {
+            failure = e;
+            // as if closed, so that no task is left waiting
+            running = false;
+            runTasksAfterFailure();
+            throw e;
+        }
+    }
+
+    private boolean runTasks() {
+        boolean any = false;
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+            any = true;
+        }
+        return any;
+    }
+
+    private void runTasksAfterFailure() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace(System.err);
+            }
+        }
+    }
+
+    private void step(int steps) {
+        if (replay != null) {
+            replayTime = Math.min(replay.getEndTime(), replayTime + steps * simulator.getTimeStep());
+            seekTo(replayTime, true);
+        } else {
+            Simulator.SimResult result = simulator.simulateFor(BATCH_BUDGET_NANOS, steps);
+            if (result == Simulator.SimResult.TOO_FAST) tooFast.set(true);
+            simSecondsPerWallSecond = simulator.getSimSecondsPerWallSecond();
+        }
+    }
+
+    private void seekTo(double time, boolean continuing) {
+        try {
+            replay.seek(time, continuing);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void publish() {
+        List<CelestialObject> current = simulator.getObjects();
+        if (objects == null || !objects.equals(current)) {
+            objects = List.copyOf(current);
+            indices = SimulationSnapshot.indicesOf(objects);
+            objectsVersion++;
+        }
+        buffers[back].capture(simulator, objects, indices, objectsVersion, withSystems, withOrbits, pathWindows);
+        publishedObjects = objects;
+        publishedTime = buffers[back].getTime();
+        publishedTotalMass = buffers[back].getTotalMass();
+        back = middle.getAndSet(back | FRESH) & INDEX;
+    }
+
+    /**
+     * Takes the latest published snapshot. Only one thread, the renderer, may take snapshots.
+     *
+     * @return the latest snapshot, the same as last time if none has been published since
+     */
+    public SimulationSnapshot takeSnapshot() {
+        if (failure != null) throw new IllegalStateException("Simulation has failed", failure);
+        if ((middle.get() & FRESH) != 0) {
+            front = middle.getAndSet(front) & INDEX;
+        }
+        return buffers[front];
+    }
+
+    /**
+     * Runs {@code task} on this thread before the next batch of steps. Once closed or failed, it runs on
+     * the caller.
+     */
+    public void execute(Runnable task) {
+        if (!running) {
+            task.run();
+            return;
+        }
+        tasks.offer(task);
+        LockSupport.unpark(thread);
+        // closed or failed meanwhile, and too late for the thread to run it
+        if (!running && (failure != null || !thread.isAlive()) && tasks.remove(task)) task.run();
+    }
+
+    /**
+     * Computes something from the state of the simulator between two batches, waiting for the result.
+     * The simulation never waits for the caller, the caller waits at most for a batch.
+     */
+    public <T> T query(Function<Simulator, T> query) {
+        if (Thread.currentThread() == thread || !thread.isAlive()) return query.apply(simulator);
+        FutureTask<T> task = new FutureTask<>(() -> query.apply(simulator));
+        execute(task);
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    public void setPlaying(boolean playing) {
+        this.playing = playing;
+        LockSupport.unpark(thread);
+    }
+
+    public boolean isPlaying() {
+        return playing;
+    }
+
+    /**
+     * Stops stepping and waits until the batch being done, if any, has finished. Then the simulator only
+     * changes by the tasks given to {@link #execute(Runnable)}.
+     */
+    public void pause() {
+        playing = false;
+        batchLock.lock();
+        batchLock.unlock();
+    }
+
+    /**
+     * Shows the frame of the replay at {@code time} and goes on from there.
+     */
+    public void seekReplay(double time) {
+        if (replay == null) throw new IllegalStateException("Not a replay");
+        execute(() -> {
+            replayTime = time;
+            seekTo(time, false);
+        });
+    }
+
+    /**
+     * Sets what is captured in the snapshots besides the positions.
+     */
+    public void setCapturing(boolean withSystems, boolean withOrbits) {
+        this.withSystems = withSystems;
+        this.withOrbits = withOrbits;
+        // captured again even if paused
+        execute(() -> {});
+    }
+
+    /**
+     * Sets which points of the paths are captured in the snapshots, the snapshots only copy what is drawn.
+     */
+    public void setPathWindows(SimulationSnapshot.PathWindows pathWindows) {
+        if (pathWindows.equals(this.pathWindows)) return;
+        this.pathWindows = pathWindows;
+        // captured again even if paused
+        execute(() -> {});
+    }
+
+    /**
+     * @return whether a body has moved too fast since the last call
+     */
+    public boolean takeTooFast() {
+        return tooFast.getAndSet(false);
+    }
+
+    /**
+     * @return how many seconds the simulator can simulate per wall second, or -1 if not measured yet
+     * @see Simulator#getSimSecondsPerWallSecond()
+     */
+    public double getSimSecondsPerWallSecond() {
+        return simSecondsPerWallSecond;
+    }
+
+    public Simulator getSimulator() {
+        return simulator;
+    }
+
+    /**
+     * @return the replay played, or null if simulating
+     */
+    public TrajectoryReplay getReplay() {
+        return replay;
+    }
+
+    /**
+     * @return the objects of the latest snapshot, the list never changes
+     */
+    public List<CelestialObject> getObjects() {
+        return publishedObjects;
+    }
+
+    /**
+     * @return the time of the latest snapshot
+     */
+    public double getTime() {
+        return publishedTime;
+    }
+
+    /**
+     * @return the total mass of the objects of the latest snapshot
+     */
+    public double getTotalMass() {
+        return publishedTotalMass;
+    }
+
+    /**
+     * Stops the thread after its current batch. The tasks still queued are run on the caller.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(thread);
+        if (thread.isAlive() && Thread.currentThread() != thread) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        runTasks();
+    }
+}
@@ -4,10 +4,14 @@ import com.trashsoftware.gravity2.gui.Vector3d;
 import com.trashsoftware.gravity2.physics.status.Comet;
 import com.trashsoftware.gravity2.physics.status.Star;
 import com.trashsoftware.gravity2.presets.SystemPresets;
+import com.trashsoftware.gravity2.utils.AllocationCounter;
 import com.trashsoftware.gravity2.utils.Util;
 import org.json.JSONArray;
 import org.json.JSONObject;
-
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.RecursiveAction;
@@ -21,9 +25,16 @@ public class Simulator {
     public static final double MIN_DEBRIS_VOLUME = 4.0 / 3 * Math.PI * Math.pow(MIN_DEBRIS_RADIUS, 3);
     public static final double DISASSEMBLE_LAMBDA = 5e-5;
     public static final double MAX_TIME_AFTER_DIE = 3e5;
+    private static final long THROUGHPUT_WINDOW_NANOS = 1_000_000_000L;
 
     public static final double PLANET_MAX_MASS = 0.8;
 
+    /**
+     * Whether the SIMD kernel can run in this JVM, i.e. the vector module is added and the cpu has
+     * more than one double lane.
+     */
+    public static final boolean VECTOR_KERNEL_SUPPORTED = probeVectorKernel();
+
     protected double timeStep = 1;
     private transient double lastTimeStepAccumulator = 0;
     private double timeStepAccumulator = 0;
@@ -37,17 +48,28 @@ public class Simulator {
     private double cutOffForce;
     private boolean enableDisassemble = true;
     private boolean enableMasterCalculation = true;
+    private ForceMethod forceMethod = ForceMethod.DIRECT;
+    private double barnesHutTheta = 0.5;
+    private IntegratorType integratorType = IntegratorType.LEAPFROG;
+    private double blockTimeStepAccuracy = BlockTimeStepper.DEFAULT_ETA;
+    private double adaptiveTolerance = GaussRadauIntegrator.DEFAULT_TOLERANCE;
 
     /**
      * All objects, always sorted from massive to light
      */
     private final List<CelestialObject> objects = new ArrayList<>();
-    private final Map<CelestialObject, Deque<double[]>> recentPaths = new HashMap<>();  // [x,y,timeStep]
-    private final Deque<double[]> barycenterPath = new ArrayDeque<>();
+    private final PathHistory pathHistory;
+    private TrajectoryRecorder trajectoryRecorder;
     private double[] barycenter;
 
     // temp buffers
-    private transient double[][] forcesBuffer;
+    private transient final BodyStore bodyStore;
+    private transient double[] forcesBuffer;  // [body * dimension + d]
+    private transient double[][] forceSlabs;  // one per direct-summation chunk, [body * dimension + d]
+    private transient ForceCalculationTask[] forceTasks;
+    private transient BarnesHutTask[] barnesHutTasks;
+    private transient VectorForceKernel vectorKernel;
+    private transient boolean vectorKernelEnabled = true;
     private transient double[] dimDtBuffer;
     private transient final List<CelestialObject> debrisBuffer = new ArrayList<>();
     private transient final List<CelestialObject> newlyDestroyed = new ArrayList<>();
@@ -55,6 +77,22 @@ public class Simulator {
     private transient final Map<CelestialObject, HieraticalSystem> systemMap = new HashMap<>();
     private final transient List<HieraticalSystem> rootSystems = new ArrayList<>();
     private transient int forceCounter1, forceCounter2;
+    private transient BarnesHutTree barnesHutTree;
+    private transient CollisionBroadPhase broadPhase;
+    private transient MasterTracker masterTracker;
+    private transient MasterSearchTree hillTree;
+    private transient MasterSearchTree masterSearchTree;
+    private transient boolean masterSearchTreeValid;
+    private transient TypicalForceEstimator forceThresholdEstimator;
+    private transient RadiativeTransfer radiativeTransfer;
+    private transient final List<CelestialObject> hillCandidates = new ArrayList<>();
+    private transient Integrator integrator;
+    private transient boolean measureAllocation;
+    private transient double allocatedBytesPerStep = -1;
+    private transient long budgetCarry;  // overrun of the last budget, <= 0
+    private transient double throughputSimTime;
+    private transient long throughputWallNanos;
+    private transient double simSecondsPerWallSecond = -1;
 
     private transient final ForkJoinPool forceCalculationPool = new ForkJoinPool();
     protected transient final Random random = new Random();
@@ -63,6 +101,8 @@ public class Simulator {
         this.dimension = dimension;
         this.G = G;
         this.gravityDtPower = gravityDtPower;
+        this.bodyStore = new BodyStore(dimension);
+        this.pathHistory = new PathHistory(dimension, PATH_LIMIT);
     }
 
     public Simulator() {
@@ -82,16 +122,108 @@ public class Simulator {
         simulator.cutOffForce = json.getDouble("cutOffForce");
         simulator.tidalEffectFactor = json.getDouble("tidalEffectFactor");
         simulator.enableDisassemble = json.getBoolean("enableDisassemble");
+        if (json.has("forceMethod")) {
+            simulator.forceMethod = ForceMethod.valueOf(json.getString("forceMethod"));
+            simulator.barnesHutTheta = json.getDouble("barnesHutTheta");
+        }
+        if (json.has("integrator")) {
+            simulator.integratorType = IntegratorType.valueOf(json.getString("integrator"));
+            simulator.blockTimeStepAccuracy = json.getDouble("blockTimeStepAccuracy");
+            simulator.adaptiveTolerance = json.getDouble("adaptiveTolerance");
+        } else if (json.optBoolean("blockTimeStepping")) {
+            simulator.integratorType = IntegratorType.BLOCK_LEAPFROG;
+        }
 
         JSONArray objectsArr = json.getJSONArray("objects");
+        List<CelestialObject> loaded = new ArrayList<>(objectsArr.length());
         for (int i = 0; i < objectsArr.length(); i++) {
-            CelestialObject co = CelestialObject.fromJson(objectsArr.getJSONObject(i));
-            simulator.addObject(co);
+            loaded.add(CelestialObject.fromJson(objectsArr.getJSONObject(i)));
+        }
+        simulator.addObjects(loaded);
+
+        return simulator;
+    }
+
+    /**
+     * Loads a save, either a {@link BinarySnapshot} or the JSON of {@link #toJson()}.
+     */
+    public static Simulator load(Path path) throws IOException {
+        if (BinarySnapshot.isBinary(path)) {
+            return loadBinary(path);
         }
+        return loadFromJson(new JSONObject(Files.readString(path)));
+    }
+
+    /**
+     * Loads a file written by {@link #saveBinary(Path)}, the same settings as {@link #loadFromJson(JSONObject)}.
+     */
+    public static Simulator loadBinary(Path path) throws IOException {
+        BinarySnapshot.Reader reader = new BinarySnapshot.Reader(path);
+        int dim = reader.getInt();
+        double G = reader.getDouble();
+        double gravityDtPower = reader.getDouble();
+
+        Simulator simulator = new Simulator(dim, G, gravityDtPower);
+
+        simulator.timeStep = reader.getDouble();
+        simulator.timeStepAccumulator = reader.getDouble();
+        simulator.epsilon = reader.getDouble();
+        simulator.cutOffForce = reader.getDouble();
+        simulator.tidalEffectFactor = reader.getDouble();
+        simulator.enableDisassemble = reader.getBoolean();
+        reader.getBoolean();  // enableMasterCalculation, not restored as in the JSON
+        simulator.forceMethod = ForceMethod.valueOf(reader.getString());
+        simulator.barnesHutTheta = reader.getDouble();
+        simulator.integratorType = IntegratorType.valueOf(reader.getString());
+        simulator.blockTimeStepAccuracy = reader.getDouble();
+        simulator.adaptiveTolerance = reader.getDouble();
+
+        simulator.addObjects(reader.readObjects());
 
         return simulator;
     }
 
+    /**
+     * @return the simulated time of a file written by {@link #saveBinary(Path)}, without loading the objects
+     */
+    static double readBinaryTime(Path path) throws IOException {
+        BinarySnapshot.Reader reader = new BinarySnapshot.Reader(path);
+        reader.getInt();  // dimension
+        reader.getDouble();  // G
+        reader.getDouble();  // gravityDtPower
+        reader.getDouble();  // timeStep
+        return reader.getDouble();
+    }
+
+    public void saveBinary(Path path) throws IOException {
+        BinarySnapshot.write(path, encodeBinary());
+    }
+
+    /**
+     * @return the content of a file of {@link #saveBinary(Path)}, to be written later by any thread
+     */
+    ByteBuffer[] encodeBinary() {
+        BinarySnapshot.Writer writer = new BinarySnapshot.Writer();
+        writer.putInt(dimension);
+        writer.putDouble(G);
+        writer.putDouble(gravityDtPower);
+
+        writer.putDouble(timeStep);
+        writer.putDouble(timeStepAccumulator);
+        writer.putDouble(epsilon);
+        writer.putDouble(cutOffForce);
+        writer.putDouble(tidalEffectFactor);
+        writer.putBoolean(enableDisassemble);
+        writer.putBoolean(enableMasterCalculation);
+        writer.putString(forceMethod.name());
+        writer.putDouble(barnesHutTheta);
+        writer.putString(integratorType.name());
+        writer.putDouble(blockTimeStepAccuracy);
+        writer.putDouble(adaptiveTolerance);
+
+        return writer.encode(objects, dimension);
+    }
+
     public JSONObject toJson() {
         JSONObject json = new JSONObject();
 
@@ -106,6 +238,11 @@ public class Simulator {
         json.put("tidalEffectFactor", tidalEffectFactor);
         json.put("enableDisassemble", enableDisassemble);
         json.put("enableMasterCalculation", enableMasterCalculation);
+        json.put("forceMethod", forceMethod.name());
+        json.put("barnesHutTheta", barnesHutTheta);
+        json.put("integrator", integratorType.name());
+        json.put("blockTimeStepAccuracy", blockTimeStepAccuracy);
+        json.put("adaptiveTolerance", adaptiveTolerance);
 
         JSONArray objectsArray = new JSONArray();
         for (CelestialObject co : objects) {
@@ -120,6 +257,10 @@ public class Simulator {
         this.timeStep = timeStep;
     }
 
+    public double getTimeStep() {
+        return timeStep;
+    }
+
     public double getTimeStepAccumulator() {
         return timeStepAccumulator;
     }
@@ -155,6 +296,118 @@ public class Simulator {
         return enableMasterCalculation;
     }
 
+    public void setForceMethod(ForceMethod forceMethod) {
+        this.forceMethod = forceMethod;
+    }
+
+    public ForceMethod getForceMethod() {
+        return forceMethod;
+    }
+
+    /**
+     * Sets the opening angle of the Barnes-Hut approximation.
+     * Lower theta is more accurate but slower, 0 is identical to the direct summation.
+     *
+     * @param barnesHutTheta the opening angle, typically 0.3 to 1.0
+     */
+    public void setBarnesHutTheta(double barnesHutTheta) {
+        if (barnesHutTheta < 0) {
+            throw new IllegalArgumentException("Theta must not be negative");
+        }
+        this.barnesHutTheta = barnesHutTheta;
+    }
+
+    public double getBarnesHutTheta() {
+        return barnesHutTheta;
+    }
+
+    public void setIntegratorType(IntegratorType integratorType) {
+        if (integratorType != this.integratorType) {
+            this.integratorType = integratorType;
+            this.integrator = null;
+        }
+    }
+
+    public IntegratorType getIntegratorType() {
+        return integratorType;
+    }
+
+    private Integrator getIntegrator() {
+        if (integrator == null) {
+            integrator = Integrator.create(integratorType, this, bodyStore);
+        }
+        return integrator;
+    }
+
+    /**
+     * @param accuracy the {@code eta} of the block step criterion {@code eta * |a| / |da/dt|}, smaller is finer
+     */
+    public void setBlockTimeStepAccuracy(double accuracy) {
+        if (accuracy <= 0) {
+            throw new IllegalArgumentException("Accuracy must be positive");
+        }
+        this.blockTimeStepAccuracy = accuracy;
+    }
+
+    public double getBlockTimeStepAccuracy() {
+        return blockTimeStepAccuracy;
+    }
+
+    /**
+     * @return the number of levels below the time step used by the last block time step, 0 if not stepping in blocks
+     */
+    public int getBlockTimeStepMaxLevel() {
+        return integrator instanceof BlockTimeStepper bts ? bts.getMaxLevel() : 0;
+    }
+
+    /**
+     * @param tolerance the relative error the {@link IntegratorType#IAS15} integrator keeps each sub-step below
+     */
+    public void setAdaptiveTolerance(double tolerance) {
+        if (tolerance <= 0) {
+            throw new IllegalArgumentException("Tolerance must be positive");
+        }
+        this.adaptiveTolerance = tolerance;
+    }
+
+    public double getAdaptiveTolerance() {
+        return adaptiveTolerance;
+    }
+
+    /**
+     * @return the number of adaptive sub-steps of the last step, 1 if the integrator is not adaptive
+     */
+    public int getAdaptiveSubStepCount() {
+        return integrator instanceof GaussRadauIntegrator gr ? gr.getSubStepCount() : 1;
+    }
+
+    ForkJoinPool getForceCalculationPool() {
+        return forceCalculationPool;
+    }
+
+    /**
+     * Evaluates the forces at the current positions of the store, by the current force method,
+     * and writes {@code factor * F / m} into {@code out}.
+     */
+    void evaluateAccelerations(double[] out, double factor) {
+        calculateAllForces();
+        double[] mass = bodyStore.mass;
+        for (int i = 0; i < bodyStore.size; i++) {
+            int base = i * dimension;
+            if (isZeroForce(base)) {
+                Arrays.fill(out, base, base + dimension, 0);
+                continue;
+            }
+            for (int j = base; j < base + dimension; j++) {
+                out[j] = factor * forcesBuffer[j] / mass[i];
+            }
+        }
+    }
+
+    double getCutOffForce() {
+        return cutOffForce;
+    }
+
     public void setG(double g) {
         this.G = g;
     }
@@ -179,85 +432,92 @@ public class Simulator {
      * @return whether the size has changed
      */
     public SimResult simulate(int nPhysicalFrames) {
+        return simulate(nPhysicalFrames, false, 0);
+    }
+
+    /**
+     * Simulates at most {@code maxSteps} steps, but stops once {@code budgetNanos} of wall time is spent,
+     * so a batch takes about the same time however many objects there are.
+     * <p>
+     * The budget is checked after each step, the time the last step has overrun is carried and taken from
+     * the budget of the next call. Budget left because {@code maxSteps} were done is not saved up.
+     * The achieved speed is reported by {@link #getSimSecondsPerWallSecond()}.
+     *
+     * @return as {@link #simulate(int)}
+     */
+    public SimResult simulateFor(long budgetNanos, int maxSteps) {
+        long start = System.nanoTime();
+        long budget = budgetNanos + budgetCarry;
+        budgetCarry = 0;
+        if (budget <= 0) {
+            // the last call has overrun by more than this budget
+            budgetCarry = budget;
+            return SimResult.NORMAL;
+        }
+        double timeBefore = timeStepAccumulator;
+        SimResult result = simulate(maxSteps, true, start + budget);
+        long spent = System.nanoTime() - start;
+        if (spent > budget) budgetCarry = Math.max(-budgetNanos, budget - spent);
+
+        throughputSimTime += timeStepAccumulator - timeBefore;
+        throughputWallNanos += spent;
+        if (throughputWallNanos >= THROUGHPUT_WINDOW_NANOS) {
+            simSecondsPerWallSecond = throughputSimTime * 1e9 / throughputWallNanos;
+            throughputSimTime = 0;
+            throughputWallNanos = 0;
+        }
+        return result;
+    }
+
+    /**
+     * @return the simulated seconds per wall second spent in {@link #simulateFor(long, int)}, over the last
+     * second of it, or -1 if not measured yet
+     */
+    public double getSimSecondsPerWallSecond() {
+        return simSecondsPerWallSecond;
+    }
+
+    private SimResult simulate(int nPhysicalFrames, boolean budgeted, long deadline) {
         int nObj = objects.size();
         boolean changeHappen = false;
 
         SimResult result = SimResult.NORMAL;
 
         updateForceThreshold();
+        masterSearchTreeValid = false;
 
-        double[] zeros = new double[dimension];
         double performedTimeSteps = 0;
 
+        bodyStore.load(objects);
+        long allocatedBefore = measureAllocation ? AllocationCounter.totalAllocatedBytes() : -1;
+        int performedSteps = 0;
         for (int step = 0; step < nPhysicalFrames; step++) {
-            // Calculate forces based on current positions
-            calculateAllForces(objects);
-
-            // Half-step velocity update
-            for (int i = 0; i < objects.size(); i++) {
-                CelestialObject object = objects.get(i);
-                if (Arrays.equals(zeros, forcesBuffer[i])) {
-                    Arrays.fill(object.lastAcceleration, 0);
-                    continue;
-                }
-                for (int j = 0; j < dimension; j++) {
-                    object.lastAcceleration[j] = 0.5 * forcesBuffer[i][j] / object.mass;
-                    objects.get(i).velocity[j] += object.lastAcceleration[j] * timeStep;
-                }
-            }
-
-            // Full-step position update
-            for (CelestialObject obj : objects) {
-                for (int j = 0; j < dimension; j++) {
-                    obj.position[j] += obj.velocity[j] * timeStep;
-                }
+            Integrator integrator = getIntegrator();
+            integrator.step(timeStep);
+            for (int i = 0; i < bodyStore.size; i++) {
+                if (isTooFast(i, integrator.lastStepOf(i, timeStep))) result = SimResult.TOO_FAST;
             }
 
             // Check for collisions and handle them
-            if (handleCollisions(objects, timeStep)) {
+            if (handleCollisions(timeStep)) {
                 changeHappen = true;
             }
 
-            // Calculate forces based on new positions
-            calculateAllForces(objects);
-
-            // Half-step velocity update
-            for (int i = 0; i < objects.size(); i++) {
-                CelestialObject object = objects.get(i);
-                if (Arrays.equals(zeros, forcesBuffer[i])) {
-                    Arrays.fill(object.lastAcceleration, 0);
-                    continue;
-                }
-                for (int j = 0; j < dimension; j++) {
-                    double newAcc = 0.5 * forcesBuffer[i][j] / object.mass;
-                    object.lastAcceleration[j] += newAcc;
-                    object.velocity[j] += newAcc * timeStep;
-                }
-                if (object.hillMaster != null && object.hillMaster.possibleRocheLimit != 0.0) {
-                    // hill master is heavier, so its velocity will be updated earlier
-                    double[] relVel = VectorOperations.subtract(object.velocity, object.hillMaster.velocity);
-                    if (VectorOperations.magnitude(relVel) * timeStep > object.hillMaster.possibleRocheLimit * 0.33) {
-                        System.out.println("Too fast: " + object.id);
-                        result = SimResult.TOO_FAST;
-                    }
-                }
-            }
-
             if (!debrisBuffer.isEmpty()) {
+                bodyStore.storeAll();
                 for (CelestialObject debris : debrisBuffer) {
                     addObject(debris);
                 }
                 debrisBuffer.clear();
+                bodyStore.load(objects);
                 changeHappen = true;
             }
 
             if (enableMasterCalculation) {
                 if (timeStepAccumulator - lastTimeStepAccumulator >= PATH_INTERVAL) {
+                    bodyStore.storeAll();
                     updateBarycenter();
-                    for (CelestialObject obj : objects) {
-                        addPath(obj, timeStepAccumulator);
-                    }
-                    addBarycenterPath(timeStepAccumulator);
+                    pathHistory.record(objects, barycenter(), timeStepAccumulator);
 
                     lastTimeStepAccumulator = timeStepAccumulator;
                 }
@@ -265,11 +525,22 @@ public class Simulator {
 
             timeStepAccumulator += timeStep;
             performedTimeSteps += timeStep;
+            performedSteps++;
+
+            if (trajectoryRecorder != null && trajectoryRecorder.isDue(timeStepAccumulator)) {
+                bodyStore.storeAll();
+                trajectoryRecorder.record(this);
+            }
 
             if (result == SimResult.TOO_FAST) break;
+            if (budgeted && System.nanoTime() - deadline >= 0) break;
+        }
+        if (allocatedBefore >= 0 && performedSteps > 0) {
+            allocatedBytesPerStep = (double) (AllocationCounter.totalAllocatedBytes() - allocatedBefore) / performedSteps;
         }
+        bodyStore.storeAll();
         if (enableMasterCalculation) {
-            gcPaths(timeStepAccumulator);
+            pathHistory.trim();
         }
 
         updateBarycenter();
@@ -300,102 +571,172 @@ public class Simulator {
         return result;
     }
 
-    private boolean handleCollisions(List<CelestialObject> objects, double timeStep) {
+    private boolean isZeroForce(int base) {
+        for (int d = base; d < base + dimension; d++) {
+            if (forcesBuffer[d] != 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param dt the step the body {@code i} has just been advanced with
+     * @return whether the body moves too far relative to its hill master to resolve its Roche limit
+     */
+    private boolean isTooFast(int i, double dt) {
+        CelestialObject object = bodyStore.objects[i];
+        if (object.hillMaster != null && object.hillMaster.possibleRocheLimit != 0.0) {
+            int m = bodyStore.indexOf(object.hillMaster);
+            if (m != -1) {
+                double[] velocity = bodyStore.velocity;
+                int base = i * dimension;
+                int mBase = m * dimension;
+                double sqrRelVel = 0;
+                for (int d = 0; d < dimension; d++) {
+                    double diff = velocity[base + d] - velocity[mBase + d];
+                    sqrRelVel += diff * diff;
+                }
+                if (Math.sqrt(sqrRelVel) * dt > object.hillMaster.possibleRocheLimit * 0.33) {
+                    System.out.println("Too fast: " + object.id);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Loads the objects into the body store, for running the phases of a step one by one.
+     */
+    void loadBodyStore() {
+        bodyStore.load(objects);
+    }
+
+    /**
+     * Broad phase on the packed store, see {@link CollisionBroadPhase}. The candidate pairs are visited
+     * in the same order as a full scan would, i descending then j descending.
+     * The narrow phase works on the objects, so the involved bodies are synced before and reloaded after it.
+     */
+    boolean handleCollisions(double timeStep) {
         boolean happen = false;
-        int n = objects.size();
-        for (int i = n - 1; i >= 0; i--) {
-            CelestialObject coi = objects.get(i);
-            for (int j = i - 1; j >= 0; j--) {
-                CelestialObject coj = objects.get(j);
-                double distance = VectorOperations.distance(coi.position, coj.position);
-                boolean collide = distance < coi.getAverageRadius() + coj.getAverageRadius();
-
-                // Determine which object is heavier
-                CelestialObject heavier = coi.mass >= coj.mass ? coi : coj;
-                CelestialObject lighter = heavier == coi ? coj : coi;
-
-                if (collide) {
-                    double[] AB = VectorOperations.subtract(lighter.position, heavier.position);
-                    // Distance between the centers
-                    double distanceAB = VectorOperations.magnitude(AB);
-                    // Calculate the ratio of A's radius to the distance between A and B
-                    double t = heavier.getEquatorialRadius() / distanceAB;
-                    // Interpolate to find the collision point (starting from A's center)
-                    double[] collisionPoint = VectorOperations.add(heavier.position,
-                            VectorOperations.scale(AB, t));
-                    heavier.collideWith(this, lighter, collisionPoint);
-
-                    // Remove the lighter object
-                    objects.remove(lighter);
-                    systemMap.remove(lighter);
-                    lighter.destroy(timeStepAccumulator);
-                    newlyDestroyed.add(lighter);
-
-                    // Adjust loop counters to account for the removed object
-                    n--;
-                    happen = true;
-                    break; // Restart checking for collisions with updated list
-                } else {
-                    // not collide, check roche
-                    if (distance < lighter.possibleRocheLimit) {
-                        // heavier one is also inside lighter's roche limit
-                        // unlikely to happen, but put it here
-                        double actualRoche = computeRocheLimitSolid(lighter, heavier.getDensity());
-                        if (distance - heavier.getAverageRadius() < actualRoche) {
+        BodyStore store = bodyStore;
+        if (broadPhase == null) broadPhase = new CollisionBroadPhase(dimension);
+        int nPairs = broadPhase.findPairs(store, store.size);
+        for (int k = nPairs - 1; k >= 0; k--) {
+            int i = broadPhase.first(k);
+            int j = broadPhase.second(k);
+            double[] position = store.position;
+            int iBase = i * dimension;
+            int jBase = j * dimension;
+            double sqrDt = 0;
+            for (int d = 0; d < dimension; d++) {
+                double diff = position[iBase + d] - position[jBase + d];
+                sqrDt += diff * diff;
+            }
+            double distance = Math.sqrt(sqrDt);
+            boolean collide = distance < store.radius[i] + store.radius[j];
+
+            // Determine which object is heavier
+            boolean iHeavier = store.mass[i] >= store.mass[j];
+            CelestialObject coi = store.objects[i];
+            CelestialObject coj = store.objects[j];
+            CelestialObject heavier = iHeavier ? coi : coj;
+            CelestialObject lighter = iHeavier ? coj : coi;
+
+            if (collide) {
+                store.storeAll();
+
+                double[] AB = VectorOperations.subtract(lighter.position, heavier.position);
+                // Distance between the centers
+                double distanceAB = VectorOperations.magnitude(AB);
+                // Calculate the ratio of A's radius to the distance between A and B
+                double t = heavier.getEquatorialRadius() / distanceAB;
+                // Interpolate to find the collision point (starting from A's center)
+                double[] collisionPoint = VectorOperations.add(heavier.position,
+                        VectorOperations.scale(AB, t));
+                heavier.collideWith(this, lighter, collisionPoint);
+
+                // Remove the lighter object
+                objects.remove(lighter);
+                systemMap.remove(lighter);
+                lighter.destroy(timeStepAccumulator);
+                newlyDestroyed.add(lighter);
+
+                // Continue with the rows below i on the updated list
+                store.load(objects);
+                happen = true;
+                nPairs = broadPhase.findPairs(store, i);
+                k = nPairs;
+            } else {
+                // not collide, check roche
+                boolean touched = false;
+                if (distance < lighter.possibleRocheLimit) {
+                    // heavier one is also inside lighter's roche limit
+                    // unlikely to happen, but put it here
+                    double actualRoche = computeRocheLimitSolid(lighter, heavier.getDensity());
+                    if (distance - heavier.getAverageRadius() < actualRoche) {
+                        if (!touched) {
+                            store.storeBody(i);
+                            store.storeBody(j);
+                            touched = true;
+                        }
 //                            lighter.gainMattersFrom(this, heavier, timeStep);
-                            if (enableDisassemble) {
-                                CelestialObject debris = heavier.disassemble(this, lighter, actualRoche);
-                                if (debris != null) {
-                                    debrisBuffer.add(debris);
-                                }
-                            } else {
-                                lighter.gainMattersFrom(this, heavier, timeStep);
+                        if (enableDisassemble) {
+                            CelestialObject debris = heavier.disassemble(this, lighter, actualRoche);
+                            if (debris != null) {
+                                debrisBuffer.add(debris);
                             }
+                        } else {
+                            lighter.gainMattersFrom(this, heavier, timeStep);
                         }
                     }
+                }
 
-                    if (distance < heavier.possibleRocheLimit) {
-                        // This is the most common scenario
-                        // if the above happen, this will also likely to happen
-                        double actualRoche = computeRocheLimitSolid(heavier, lighter.getDensity());
-                        if (distance - lighter.getAverageRadius() < actualRoche) {
+                if (distance < heavier.possibleRocheLimit) {
+                    // This is the most common scenario
+                    // if the above happen, this will also likely to happen
+                    double actualRoche = computeRocheLimitSolid(heavier, lighter.getDensity());
+                    if (distance - lighter.getAverageRadius() < actualRoche) {
+                        if (!touched) {
+                            store.storeBody(i);
+                            store.storeBody(j);
+                            touched = true;
+                        }
 //                            heavier.gainMattersFrom(this, lighter, timeStep);
-                            if (enableDisassemble) {
-                                CelestialObject debris = lighter.disassemble(this, heavier, actualRoche);
-                                if (debris != null) {
-                                    debrisBuffer.add(debris);
-                                }
-                            } else {
-                                heavier.gainMattersFrom(this, lighter, timeStep);
+                        if (enableDisassemble) {
+                            CelestialObject debris = lighter.disassemble(this, heavier, actualRoche);
+                            if (debris != null) {
+                                debrisBuffer.add(debris);
                             }
+                        } else {
+                            heavier.gainMattersFrom(this, lighter, timeStep);
                         }
                     }
                 }
+
+                if (touched) {
+                    store.loadBody(i);
+                    store.loadBody(j);
+                }
             }
         }
         return happen;
     }
 
+    /**
+     * Sets the cut-off force to {@code epsilon} times the force between two bodies of the typical mass
+     * at the typical distance, both being geometric means. The distance is sampled for large systems,
+     * see {@link TypicalForceEstimator}.
+     */
     public void updateForceThreshold() {
-        double logMassSum = 0.0;
-        double logDistanceSum = 0.0;
-        int count = 0;
-
-        for (int i = 0; i < objects.size(); i++) {
-            logMassSum += Math.log(objects.get(i).mass);
-
-            for (int j = i + 1; j < objects.size(); j++) {
-                double distance = VectorOperations.distance(objects.get(i).position, objects.get(j).position);
-                logDistanceSum += Math.log(distance);
-                count++;
-            }
+        if (epsilon == 0) {
+            cutOffForce = 0;
+            return;
         }
+        if (forceThresholdEstimator == null) forceThresholdEstimator = new TypicalForceEstimator();
+        forceThresholdEstimator.update(objects);
 
-        double typicalLogMass = logMassSum / objects.size();
-        double typicalLogDistance = logDistanceSum / count;
-
-        double typicalMass = Math.exp(typicalLogMass);
-        double typicalDistance = Math.exp(typicalLogDistance);
+        double typicalMass = forceThresholdEstimator.getTypicalMass();
+        double typicalDistance = forceThresholdEstimator.getTypicalDistance();
 
         // Calculate typical gravitational force using log-scaled values
         double fTypical = (G * typicalMass * typicalMass) / (typicalDistance * typicalDistance);
@@ -407,13 +748,7 @@ public class Simulator {
     @Deprecated
     public double[][] calculateAllForces2(List<CelestialObject> objects) {
         int n = objects.size();
-        if (forcesBuffer == null || forcesBuffer.length < n || forcesBuffer[0].length != dimension) {
-            forcesBuffer = new double[n][dimension];
-        } else {
-            for (double[] doubles : forcesBuffer) {
-                Arrays.fill(doubles, 0.0);
-            }
-        }
+        double[][] forcesBuffer = new double[n][dimension];
         if (dimDtBuffer == null || dimDtBuffer.length != dimension) {
             dimDtBuffer = new double[dimension];
         } else {
@@ -444,137 +779,438 @@ public class Simulator {
         return forcesBuffer;
     }
 
+    /**
+     * Loads the objects into the body store and computes the forces acting on each of them.
+     */
     public void calculateAllForces(List<CelestialObject> objects) {
-        int n = objects.size();
+        bodyStore.load(objects);
+        calculateAllForces();
+    }
+
+    /**
+     * Computes the forces of the bodies currently in the body store into {@link #forcesBuffer}.
+     */
+    private void calculateAllForces() {
+        int n = bodyStore.size;
         if (n == 0) return;
-        if (forcesBuffer == null || forcesBuffer.length < n || forcesBuffer[0].length != dimension) {
-            forcesBuffer = new double[n][dimension];
+        int length = n * dimension;
+        if (forcesBuffer == null || forcesBuffer.length < length) {
+            forcesBuffer = new double[length];
+        } else {
+            Arrays.fill(forcesBuffer, 0, length, 0.0);
+        }
+
+        if (forceMethod == ForceMethod.BARNES_HUT) {
+            if (barnesHutTree == null) barnesHutTree = new BarnesHutTree(dimension);
+            barnesHutTree.build(bodyStore);
+            calculateAllForcesBarnesHut(n);
         } else {
-            for (double[] doubles : forcesBuffer) {
-                Arrays.fill(doubles, 0.0);
+            calculateAllForcesDirect(n);
+        }
+//        System.out.println("Effective force: " + forceCounter1 + ", not: " + forceCounter2);
+    }
+
+    private int numberOfChunks(long nWorks, int n) {
+        int nChunks = (int) Math.max(1, Math.min(
+                forceCalculationPool.getParallelism() * 2L,
+                nWorks / ForceCalculationTask.PARALLELISM_THRESHOLD));
+        return Math.min(nChunks, n);
+    }
+
+    /**
+     * Runs the first {@code count} tasks and waits for all of them.
+     * The tasks are reused across calls, so that a step does not allocate.
+     */
+    private void runChunks(RecursiveAction[] tasks, int count) {
+        if (count == 1) {
+            tasks[0].reinitialize();
+            tasks[0].invoke();
+        } else {
+            for (int c = 0; c < count; c++) {
+                tasks[c].reinitialize();
+                forceCalculationPool.execute(tasks[c]);
+            }
+            for (int c = 0; c < count; c++) {
+                tasks[c].join();
+            }
+        }
+    }
+
+    /**
+     * Direct summation using Newton's third law, each pair is visited once.
+     * <p>
+     * Rows are split into chunks of roughly equal pair counts. Every chunk accumulates into its own
+     * force slab, so no two tasks ever write the same memory. The slabs are then summed per body in
+     * chunk order, which makes the result independent of thread scheduling.
+     */
+    private void calculateAllForcesDirect(int n) {
+        long nPairs = (long) n * (n - 1) / 2;
+        int nChunks = numberOfChunks(nPairs, n);
+
+        boolean vectorized = isVectorKernelActive();
+        if (vectorized) {
+            if (vectorKernel == null) vectorKernel = new VectorForceKernel();
+            vectorKernel.prepare(bodyStore);
+        }
+
+        int slabLength = n * dimension;
+        if (forceSlabs == null || forceSlabs.length < nChunks || forceSlabs[0].length < slabLength) {
+            forceSlabs = new double[nChunks][slabLength];
+        }
+        if (forceTasks == null || forceTasks.length < nChunks) {
+            forceTasks = new ForceCalculationTask[nChunks];
+            for (int c = 0; c < nChunks; c++) {
+                forceTasks[c] = new ForceCalculationTask(forceSlabs[c]);
             }
         }
 
+        long pairsPerChunk = nPairs / nChunks;
+        int rowStart = 0;
+        long pairsBefore = 0;
+        for (int c = 0; c < nChunks; c++) {
+            int rowEnd;
+            if (c == nChunks - 1) {
+                rowEnd = n;
+            } else {
+                rowEnd = rowStart;
+                long target = pairsPerChunk * (c + 1);
+                while (rowEnd < n && pairsBefore < target) {
+                    pairsBefore += n - 1 - rowEnd;
+                    rowEnd++;
+                }
+            }
+            ForceCalculationTask task = forceTasks[c];
+            task.slab = forceSlabs[c];
+            task.start = rowStart;
+            task.end = rowEnd;
+            task.reducing = false;
+            task.vectorized = vectorized;
+            rowStart = rowEnd;
+        }
+        runChunks(forceTasks, nChunks);
+
         forceCounter1 = 0;
         forceCounter2 = 0;
+        for (int c = 0; c < nChunks; c++) {
+            forceCounter1 += forceTasks[c].nEffective;
+            forceCounter2 += forceTasks[c].nCutOff;
+        }
+
+        // reduce the slabs, now split by bodies
+        for (int c = 0; c < nChunks; c++) {
+            ForceCalculationTask task = forceTasks[c];
+            task.start = (int) ((long) n * c / nChunks);
+            task.end = (int) ((long) n * (c + 1) / nChunks);
+            task.nChunks = nChunks;
+            task.reducing = true;
+        }
+        runChunks(forceTasks, nChunks);
+    }
+
+    private void calculateAllForcesBarnesHut(int n) {
+        // each body costs about log(n) node visits
+        long nWorks = (long) n * (64 - Long.numberOfLeadingZeros(n));
+        int nChunks = numberOfChunks(nWorks, n);
+        if (barnesHutTasks == null || barnesHutTasks.length < nChunks) {
+            barnesHutTasks = new BarnesHutTask[nChunks];
+            for (int c = 0; c < nChunks; c++) {
+                barnesHutTasks[c] = new BarnesHutTask();
+            }
+        }
+        for (int c = 0; c < nChunks; c++) {
+            barnesHutTasks[c].start = (int) ((long) n * c / nChunks);
+            barnesHutTasks[c].end = (int) ((long) n * (c + 1) / nChunks);
+        }
+        runChunks(barnesHutTasks, nChunks);
+    }
 
-        forceCalculationPool.invoke(new ForceCalculationTask(0, n));
-//        System.out.println("Effective force: " + forceCounter1 + ", not: " + forceCounter2);
+    private void reduceForceSlabs(int start, int end, int nChunks) {
+        for (int c = 0; c < nChunks; c++) {
+            double[] slab = forceSlabs[c];
+            for (int k = start * dimension; k < end * dimension; k++) {
+                forcesBuffer[k] += slab[k];
+            }
+        }
+    }
+
+    private static boolean probeVectorKernel() {
+        try {
+            return VectorForceKernel.isAvailable();
+        } catch (LinkageError e) {
+            // jdk.incubator.vector is not added to this runtime
+            return false;
+        }
+    }
+
+    /**
+     * @return whether the direct summation currently runs on the SIMD kernel,
+     * which only handles the 3d inverse-square law
+     */
+    public boolean isVectorKernelActive() {
+        return vectorKernelEnabled && VECTOR_KERNEL_SUPPORTED && dimension == 3 && gravityDtPower == 2;
+    }
+
+    public void setVectorKernelEnabled(boolean vectorKernelEnabled) {
+        this.vectorKernelEnabled = vectorKernelEnabled;
+    }
+
+    public boolean isVectorKernelEnabled() {
+        return vectorKernelEnabled;
     }
 
     public double calculateCutoffDistance(double m1, double m2) {
         return cutOffForce == 0 ? Double.MAX_VALUE : Math.sqrt(G * m1 * m2 / cutOffForce);
     }
 
-    private void forceBetween(int i, CelestialObject coi,
-                              int j, CelestialObject coj) {
-        double[] dimDtBuffer = new double[dimension];
-        double sqrDt = 0;
-        for (int d = 0; d < dimension; d++) {
-            dimDtBuffer[d] = coj.position[d] - coi.position[d];
-            sqrDt += dimDtBuffer[d] * dimDtBuffer[d];
-        }
-        double distance = Math.sqrt(sqrDt);
-        double cutOffDistance = calculateCutoffDistance(coi.mass, coj.mass);
+    /*
+     * The following kernels compute the interactions between body i and all bodies in (i, end).
+     * The reactions are subtracted from the slab, the sum acting on i is added once at the end.
+     * They return the number of effective, i.e. not cut off, pairs.
+     *
+     * A pair is cut off if its force is below cutOffForce, which is the same as
+     * distance >= calculateCutoffDistance(mi, mj) but without the square root.
+     */
 
-        if (distance < cutOffDistance) {
-            // only for potential performance improvement
-            double dtPow = gravityDtPower == 2 ? distance * distance : Math.pow(distance, gravityDtPower);
-            double forceMagnitude = G * coi.mass * coj.mass / dtPow;
-            forceCounter1++;
+    private int forceRow3d(int i, int end, double[] slab) {
+        double[] position = bodyStore.position;
+        double[] mass = bodyStore.mass;
+        int iBase = i * 3;
+        double xi = position[iBase];
+        double yi = position[iBase + 1];
+        double zi = position[iBase + 2];
+        double gmi = G * mass[i];
+        boolean inverseSquare = gravityDtPower == 2;
+        double cutOff = cutOffForce;
+
+        double fxi = 0, fyi = 0, fzi = 0;
+        int nEffective = 0;
+        for (int j = i + 1; j < end; j++) {
+            int jBase = j * 3;
+            double dx = position[jBase] - xi;
+            double dy = position[jBase + 1] - yi;
+            double dz = position[jBase + 2] - zi;
+            double sqrDt = dx * dx + dy * dy + dz * dz;
+            double gmm = gmi * mass[j];
+            if (cutOff != 0 && sqrDt * cutOff >= gmm) continue;
+
+            double distance = Math.sqrt(sqrDt);
+            double dtPow = inverseSquare ? sqrDt : Math.pow(distance, gravityDtPower);
+            double forceOverDt = gmm / (dtPow * distance);
+            double fx = forceOverDt * dx;
+            double fy = forceOverDt * dy;
+            double fz = forceOverDt * dz;
+            fxi += fx;
+            fyi += fy;
+            fzi += fz;
+            slab[jBase] -= fx;
+            slab[jBase + 1] -= fy;
+            slab[jBase + 2] -= fz;
+            nEffective++;
+        }
+        slab[iBase] += fxi;
+        slab[iBase + 1] += fyi;
+        slab[iBase + 2] += fzi;
+        return nEffective;
+    }
+
+    private int forceRow2d(int i, int end, double[] slab) {
+        double[] position = bodyStore.position;
+        double[] mass = bodyStore.mass;
+        int iBase = i * 2;
+        double xi = position[iBase];
+        double yi = position[iBase + 1];
+        double gmi = G * mass[i];
+        boolean inverseSquare = gravityDtPower == 2;
+        double cutOff = cutOffForce;
+
+        double fxi = 0, fyi = 0;
+        int nEffective = 0;
+        for (int j = i + 1; j < end; j++) {
+            int jBase = j * 2;
+            double dx = position[jBase] - xi;
+            double dy = position[jBase + 1] - yi;
+            double sqrDt = dx * dx + dy * dy;
+            double gmm = gmi * mass[j];
+            if (cutOff != 0 && sqrDt * cutOff >= gmm) continue;
+
+            double distance = Math.sqrt(sqrDt);
+            double dtPow = inverseSquare ? sqrDt : Math.pow(distance, gravityDtPower);
+            double forceOverDt = gmm / (dtPow * distance);
+            double fx = forceOverDt * dx;
+            double fy = forceOverDt * dy;
+            fxi += fx;
+            fyi += fy;
+            slab[jBase] -= fx;
+            slab[jBase + 1] -= fy;
+            nEffective++;
+        }
+        slab[iBase] += fxi;
+        slab[iBase + 1] += fyi;
+        return nEffective;
+    }
 
-            double[] fi = forcesBuffer[i];
-            double[] fj = forcesBuffer[j];
+    /**
+     * Any other dimension, {@code diff} is a per-task scratch vector.
+     */
+    private int forceRowNd(int i, int end, double[] slab, double[] diff) {
+        double[] position = bodyStore.position;
+        double[] mass = bodyStore.mass;
+        int iBase = i * dimension;
+        double gmi = G * mass[i];
+        double cutOff = cutOffForce;
+
+        int nEffective = 0;
+        for (int j = i + 1; j < end; j++) {
+            int jBase = j * dimension;
+            double sqrDt = 0;
             for (int d = 0; d < dimension; d++) {
-                double fAtD = forceMagnitude * dimDtBuffer[d] / distance;
-                fi[d] += fAtD;
-                fj[d] -= fAtD;
+                diff[d] = position[jBase + d] - position[iBase + d];
+                sqrDt += diff[d] * diff[d];
             }
-        } else {
-            forceCounter2++;
+            double gmm = gmi * mass[j];
+            if (cutOff != 0 && sqrDt * cutOff >= gmm) continue;
+
+            double distance = Math.sqrt(sqrDt);
+            double forceOverDt = gmm / (Math.pow(distance, gravityDtPower) * distance);
+            for (int d = 0; d < dimension; d++) {
+                double fAtD = forceOverDt * diff[d];
+                slab[iBase + d] += fAtD;
+                slab[jBase + d] -= fAtD;
+            }
+            nEffective++;
         }
+        return nEffective;
     }
 
+    /**
+     * A chunk of the direct summation. First computes the rows [start, end) into its own slab,
+     * then, with {@code reducing}, sums all slabs into the bodies [start, end) of the force buffer.
+     */
     class ForceCalculationTask extends RecursiveAction {
         static int PARALLELISM_THRESHOLD = 1000;
 
-        private final int start;
-        private final int end;
+        private int start;
+        private int end;
+        private double[] slab;
+        private final double[] diff = new double[dimension];
+        private boolean reducing;
+        private boolean vectorized;
+        private double[] vectorSlab;
+        private int nChunks;
+        private int nEffective, nCutOff;
 
-        ForceCalculationTask(int start, int end) {
-            this.start = start;
-            this.end = end;
-        }
-
-        private static int nCalls(int start, int end, int nObj) {
-            int totalPairs = (end - start) * (nObj - 1);
-            int sumEnd = (end * (end - 1)) / 2;
-            int sumStart = (start * (start - 1)) / 2;
-
-            return totalPairs - sumEnd + sumStart;
+        ForceCalculationTask(double[] slab) {
+            this.slab = slab;
         }
 
         @Override
         protected void compute() {
-            int nObj = objects.size();
-            int nComputations = nCalls(start, end, nObj);
-//            System.out.println(nComputations);
-            if (nComputations <= PARALLELISM_THRESHOLD || end - start < 2) {
-//            if (end - start <= 10) {
+            if (reducing) {
+                reduceForceSlabs(start, end, nChunks);
+                return;
+            }
+            int nObj = bodyStore.size;
+            if (vectorized) {
+                vectorSlab = vectorKernel.chunkSlab(vectorSlab);
+                nEffective = vectorKernel.forceRows(start, end, bodyStore.mass, G, cutOffForce, vectorSlab, slab);
+            } else {
+                Arrays.fill(slab, 0, nObj * dimension, 0.0);
+                nEffective = 0;
                 for (int i = start; i < end; i++) {
-                    for (int j = i + 1; j < nObj; j++) {
-                        forceBetween(i, objects.get(i), j, objects.get(j));
+                    if (dimension == 3) {
+                        nEffective += forceRow3d(i, nObj, slab);
+                    } else if (dimension == 2) {
+                        nEffective += forceRow2d(i, nObj, slab);
+                    } else {
+                        nEffective += forceRowNd(i, nObj, slab, diff);
                     }
                 }
-            } else {
-                int mid = (start + end) / 2;
-                ForceCalculationTask leftTask = new ForceCalculationTask(start, mid);
-                ForceCalculationTask rightTask = new ForceCalculationTask(mid, end);
-                invokeAll(leftTask, rightTask);
             }
+            long nPairs = (long) (end - start) * (nObj - 1) - ((long) end * (end - 1) - (long) start * (start - 1)) / 2;
+            nCutOff = (int) (nPairs - nEffective);
         }
     }
 
-    public void setHighPerformanceMode(boolean highPerformanceMode) {
-        if (highPerformanceMode) {
-            barycenterPath.clear();
-            recentPaths.clear();
-            rootSystems.clear();
+    /**
+     * Each body only writes its own row of the force buffer, so splitting by body is race-free.
+     */
+    class BarnesHutTask extends RecursiveAction {
+        private int start;
+        private int end;
+
+        @Override
+        protected void compute() {
+            for (int i = start; i < end; i++) {
+                barnesHutTree.accumulateForce(i, barnesHutTheta, Simulator.this, forcesBuffer);
+            }
         }
     }
 
-    private void addPath(CelestialObject object, double tsa) {
-        Deque<double[]> path = recentPaths.computeIfAbsent(object, o -> new ArrayDeque<>());
-        double[] p = new double[dimension + 1];
-        System.arraycopy(object.position, 0, p, 0, object.position.length);
-        p[p.length - 1] = tsa;
-        path.addFirst(p);
+    /**
+     * Enables measuring the heap allocation rate of the step loop, see {@link #getAllocatedBytesPerStep()}.
+     * Has no effect if the JVM does not support it.
+     */
+    public void setMeasureAllocation(boolean measureAllocation) {
+        this.measureAllocation = measureAllocation && AllocationCounter.isSupported();
+        if (!this.measureAllocation) allocatedBytesPerStep = -1;
     }
 
-    private void addBarycenterPath(double tsa) {
-        double[] p = new double[dimension + 1];
-        double[] bc = barycenter();
-        System.arraycopy(bc, 0, p, 0, bc.length);
-        p[p.length - 1] = tsa;
-        barycenterPath.addFirst(p);
+    public boolean isMeasureAllocation() {
+        return measureAllocation;
     }
 
-    private void gcPaths(double tsa) {
-        for (var path : recentPaths.values()) {
-            while (path.size() > PATH_LIMIT) {
-                path.removeLast();
-            }
-        }
-        recentPaths.entrySet().removeIf(entry -> entry.getValue().isEmpty());
+    /**
+     * @return bytes allocated by all threads per physical step during the last {@link #simulate} call,
+     * or -1 if not measured. Steps with collisions, debris or path recording allocate by nature.
+     */
+    public double getAllocatedBytesPerStep() {
+        return allocatedBytesPerStep;
+    }
 
-        while (barycenterPath.size() > PATH_LIMIT) {
-            barycenterPath.removeLast();
+    public void setHighPerformanceMode(boolean highPerformanceMode) {
+        if (highPerformanceMode) {
+            pathHistory.clear();
+            rootSystems.clear();
         }
     }
 
     public void addObject(CelestialObject celestialObject) {
         renameIfConflict(celestialObject);
+        castToDimension(celestialObject);
+
+        this.objects.add(celestialObject);
+        keepOrder();
+        updateBarycenter();
+        masterSearchTreeValid = false;
+    }
+
+    /**
+     * Adds all objects like {@link #addObject(CelestialObject)} one by one, but sorts only once
+     * and finds name conflicts in a set, for loading large saves.
+     */
+    public void addObjects(List<CelestialObject> newObjects) {
+        Set<String> names = new HashSet<>();
+        for (CelestialObject object : objects) {
+            names.add(object.getId());
+        }
+        for (CelestialObject celestialObject : newObjects) {
+            String origName = celestialObject.getId();
+            String name = origName;
+            int counter = 0;
+            while (!names.add(name)) {
+                counter += 1;
+                name = origName + "-" + counter;
+            }
+            if (!name.equals(origName)) celestialObject.id = name;
+            castToDimension(celestialObject);
+            this.objects.add(celestialObject);
+        }
+        keepOrder();
+        updateBarycenter();
+        masterSearchTreeValid = false;
+    }
 
+    private void castToDimension(CelestialObject celestialObject) {
         if (celestialObject.position.length < dimension) {
             int oldDim = celestialObject.position.length;
             System.out.printf("Casting object %s from %dD to %dD\n",
@@ -589,10 +1225,6 @@ public class Simulator {
             celestialObject.setVelocityOverride(newDVel);
             celestialObject.lastAcceleration = new double[dimension];
         }
-
-        this.objects.add(celestialObject);
-        keepOrder();
-        updateBarycenter();
     }
 
     private void keepOrder() {
@@ -624,16 +1256,10 @@ public class Simulator {
         for (CelestialObject object : objects) {
             VectorOperations.addInPlace(object.position, positionShift);
         }
-        for (Deque<double[]> path : recentPaths.values()) {
-            for (double[] position : path) {
-                VectorOperations.addInPlace(position, positionShift);
-            }
-        }
-        for (double[] position : barycenterPath) {
-            VectorOperations.addInPlace(position, positionShift);
-        }
+        pathHistory.shift(positionShift);
 
         updateBarycenter();
+        masterSearchTreeValid = false;
     }
 
     public void accelerateWholeSystem(double[] acceleration) {
@@ -660,6 +1286,7 @@ public class Simulator {
             co.setVelocity(newVel);
             co.forcedSetRotation(newAxis, co.angularVelocity);
         }
+        masterSearchTreeValid = false;
     }
 
     public double findMassOfPercentile(double percentile) {
@@ -676,16 +1303,55 @@ public class Simulator {
         return objects;
     }
 
-    public Map<CelestialObject, Deque<double[]>> getRecentPaths() {
-        return recentPaths;
+    public Map<CelestialObject, PathBuffer> getRecentPaths() {
+        return pathHistory.getPaths();
+    }
+
+    public PathBuffer getBarycenterPath() {
+        return pathHistory.getBarycenterPath();
     }
 
-    public Deque<double[]> getBarycenterPath() {
-        return barycenterPath;
+    public PathBuffer getPathOf(CelestialObject object) {
+        return pathHistory.getPath(object);
     }
 
-    public Deque<double[]> getPathOf(CelestialObject object) {
-        return recentPaths.get(object);
+    public PathHistory getPathHistory() {
+        return pathHistory;
+    }
+
+    /**
+     * Shows a recorded frame of {@link TrajectoryReplay} instead of simulating.
+     *
+     * @param continuous whether the frame follows the last shown one, so that the paths go on
+     */
+    void showRecordedFrame(List<CelestialObject> frameObjects, double time, boolean continuous) {
+        boolean sameObjects = objects.equals(frameObjects);
+        if (!sameObjects) {
+            objects.clear();
+            objects.addAll(frameObjects);
+        }
+        timeStepAccumulator = time;
+        updateBarycenter();
+        masterSearchTreeValid = false;
+
+        if (!continuous) pathHistory.clear();
+        pathHistory.record(objects, barycenter(), time);
+        pathHistory.trim();
+        if (!continuous || !sameObjects) {
+            // the masters change slowly, a jump or a collision is when they need to be found again
+            updateMasters();
+        }
+    }
+
+    /**
+     * Sets the recorder of the states after the steps, or null to stop recording. The caller closes it.
+     */
+    public void setTrajectoryRecorder(TrajectoryRecorder trajectoryRecorder) {
+        this.trajectoryRecorder = trajectoryRecorder;
+    }
+
+    public TrajectoryRecorder getTrajectoryRecorder() {
+        return trajectoryRecorder;
     }
 
     public double[] calculateGravitationalForce(double mass1, double[] pos1, double mass2, double[] pos2) {
@@ -755,74 +1421,36 @@ public class Simulator {
         return totalIE;
     }
 
+    /**
+     * Updates the gravity master, hill master and hill radius of every object, and the hieratical systems.
+     * <p>
+     * Gravity masters are only searched again for the objects that may have a new one, see {@link MasterTracker},
+     * and those searches use {@link #getMasterSearchTree()}. The hill spheres are found with another
+     * {@link MasterSearchTree}.
+     */
     public void updateMasters() {
-        TreeMap<CelestialObject, TreeMap<Double, CelestialObject>> gravityMap = new TreeMap<>();
-        double maxMass = 0.0;
-        CelestialObject mostMassive = null;
-
-        int nObjects = objects.size();
-        for (int i = 0; i < nObjects; i++) {
-            CelestialObject coi = objects.get(i);
-            coi.maxGravityObject = null;
-            if (coi.mass > maxMass) {
-                maxMass = coi.mass;
-                mostMassive = coi;
-            }
-
-            TreeMap<Double, CelestialObject> iMap = gravityMap.computeIfAbsent(coi, x -> new TreeMap<>());
-            for (int j = i + 1; j < nObjects; j++) {
-                CelestialObject coj = objects.get(j);
-                TreeMap<Double, CelestialObject> jMap = gravityMap.computeIfAbsent(coj, x -> new TreeMap<>());
-                double[] f = calculateGravitationalForce(coi.mass, coi.position, coj.mass, coj.position);
-                double fMag = VectorOperations.magnitude(f);
-                // assume there is not identical fMags
-                iMap.put(fMag, coj);
-                jMap.put(fMag, coi);
-            }
-        }
-
-        for (var entry : gravityMap.entrySet()) {
-            CelestialObject object = entry.getKey();
-            TreeMap<Double, CelestialObject> gravities = entry.getValue();
-            if (!gravities.isEmpty()) {
-                object.maxGravityObject = gravities.lastEntry().getValue();
-            }
-            while (!gravities.isEmpty()) {
-                var biggest = gravities.pollLastEntry();
-                if (biggest.getValue().mass > object.mass) {
-                    object.gravityMaster = biggest.getValue();
-                    break;
-                }
-            }
-//            System.out.println(object + " gm: " + object.gravityMaster);
-        }
+        // positions may have been edited directly since the tree was built
+        masterSearchTreeValid = false;
+        if (masterTracker == null) masterTracker = new MasterTracker(this);
+        masterTracker.update(objects);
 
         for (CelestialObject object : objects) {
             object.hillRadius = computeHillRadiusVsGravityMaster(object);  // temporary
-            if (mostMassive != null &&
-                    object.mass > mostMassive.mass) {
-                object.hillMaster = null;
-            } else {
-                object.hillMaster = object.getGravityMaster();
-            }
-//            System.out.println(object.name + " gm: " + object.gravityMaster + " hm: " + object.hillMaster);
+            object.hillMaster = object.getGravityMaster();
         }
 
+        // the deepest hill sphere of a heavier object, default hill is MAX_VALUE and contains nothing
+        hillCandidates.clear();
+        for (CelestialObject object : objects) {
+            if (object.hillRadius != Double.MAX_VALUE) hillCandidates.add(object);
+        }
+        if (hillTree == null) hillTree = new MasterSearchTree(dimension);
+        hillTree.build(hillCandidates);
+        hillCandidates.clear();
         for (CelestialObject object : objects) {
             if (object.hillMaster == null) continue;
-            double minHillPercent = Double.MAX_VALUE;
-            for (CelestialObject master : objects) {
-                if (object == master || object.mass >= master.mass) continue;
-                if (master.hillRadius == Double.MAX_VALUE) continue;  // default hill is MAX_VALUE
-
-                double distance = VectorOperations.distance(object.position, master.position);
-                double masterHill = master.hillRadius;
-                double hillPercent = distance / masterHill;
-                if (hillPercent <= 1.0 && hillPercent < minHillPercent) {
-                    minHillPercent = hillPercent;
-                    object.hillMaster = master;
-                }
-            }
+            CelestialObject master = hillTree.findHillMaster(object);
+            if (master != null) object.hillMaster = master;
         }
         
         // remove potential circular reference
@@ -891,8 +1519,7 @@ public class Simulator {
         double maxF = 0.0;
         HieraticalSystem best = null;
         for (HieraticalSystem hs : probableHillMasters) {
-            double[] f = calculateGravitationalForce(1, position, hs.getMass(), hs.getPosition());
-            double fMag = VectorOperations.magnitude(f);
+            double fMag = gravitationalPull(position, hs.getMass(), hs.getPosition());
             if (fMag > maxF) {
                 maxF = fMag;
                 best = hs;
@@ -931,20 +1558,51 @@ public class Simulator {
         return nd;
     }
 
+    /**
+     * @return the object heavier than {@code target} that pulls it the hardest, or null if there is none
+     */
     public CelestialObject computeGravityMaster(CelestialObject target) {
-        double maxF = 0.0;
-        CelestialObject dominant = null;
-        for (CelestialObject object : objects) {
-            if (target == object) continue;
-            double[] f = calculateGravitationalForce(target.mass, target.position,
-                    object.mass, object.position);
-            double fMag = VectorOperations.magnitude(f);
-            if (fMag > maxF && target.mass < object.mass) {
-                maxF = fMag;
-                dominant = object;
-            }
+        return findStrongestAttractor(target.position, target.mass, target);
+    }
+
+    /**
+     * Finds the object pulling hardest at a position, among the objects heavier than {@code minMass}.
+     * This takes about O(log n) on a {@link #getMasterSearchTree()} that is up to date.
+     *
+     * @param exclude an object to ignore, usually the one at the position, may be null
+     * @return the object, or null if there is none heavier than {@code minMass}
+     */
+    public CelestialObject findStrongestAttractor(double[] position, double minMass, CelestialObject exclude) {
+        return getMasterSearchTree().findStrongestAttractor(position, minMass, exclude, gravityDtPower);
+    }
+
+    /**
+     * Returns the tree of all objects used to search the strongest attractors.
+     * <p>
+     * It is built again on demand, after {@link #simulate(int)}, {@link #addObject(CelestialObject)}
+     * and the other changes made through the simulator. Positions edited directly on the objects are
+     * only seen after {@link #updateMasters()} or {@link #invalidateMasterSearchTree()}.
+     * As the building may happen here, this is to be called by the thread simulating, or while nothing is.
+     */
+    public MasterSearchTree getMasterSearchTree() {
+        if (masterSearchTree == null) masterSearchTree = new MasterSearchTree(dimension);
+        if (!masterSearchTreeValid) {
+            masterSearchTree.build(objects);
+            masterSearchTreeValid = true;
         }
-        return dominant;
+        return masterSearchTree;
+    }
+
+    public void invalidateMasterSearchTree() {
+        masterSearchTreeValid = false;
+    }
+
+    /**
+     * @return the magnitude of the gravitational force on a unit mass at {@code position}
+     */
+    private double gravitationalPull(double[] position, double mass, double[] otherPosition) {
+        double distance = VectorOperations.distance(position, otherPosition);
+        return G * mass / Math.pow(distance, gravityDtPower);
     }
 
     public CelestialObject computeHillMaster(CelestialObject target) {
@@ -1005,9 +1663,7 @@ public class Simulator {
     public SortedMap<Double, CelestialObject> getForcesOfAll(double[] position) {
         SortedMap<Double, CelestialObject> forces = new TreeMap<>();
         for (CelestialObject object : objects) {
-            double[] f = calculateGravitationalForce(1, position, object.mass, object.position);
-            double fMag = VectorOperations.magnitude(f);
-            forces.put(fMag, object);
+            forces.put(gravitationalPull(position, object.mass, object.position), object);
         }
         return forces;
     }
@@ -1600,24 +2256,11 @@ public class Simulator {
 
     protected void performTemperatureChange(double timeStep) {
         int iteration = (int) Math.min(32, timeStep);
+        if (iteration == 0) return;
         double each = timeStep / iteration;
 
-        for (int i = 0; i < iteration; i++) {
-            for (CelestialObject co : objects) {
-                double luminosity = co.getLuminosity();
-                if (luminosity > 0) {
-                    // is a light source
-                    double[] sourcePos = co.getPosition().clone();
-                    for (CelestialObject receiver : objects) {
-                        if (co != receiver) {
-                            receiver.receiveLight(sourcePos, luminosity, each);
-                        }
-                    }
-                } else {
-                    co.emitThermalPower(each);
-                }
-            }
-        }
+        if (radiativeTransfer == null) radiativeTransfer = new RadiativeTransfer(dimension);
+        radiativeTransfer.apply(objects, iteration, each);
     }
 
     protected void updateTidal(double timeStep) {
@@ -1830,6 +2473,40 @@ public class Simulator {
         return barycenter;
     }
 
+    public enum ForceMethod {
+        /**
+         * Exact pairwise summation, O(n^2). The reference.
+         */
+        DIRECT,
+        /**
+         * Barnes-Hut tree approximation, O(n log n), rebuilt on every half-step.
+         */
+        BARNES_HUT
+    }
+
+    public enum IntegratorType {
+        /**
+         * Kick-drift-kick leapfrog, second order and symplectic.
+         */
+        LEAPFROG,
+        /**
+         * Leapfrog with per-body power-of-two sub-steps, for systems with a few tight orbits.
+         */
+        BLOCK_LEAPFROG,
+        /**
+         * Yoshida's fourth order symplectic composition of leapfrogs, three evaluations per step.
+         */
+        YOSHIDA_4,
+        /**
+         * Fourth order Hermite predictor-corrector with analytic jerks, direct summation only.
+         */
+        HERMITE_4,
+        /**
+         * Adaptive 15th order Gauss-Radau with error control, for long and accurate runs.
+         */
+        IAS15
+    }
+
     public enum SimResult {
         NORMAL,
         NUM_CHANGED,
@@ -0,0 +1,380 @@
+package com.trashsoftware.gravity2.physics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Records the state of all bodies at a fixed simulated interval into files on disk, so that a long run
+ * can be analyzed or replayed without holding its history in memory. Set it with
+ * {@link Simulator#setTrajectoryRecorder(TrajectoryRecorder)}, it then records after every step that
+ * is at least {@code interval} seconds after the last recorded one.
+ * <p>
+ * The frames are collected into {@link Chunk}s of {@code framesPerChunk} frames. A full chunk is handed
+ * to a background thread, which writes it as a gzip compressed file {@code chunk_00000.trj}, ... in
+ * the directory. Each file appears complete or not at all. If the writer falls more than two chunks
+ * behind, the simulating thread writes the next chunk itself, so the memory used stays bounded.
+ * <p>
+ * Each chunk starts with a keyframe, a {@link BinarySnapshot} {@code chunk_00000.tgs} of the whole
+ * simulator at its first frame, which has everything of the bodies that the frames do not record. It is
+ * encoded in memory at the first frame and written along with its chunk. A body appearing in the middle
+ * of a chunk, from a collision or a break, has its fields encoded the same way into the chunk when it
+ * first appears, see {@link Chunk#readBirths()}. See {@link TrajectoryReplay}.
+ */
+public class TrajectoryRecorder implements Closeable {
+    public static final int VERSION = 2;
+    private static final int MAGIC = 0x54475452;  // TGTR
+    private static final int MAX_QUEUED_CHUNKS = 2;
+
+    private final Path directory;
+    private final double interval;
+    private final int framesPerChunk;
+    private final ThreadPoolExecutor writer;
+    private volatile IOException failure;
+
+    private double nextTime = Double.NEGATIVE_INFINITY;
+    private int nChunks;
+    private Chunk current;
+    private ByteBuffer[] currentKeyframe;
+    private boolean closed;
+
+    /**
+     * @param directory      where the chunk files are written, created if missing
+     * @param interval       simulated seconds between two frames, 0 to record every step
+     * @param framesPerChunk frames in each file
+     */
+    public TrajectoryRecorder(Path directory, double interval, int framesPerChunk) throws IOException {
+        if (interval < 0 || framesPerChunk <= 0) {
+            throw new IllegalArgumentException("Invalid interval or chunk size");
+        }
+        Files.createDirectories(directory);
+        this.directory = directory;
+        this.interval = interval;
+        this.framesPerChunk = framesPerChunk;
+        this.writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(MAX_QUEUED_CHUNKS),
+                r -> {
+                    Thread thread = new Thread(r, "trajectory-writer");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    public static Path chunkFile(Path directory, int chunkIndex) {
+        return directory.resolve(String.format(Locale.ROOT, "chunk_%05d.trj", chunkIndex));
+    }
+
+    boolean isDue(double time) {
+        return time >= nextTime;
+    }
+
+    public static Path keyframeFile(Path directory, int chunkIndex) {
+        return directory.resolve(String.format(Locale.ROOT, "chunk_%05d.tgs", chunkIndex));
+    }
+
+    /**
+     * Records the current state of the objects of {@code simulator} as a frame.
+     */
+    void record(Simulator simulator) {
+        if (closed) throw new IllegalStateException("Recorder is closed");
+        if (failure != null) throw new UncheckedIOException(failure);
+
+        if (current == null) {
+            currentKeyframe = simulator.encodeBinary();
+            current = new Chunk(simulator.getDimension(), framesPerChunk);
+        }
+        double time = simulator.getTimeStepAccumulator();
+        current.add(simulator.getObjects(), time);
+        nextTime = time + interval;
+        if (current.nFrames == framesPerChunk) submitCurrent();
+    }
+
+    private void submitCurrent() {
+        Chunk chunk = current;
+        ByteBuffer[] keyframe = currentKeyframe;
+        Path keyframeFile = keyframeFile(directory, nChunks);
+        Path file = chunkFile(directory, nChunks++);
+        current = null;
+        currentKeyframe = null;
+        writer.execute(() -> {
+            try {
+                // the keyframe first, a chunk file is only taken with its keyframe
+                BinarySnapshot.write(keyframeFile, keyframe);
+                chunk.write(file);
+            } catch (IOException e) {
+                failure = e;
+            }
+        });
+    }
+
+    /**
+     * @return the number of chunk files written or being written
+     */
+    public int getChunkCount() {
+        return nChunks;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Writes the partly filled chunk and waits for all chunks to be written.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        if (current != null && current.nFrames > 0) submitCurrent();
+        writer.shutdown();
+        try {
+            while (!writer.awaitTermination(1, TimeUnit.MINUTES)) ;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing trajectories", e);
+        }
+        if (failure != null) throw failure;
+    }
+
+    /**
+     * A run of frames, stored by column.
+     * <p>
+     * The rows of all frames are appended one after another, a row is one body in one frame. Bodies are
+     * numbered in the order they first appear in the chunk, {@link #getBodyId(int)} gives their ids.
+     * The bodies that first appear after the first frame are not in the keyframe, so they are
+     * also kept as {@link BinarySnapshot#encodeObjects(List, int)} of the frame they appear in.
+     */
+    public static class Chunk {
+        private final int dimension;
+        private int nFrames;
+        private double[] times;
+        private int[] firstRows;  // [frame], with the end of the last frame at [nFrames]
+        private int nRows;
+        private int[] bodies;
+        private double[] positions;  // [row * dimension + d]
+        private double[] velocities;
+        private double[] masses;
+        private double[] temperatures;
+
+        private final List<String> bodyIds = new ArrayList<>();
+        private final Map<CelestialObject, Integer> bodyIndices = new IdentityHashMap<>();
+        private final List<byte[]> births = new ArrayList<>();
+
+        private Chunk(int dimension, int frameCapacity) {
+            this.dimension = dimension;
+            this.times = new double[frameCapacity];
+            this.firstRows = new int[frameCapacity + 1];
+            allocateRows(64);
+        }
+
+        private void allocateRows(int capacity) {
+            bodies = bodies == null ? new int[capacity] : Arrays.copyOf(bodies, capacity);
+            positions = positions == null ? new double[capacity * dimension] : Arrays.copyOf(positions, capacity * dimension);
+            velocities = velocities == null ? new double[capacity * dimension] : Arrays.copyOf(velocities, capacity * dimension);
+            masses = masses == null ? new double[capacity] : Arrays.copyOf(masses, capacity);
+            temperatures = temperatures == null ? new double[capacity] : Arrays.copyOf(temperatures, capacity);
+        }
+
+        private void add(List<CelestialObject> objects, double time) {
+            int n = objects.size();
+            if (nRows + n > bodies.length) allocateRows(Math.max(nRows + n, bodies.length * 2));
+            times[nFrames] = time;
+            List<CelestialObject> born = null;
+            for (CelestialObject co : objects) {
+                int row = nRows++;
+                Integer body = bodyIndices.get(co);
+                if (body == null) {
+                    body = bodyIds.size();
+                    bodyIds.add(co.getId());
+                    bodyIndices.put(co, body);
+                    if (nFrames > 0) {
+                        if (born == null) born = new ArrayList<>();
+                        born.add(co);
+                    }
+                }
+                bodies[row] = body;
+                System.arraycopy(co.position, 0, positions, row * dimension, dimension);
+                System.arraycopy(co.velocity, 0, velocities, row * dimension, dimension);
+                masses[row] = co.mass;
+                temperatures[row] = co.getSurfaceTemperature();
+            }
+            if (born != null) births.add(BinarySnapshot.encodeObjects(born, dimension));
+            nFrames++;
+            firstRows[nFrames] = nRows;
+        }
+
+        private void write(Path file) throws IOException {
+            Path part = file.resolveSibling(file.getFileName() + ".part");
+            GZIPOutputStream gzip = new GZIPOutputStream(Files.newOutputStream(part), 1 << 16) {
+                {
+                    // doubles hardly compress better at higher levels, but it would take several times longer
+                    def.setLevel(Deflater.BEST_SPEED);
+                }
+            };
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(gzip, 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(dimension);
+                out.writeInt(nFrames);
+                out.writeInt(nRows);
+                out.writeInt(bodyIds.size());
+                for (String id : bodyIds) out.writeUTF(id);
+
+                for (int f = 0; f < nFrames; f++) out.writeDouble(times[f]);
+                for (int f = 0; f < nFrames; f++) out.writeInt(firstRows[f + 1] - firstRows[f]);
+                for (int r = 0; r < nRows; r++) out.writeInt(bodies[r]);
+                // one column per coordinate, similar values next to each other compress better
+                for (int d = 0; d < dimension; d++) {
+                    for (int r = 0; r < nRows; r++) out.writeDouble(positions[r * dimension + d]);
+                }
+                for (int d = 0; d < dimension; d++) {
+                    for (int r = 0; r < nRows; r++) out.writeDouble(velocities[r * dimension + d]);
+                }
+                for (int r = 0; r < nRows; r++) out.writeDouble(masses[r]);
+                for (int r = 0; r < nRows; r++) out.writeDouble(temperatures[r]);
+
+                out.writeInt(births.size());
+                for (byte[] birth : births) {
+                    out.writeInt(birth.length);
+                    out.write(birth);
+                }
+            }
+            try {
+                Files.move(part, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(part, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        public static Chunk read(Path file) throws IOException {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new GZIPInputStream(Files.newInputStream(file)), 1 << 16))) {
+                if (in.readInt() != MAGIC) throw new IOException(file + " is not a trajectory chunk");
+                int version = in.readInt();
+                if (version > VERSION) {
+                    throw new IOException(file + " has trajectory version " + version + ", newer than " + VERSION);
+                }
+                int dimension = in.readInt();
+                int nFrames = in.readInt();
+                int nRows = in.readInt();
+                int nBodies = in.readInt();
+
+                Chunk chunk = new Chunk(dimension, nFrames);
+                chunk.allocateRows(nRows);
+                chunk.nFrames = nFrames;
+                chunk.nRows = nRows;
+                for (int b = 0; b < nBodies; b++) chunk.bodyIds.add(in.readUTF());
+
+                for (int f = 0; f < nFrames; f++) chunk.times[f] = in.readDouble();
+                for (int f = 0; f < nFrames; f++) chunk.firstRows[f + 1] = chunk.firstRows[f] + in.readInt();
+                for (int r = 0; r < nRows; r++) chunk.bodies[r] = in.readInt();
+                for (int d = 0; d < dimension; d++) {
+                    for (int r = 0; r < nRows; r++) chunk.positions[r * dimension + d] = in.readDouble();
+                }
+                for (int d = 0; d < dimension; d++) {
+                    for (int r = 0; r < nRows; r++) chunk.velocities[r * dimension + d] = in.readDouble();
+                }
+                for (int r = 0; r < nRows; r++) chunk.masses[r] = in.readDouble();
+                for (int r = 0; r < nRows; r++) chunk.temperatures[r] = in.readDouble();
+
+                if (version >= 2) {
+                    int nBirths = in.readInt();
+                    for (int i = 0; i < nBirths; i++) {
+                        byte[] birth = new byte[in.readInt()];
+                        in.readFully(birth);
+                        chunk.births.add(birth);
+                    }
+                }
+                return chunk;
+            }
+        }
+
+        public int getDimension() {
+            return dimension;
+        }
+
+        public int getFrameCount() {
+            return nFrames;
+        }
+
+        public double getTime(int frame) {
+            return times[frame];
+        }
+
+        /**
+         * @return the first row of {@code frame}, its rows end at the first row of the next frame
+         */
+        public int getFirstRow(int frame) {
+            return firstRows[frame];
+        }
+
+        public int getRowCount() {
+            return nRows;
+        }
+
+        /**
+         * @return the body of {@code row}, numbered within this chunk
+         */
+        public int getBody(int row) {
+            return bodies[row];
+        }
+
+        public String getBodyId(int body) {
+            return bodyIds.get(body);
+        }
+
+        public int getBodyCount() {
+            return bodyIds.size();
+        }
+
+        /**
+         * @return the bodies that first appear after the first frame, as they were when they appeared
+         */
+        List<CelestialObject> readBirths() throws IOException {
+            List<CelestialObject> bornObjects = new ArrayList<>();
+            for (byte[] birth : births) bornObjects.addAll(BinarySnapshot.decodeObjects(birth));
+            return bornObjects;
+        }
+
+        public double getPosition(int row, int d) {
+            return positions[row * dimension + d];
+        }
+
+        public double getVelocity(int row, int d) {
+            return velocities[row * dimension + d];
+        }
+
+        public double getMass(int row) {
+            return masses[row];
+        }
+
+        /**
+         * @return the surface temperature in kelvin
+         */
+        public double getTemperature(int row) {
+            return temperatures[row];
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.trashsoftware.gravity2.physics;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plays back a run recorded by {@link TrajectoryRecorder}, without simulating anything.
+ * <p>
+ * The start times of the chunks, read from their keyframes when opening, form the index of the
+ * recording. {@link #seek(double)} finds the chunk of a time by bisection over this index and the frame
+ * by bisection over the times of the chunk, so a seek costs O(log n) plus reading one chunk when it is
+ * not the loaded one. The frames are shown by a {@link Simulator} of their own, whose objects are
+ * moved to the recorded states. A body keeps the same {@link CelestialObject} over the whole replay, made
+ * from the keyframe of the chunk it first appears in, or from the chunk itself if it appears after the
+ * first frame.
+ */
+public class TrajectoryReplay {
+    private final Path directory;
+    private final double[] chunkStartTimes;
+    private final double endTime;
+    private final Simulator simulator;
+    private final Map<String, CelestialObject> bodies = new HashMap<>();
+    private final List<CelestialObject> frameObjects = new ArrayList<>();
+
+    private int chunkIndex = -1;
+    private TrajectoryRecorder.Chunk chunk;
+    private CelestialObject[] chunkBodies;
+    private int frame = -1;
+
+    private TrajectoryReplay(Path directory, double[] chunkStartTimes) throws IOException {
+        this.directory = directory;
+        this.chunkStartTimes = chunkStartTimes;
+        this.simulator = Simulator.loadBinary(TrajectoryRecorder.keyframeFile(directory, 0));
+
+        loadChunk(chunkStartTimes.length - 1);
+        endTime = chunk.getTime(chunk.getFrameCount() - 1);
+        seek(chunkStartTimes[0]);
+    }
+
+    /**
+     * Opens the recording in {@code directory}, showing its first frame.
+     */
+    public static TrajectoryReplay open(Path directory) throws IOException {
+        List<Double> startTimes = new ArrayList<>();
+        for (int c = 0; ; c++) {
+            Path keyframe = TrajectoryRecorder.keyframeFile(directory, c);
+            if (!Files.exists(keyframe) || !Files.exists(TrajectoryRecorder.chunkFile(directory, c))) break;
+            startTimes.add(Simulator.readBinaryTime(keyframe));
+        }
+        if (startTimes.isEmpty()) throw new IOException("No recording in " + directory);
+        return new TrajectoryReplay(directory,
+                startTimes.stream().mapToDouble(Double::doubleValue).toArray());
+    }
+
+    /**
+     * Shows the last frame at or before {@code time}, or the first frame if {@code time} is before it.
+     * The paths start over from this frame.
+     *
+     * @return whether the set of shown objects has changed
+     */
+    public boolean seek(double time) throws IOException {
+        return seek(time, false);
+    }
+
+    /**
+     * Like {@link #seek(double)}, but if {@code continuing} the paths go on when the frame is after the
+     * shown one, even with frames skipped in between, as when playing at more than a frame per call.
+     *
+     * @return whether the set of shown objects has changed
+     */
+    public boolean seek(double time, boolean continuing) throws IOException {
+        int c = Arrays.binarySearch(chunkStartTimes, time);
+        if (c < 0) c = Math.max(0, -c - 2);  // the last chunk starting before time
+
+        int lastChunk = chunkIndex;
+        int lastFrame = frame;
+        if (c != chunkIndex) loadChunk(c);
+
+        int low = 0, high = chunk.getFrameCount() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (chunk.getTime(mid) <= time) low = mid;
+            else high = mid - 1;
+        }
+        if (c == lastChunk && low == lastFrame) return false;
+        frame = low;
+
+        boolean continuous = continuing && (c == lastChunk ? frame > lastFrame : c > lastChunk);
+        List<CelestialObject> lastObjects = new ArrayList<>(frameObjects);
+        showFrame(continuous);
+        return !lastObjects.equals(frameObjects);
+    }
+
+    private void loadChunk(int c) throws IOException {
+        TrajectoryRecorder.Chunk newChunk = TrajectoryRecorder.Chunk.read(TrajectoryRecorder.chunkFile(directory, c));
+        Simulator keyframe = Simulator.loadBinary(TrajectoryRecorder.keyframeFile(directory, c));
+        Map<String, CelestialObject> recordedBodies = new HashMap<>();
+        for (CelestialObject co : keyframe.getObjects()) {
+            recordedBodies.put(co.getId(), co);
+        }
+        for (CelestialObject co : newChunk.readBirths()) {
+            recordedBodies.put(co.getId(), co);
+        }
+
+        CelestialObject[] newBodies = new CelestialObject[newChunk.getBodyCount()];
+        for (int b = 0; b < newBodies.length; b++) {
+            String id = newChunk.getBodyId(b);
+            CelestialObject recorded = recordedBodies.get(id);
+            if (recorded == null) throw new IOException(id + " is not recorded in chunk " + c);
+            CelestialObject co = bodies.get(id);
+            if (co == null) {
+                bodies.put(id, recorded);
+                co = recorded;
+            } else {
+                // the same body, but it may have grown or shrunk in between
+                co.bodyType = recorded.bodyType;
+                co.equatorialRadius = recorded.equatorialRadius;
+                co.polarRadius = recorded.polarRadius;
+            }
+            newBodies[b] = co;
+        }
+        chunk = newChunk;
+        chunkBodies = newBodies;
+        chunkIndex = c;
+        frame = -1;
+    }
+
+    private void showFrame(boolean continuous) {
+        int dimension = chunk.getDimension();
+        int end = frame + 1 < chunk.getFrameCount() ? chunk.getFirstRow(frame + 1) : chunk.getRowCount();
+        frameObjects.clear();
+        for (int row = chunk.getFirstRow(frame); row < end; row++) {
+            CelestialObject co = chunkBodies[chunk.getBody(row)];
+            for (int d = 0; d < dimension; d++) {
+                co.position[d] = chunk.getPosition(row, d);
+                co.velocity[d] = chunk.getVelocity(row, d);
+            }
+            co.mass = chunk.getMass(row);
+            co.forceSetSurfaceTemperature(chunk.getTemperature(row));
+            frameObjects.add(co);
+        }
+        simulator.showRecordedFrame(frameObjects, chunk.getTime(frame), continuous);
+    }
+
+    /**
+     * @return the simulator showing the frames, it should not be simulated
+     */
+    public Simulator getSimulator() {
+        return simulator;
+    }
+
+    public double getStartTime() {
+        return chunkStartTimes[0];
+    }
+
+    public double getEndTime() {
+        return endTime;
+    }
+
+    /**
+     * @return the time of the shown frame
+     */
+    public double getTime() {
+        return chunk.getTime(frame);
+    }
+}
@@ -0,0 +1,163 @@
+package com.trashsoftware.gravity2.physics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Estimates the typical mass and the typical distance of a set of bodies, as the geometric means over
+ * the bodies and over all pairs, for {@link Simulator#updateForceThreshold()}.
+ * <p>
+ * The mean over all pairs is taken from a reservoir of at most {@link #SAMPLE_SIZE} pairs, so an update
+ * costs O(n + SAMPLE_SIZE) instead of O(n^2). The sample follows the set of bodies: the pairs of an added
+ * body go through reservoir sampling, a pair losing one of its bodies is replaced by a uniformly drawn one.
+ * Small sets, with no more pairs than the sample size, are measured exactly.
+ */
+class TypicalForceEstimator {
+    static final int SAMPLE_SIZE = 1024;
+    // more added bodies than this fraction and the reservoir is drawn again from scratch
+    private static final double RESAMPLE_FRACTION = 0.25;
+
+    private static final int PENDING = -1;
+
+    private final Random random = new Random(0);
+    // body -> stamp of the last update that saw it, PENDING while its pairs are being offered
+    private final Map<CelestialObject, Integer> known = new IdentityHashMap<>();
+    private final List<CelestialObject> added = new ArrayList<>();
+    private int stamp;
+
+    private final CelestialObject[] sampleA = new CelestialObject[SAMPLE_SIZE];
+    private final CelestialObject[] sampleB = new CelestialObject[SAMPLE_SIZE];
+    private int sampleCount;
+    private long pairsSeen;
+
+    private double typicalMass;
+    private double typicalDistance;
+
+    /**
+     * Updates the estimates to the current masses and positions of {@code objects}.
+     */
+    void update(List<CelestialObject> objects) {
+        int n = objects.size();
+        double logMassSum = 0.0;
+        for (CelestialObject object : objects) {
+            logMassSum += Math.log(object.mass);
+        }
+        typicalMass = Math.exp(logMassSum / n);
+
+        long nPairs = (long) n * (n - 1) / 2;
+        if (nPairs <= SAMPLE_SIZE) {
+            if (sampleCount > 0) {
+                known.clear();
+                Arrays.fill(sampleA, null);
+                Arrays.fill(sampleB, null);
+                sampleCount = 0;
+            }
+            typicalDistance = Math.exp(exactLogDistanceMean(objects));
+            return;
+        }
+
+        followObjects(objects);
+
+        double logDistanceSum = 0.0;
+        for (int s = 0; s < sampleCount; s++) {
+            logDistanceSum += Math.log(VectorOperations.distance(sampleA[s].position, sampleB[s].position));
+        }
+        typicalDistance = Math.exp(logDistanceSum / sampleCount);
+    }
+
+    private static double exactLogDistanceMean(List<CelestialObject> objects) {
+        double logDistanceSum = 0.0;
+        int count = 0;
+        for (int i = 0; i < objects.size(); i++) {
+            for (int j = i + 1; j < objects.size(); j++) {
+                double distance = VectorOperations.distance(objects.get(i).position, objects.get(j).position);
+                logDistanceSum += Math.log(distance);
+                count++;
+            }
+        }
+        return logDistanceSum / count;
+    }
+
+    private void followObjects(List<CelestialObject> objects) {
+        int n = objects.size();
+        stamp++;
+        added.clear();
+        for (CelestialObject object : objects) {
+            if (known.put(object, stamp) == null) {
+                known.put(object, PENDING);
+                added.add(object);
+            }
+        }
+        boolean removed = known.size() > n;
+        if (removed) known.values().removeIf(s -> s != stamp && s != PENDING);
+
+        if (sampleCount == 0 || added.size() > n * RESAMPLE_FRACTION) {
+            for (CelestialObject object : added) {
+                known.put(object, stamp);
+            }
+            added.clear();
+            for (sampleCount = 0; sampleCount < SAMPLE_SIZE; sampleCount++) {
+                drawUniformPair(objects, sampleCount);
+            }
+            pairsSeen = (long) n * (n - 1) / 2;
+            return;
+        }
+        if (removed) {
+            for (int s = 0; s < sampleCount; s++) {
+                if (!known.containsKey(sampleA[s]) || !known.containsKey(sampleB[s])) {
+                    drawUniformPair(objects, s);
+                }
+            }
+            long nOld = n - added.size();
+            pairsSeen = nOld * (nOld - 1) / 2;
+        }
+        // every pair of an added body is offered once, against the old bodies and the bodies added before it
+        for (CelestialObject object : added) {
+            for (CelestialObject other : objects) {
+                if (other == object || known.get(other) == PENDING) continue;
+                offer(object, other);
+            }
+            known.put(object, stamp);
+        }
+        added.clear();
+    }
+
+    /**
+     * Reservoir sampling, the pair replaces a random slot with probability {@code SAMPLE_SIZE / pairsSeen}.
+     */
+    private void offer(CelestialObject a, CelestialObject b) {
+        pairsSeen++;
+        if (sampleCount < SAMPLE_SIZE) {
+            sampleA[sampleCount] = a;
+            sampleB[sampleCount] = b;
+            sampleCount++;
+            return;
+        }
+        long slot = random.nextLong(pairsSeen);
+        if (slot < SAMPLE_SIZE) {
+            sampleA[(int) slot] = a;
+            sampleB[(int) slot] = b;
+        }
+    }
+
+    private void drawUniformPair(List<CelestialObject> objects, int slot) {
+        int n = objects.size();
+        int i = random.nextInt(n);
+        int j = random.nextInt(n - 1);
+        if (j >= i) j++;
+        sampleA[slot] = objects.get(i);
+        sampleB[slot] = objects.get(j);
+    }
+
+    double getTypicalMass() {
+        return typicalMass;
+    }
+
+    double getTypicalDistance() {
+        return typicalDistance;
+    }
+}
@@ -0,0 +1,163 @@
+package com.trashsoftware.gravity2.physics;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.Arrays;
+
+/**
+ * SIMD version of the 3d inverse-square direct summation, using the incubating Vector API.
+ * <p>
+ * A row {@code i} is evaluated against {@link #laneCount()} bodies {@code j > i} at a time.
+ * Positions are copied into separate x, y, z arrays once per force evaluation, so that the lanes
+ * can be loaded contiguously, and every chunk accumulates its reactions into a slab of the same
+ * layout before it is interleaved back into the simulator's force slab.
+ * <p>
+ * Without {@code --add-modules jdk.incubator.vector} at runtime, loading this class fails with a
+ * {@link LinkageError}. The simulator probes it once and stays on the scalar kernel in that case.
+ */
+final class VectorForceKernel {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    private int n;
+    private double[] xs = new double[0];
+    private double[] ys = new double[0];
+    private double[] zs = new double[0];
+
+    /**
+     * @return whether the Vector API is present and has more than one double lane on this machine
+     */
+    static boolean isAvailable() {
+        return SPECIES.length() > 1;
+    }
+
+    static int laneCount() {
+        return SPECIES.length();
+    }
+
+    /**
+     * Copies the positions of the store into the separate coordinate arrays.
+     */
+    void prepare(BodyStore store) {
+        n = store.size;
+        if (xs.length < n) {
+            xs = new double[n];
+            ys = new double[n];
+            zs = new double[n];
+        }
+        double[] position = store.position;
+        for (int i = 0; i < n; i++) {
+            xs[i] = position[i * 3];
+            ys[i] = position[i * 3 + 1];
+            zs[i] = position[i * 3 + 2];
+        }
+    }
+
+    /**
+     * @return a chunk slab that fits the current body count, reusing {@code slab} if it is large enough
+     */
+    double[] chunkSlab(double[] slab) {
+        return slab != null && slab.length >= n * 3 ? slab : new double[n * 3];
+    }
+
+    /**
+     * Computes the rows [start, end) and writes the sums of this chunk into {@code out},
+     * interleaved as {@code [body * 3 + d]}.
+     *
+     * @param chunkSlab scratch of this chunk, from {@link #chunkSlab(double[])}
+     * @return the number of effective pairs
+     */
+    int forceRows(int start, int end, double[] mass, double G, double cutOffForce,
+                  double[] chunkSlab, double[] out) {
+        int n = this.n;
+        Arrays.fill(chunkSlab, 0, n * 3, 0.0);
+        int nEffective = 0;
+        for (int i = start; i < end; i++) {
+            nEffective += forceRow(i, mass, G, cutOffForce, chunkSlab);
+        }
+        for (int j = 0; j < n; j++) {
+            out[j * 3] = chunkSlab[j];
+            out[j * 3 + 1] = chunkSlab[n + j];
+            out[j * 3 + 2] = chunkSlab[2 * n + j];
+        }
+        return nEffective;
+    }
+
+    private int forceRow(int i, double[] mass, double G, double cutOffForce, double[] slab) {
+        int n = this.n;
+        int yOff = n;
+        int zOff = 2 * n;
+        double xi = xs[i];
+        double yi = ys[i];
+        double zi = zs[i];
+        double gmi = G * mass[i];
+
+        DoubleVector vxi = DoubleVector.broadcast(SPECIES, xi);
+        DoubleVector vyi = DoubleVector.broadcast(SPECIES, yi);
+        DoubleVector vzi = DoubleVector.broadcast(SPECIES, zi);
+        DoubleVector accX = DoubleVector.zero(SPECIES);
+        DoubleVector accY = DoubleVector.zero(SPECIES);
+        DoubleVector accZ = DoubleVector.zero(SPECIES);
+
+        int nEffective = 0;
+        int j = i + 1;
+        int upper = j + SPECIES.loopBound(n - j);
+        for (; j < upper; j += SPECIES.length()) {
+            DoubleVector dx = DoubleVector.fromArray(SPECIES, xs, j).sub(vxi);
+            DoubleVector dy = DoubleVector.fromArray(SPECIES, ys, j).sub(vyi);
+            DoubleVector dz = DoubleVector.fromArray(SPECIES, zs, j).sub(vzi);
+            DoubleVector sqrDt = dx.mul(dx).add(dy.mul(dy)).add(dz.mul(dz));
+            DoubleVector gmm = DoubleVector.fromArray(SPECIES, mass, j).mul(gmi);
+
+            DoubleVector forceOverDt = gmm.div(sqrDt.mul(sqrDt.sqrt()));
+            if (cutOffForce != 0) {
+                VectorMask<Double> effective = sqrDt.mul(cutOffForce).compare(VectorOperators.LT, gmm);
+                forceOverDt = DoubleVector.zero(SPECIES).blend(forceOverDt, effective);
+                nEffective += effective.trueCount();
+            } else {
+                nEffective += SPECIES.length();
+            }
+
+            DoubleVector fx = forceOverDt.mul(dx);
+            DoubleVector fy = forceOverDt.mul(dy);
+            DoubleVector fz = forceOverDt.mul(dz);
+            accX = accX.add(fx);
+            accY = accY.add(fy);
+            accZ = accZ.add(fz);
+            DoubleVector.fromArray(SPECIES, slab, j).sub(fx).intoArray(slab, j);
+            DoubleVector.fromArray(SPECIES, slab, yOff + j).sub(fy).intoArray(slab, yOff + j);
+            DoubleVector.fromArray(SPECIES, slab, zOff + j).sub(fz).intoArray(slab, zOff + j);
+        }
+        double fxi = accX.reduceLanes(VectorOperators.ADD);
+        double fyi = accY.reduceLanes(VectorOperators.ADD);
+        double fzi = accZ.reduceLanes(VectorOperators.ADD);
+
+        // tail, same as Simulator's scalar kernel
+        for (; j < n; j++) {
+            double dx = xs[j] - xi;
+            double dy = ys[j] - yi;
+            double dz = zs[j] - zi;
+            double sqrDt = dx * dx + dy * dy + dz * dz;
+            double gmm = gmi * mass[j];
+            if (cutOffForce != 0 && sqrDt * cutOffForce >= gmm) continue;
+
+            double forceOverDt = gmm / (sqrDt * Math.sqrt(sqrDt));
+            double fx = forceOverDt * dx;
+            double fy = forceOverDt * dy;
+            double fz = forceOverDt * dz;
+            fxi += fx;
+            fyi += fy;
+            fzi += fz;
+            slab[j] -= fx;
+            slab[yOff + j] -= fy;
+            slab[zOff + j] -= fz;
+            nEffective++;
+        }
+        slab[i] += fxi;
+        slab[yOff + i] += fyi;
+        slab[zOff + i] += fzi;
+        return nEffective;
+    }
+}
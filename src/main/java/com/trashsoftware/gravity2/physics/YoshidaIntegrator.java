@@ -0,0 +1,30 @@
+package com.trashsoftware.gravity2.physics;
+
+/**
+ * Yoshida's fourth order symplectic integrator, a composition of three leapfrog steps of
+ * weights {@code w1, w0, w1}. Three force evaluations per step.
+ * <p>
+ * H. Yoshida, Construction of higher order symplectic integrators, Phys. Lett. A 150 (1990).
+ */
+class YoshidaIntegrator extends Integrator {
+    private static final double CBRT_2 = Math.cbrt(2);
+    private static final double W1 = 1 / (2 - CBRT_2);
+    private static final double W0 = -CBRT_2 * W1;
+
+    private static final double[] DRIFTS = {W1 / 2, (W0 + W1) / 2, (W0 + W1) / 2, W1 / 2};
+    private static final double[] KICKS = {W1, W0, W1};
+
+    YoshidaIntegrator(Simulator simulator, BodyStore store) {
+        super(simulator, store);
+    }
+
+    @Override
+    void step(double timeStep) {
+        for (int s = 0; s < KICKS.length; s++) {
+            drift(DRIFTS[s] * timeStep);
+            simulator.evaluateAccelerations(store.acceleration, 1.0);
+            kick(store.acceleration, KICKS[s] * timeStep);
+        }
+        drift(DRIFTS[KICKS.length] * timeStep);
+    }
+}
@@ -1033,6 +1033,22 @@ public abstract class Preset {
         }
     };
 
+    /**
+     * A star system like {@link #INFANT_STAR_SYSTEM} with any number of planets. The disk grows with
+     * the square root of the number, so the density of planets stays the same as in the original.
+     *
+     * @param nPlanets number of bodies around the star
+     */
+    public static Preset scaledStarSystem(int nPlanets) {
+        return new Preset("StarSystem" + nPlanets, nPlanets + 1) {
+            @Override
+            public double instantiate(Simulator simulator) {
+                double sizeScale = 5 * Math.sqrt(Math.max(nPlanets, 1) / 100.0);
+                return randomStarSystem(simulator, nPlanets, sizeScale, 2e30, 1e28, 30, 0.05);
+            }
+        };
+    }
+
     public static final Preset[] DEFAULT_PRESETS = {
             SOLAR_SYSTEM,
             SOLAR_SYSTEM_NO_MOONS,
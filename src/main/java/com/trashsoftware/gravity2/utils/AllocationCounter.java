@@ -0,0 +1,39 @@
+package com.trashsoftware.gravity2.utils;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Reads the number of heap bytes allocated by all live threads of this JVM.
+ * <p>
+ * Only works on HotSpot-like JVMs, where {@code com.sun.management.ThreadMXBean} is available.
+ * On other JVMs {@link #isSupported()} is false and {@link #totalAllocatedBytes()} returns -1.
+ */
+public class AllocationCounter {
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN;
+
+    static {
+        com.sun.management.ThreadMXBean bean = null;
+        try {
+            if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean sunBean &&
+                    sunBean.isThreadAllocatedMemorySupported()) {
+                sunBean.setThreadAllocatedMemoryEnabled(true);
+                bean = sunBean;
+            }
+        } catch (UnsupportedOperationException | SecurityException e) {
+            // not available, leave it null
+        }
+        THREAD_BEAN = bean;
+    }
+
+    public static boolean isSupported() {
+        return THREAD_BEAN != null;
+    }
+
+    /**
+     * @return bytes allocated by all live threads since they started, or -1 if not supported
+     */
+    public static long totalAllocatedBytes() {
+        if (THREAD_BEAN == null) return -1;
+        return THREAD_BEAN.getTotalThreadAllocatedBytes();
+    }
+}
@@ -1,8 +1,5 @@
 package com.trashsoftware.gravity2.utils;
 
-import com.trashsoftware.gravity2.gui.GuiUtils;
-import javafx.scene.paint.Color;
-
 import java.util.Arrays;
 import java.util.Random;
 
@@ -107,7 +104,38 @@ public class Util {
         double h = random.nextDouble(360);
         double s = random.nextDouble(0, 0.7);
         double b = random.nextDouble(0.01, 0.99);
-        Color hsb = Color.hsb(h, s, b);
-        return GuiUtils.colorToHex(GuiUtils.fxColorToJmeColor(hsb));
+        double[] rgb = hsbToRgb(h, s, b);
+        return String.format("#%02X%02X%02X",
+                (int) ((float) rgb[0] * 255),
+                (int) ((float) rgb[1] * 255),
+                (int) ((float) rgb[2] * 255));
+    }
+
+    /**
+     * Same conversion as JavaFX's {@code Color.hsb}, without needing JavaFX.
+     *
+     * @param hue        in degrees
+     * @param saturation in [0, 1]
+     * @param brightness in [0, 1]
+     * @return red, green and blue in [0, 1]
+     */
+    public static double[] hsbToRgb(double hue, double saturation, double brightness) {
+        if (saturation == 0) {
+            return new double[]{brightness, brightness, brightness};
+        }
+        double normalizedHue = ((hue % 360) + 360) % 360 / 360;
+        double h = (normalizedHue - Math.floor(normalizedHue)) * 6.0;
+        double f = h - Math.floor(h);
+        double p = brightness * (1 - saturation);
+        double q = brightness * (1 - saturation * f);
+        double t = brightness * (1 - saturation * (1 - f));
+        return switch ((int) h) {
+            case 0 -> new double[]{brightness, t, p};
+            case 1 -> new double[]{q, brightness, p};
+            case 2 -> new double[]{p, brightness, t};
+            case 3 -> new double[]{p, q, brightness};
+            case 4 -> new double[]{t, p, brightness};
+            default -> new double[]{brightness, p, q};
+        };
     }
 }